@@ -0,0 +1,158 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Decides which frames wait for the detector while it is busy, and which are dropped.
+ *
+ * <p>{@link #offer(Object)} returns the frame that was dropped to make the decision, if any, so
+ * the caller can recycle its buffer. Every policy counts the frames it dropped. Policies are not
+ * thread safe; the owner is expected to synchronize around them.
+ *
+ * @param <E> the type of the queued frames
+ */
+public abstract class BackpressurePolicy<E> {
+
+    private long droppedCount;
+
+    /** Keeps only the most recent frame; a new frame replaces the waiting one. */
+    public static <E> BackpressurePolicy<E> latestOnly() {
+        return new BoundedFifo<>(1);
+    }
+
+    /**
+     * Keeps up to {@code capacity} frames and drops newly arriving frames while full, so frames are
+     * processed in arrival order without gaps inside a burst.
+     */
+    public static <E> BackpressurePolicy<E> dropNewest(int capacity) {
+        return new DropNewest<>(capacity);
+    }
+
+    /** Keeps the last {@code capacity} frames, dropping the oldest waiting frame when full. */
+    public static <E> BackpressurePolicy<E> boundedFifo(int capacity) {
+        return new BoundedFifo<>(capacity);
+    }
+
+    /** Only considers every {@code k}-th offered frame, of which the latest one waits. */
+    public static <E> BackpressurePolicy<E> everyKthFrame(int k) {
+        return new EveryKthFrame<>(k);
+    }
+
+    /**
+     * Offers a new frame. Returns the frame dropped as a consequence, either {@code frame} itself or
+     * one that was waiting, or null if nothing was dropped.
+     */
+    @Nullable
+    public abstract E offer(E frame);
+
+    /** Removes and returns the next frame to process, or null if none is waiting. */
+    @Nullable
+    public abstract E poll();
+
+    /** Number of frames dropped by this policy so far. */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    protected E recordDrop(E frame) {
+        droppedCount++;
+        return frame;
+    }
+
+    private static class BoundedFifo<E> extends BackpressurePolicy<E> {
+        private final ArrayDeque<E> frames;
+        private final int capacity;
+
+        BoundedFifo(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Invalid capacity: " + capacity);
+            }
+            this.capacity = capacity;
+            frames = new ArrayDeque<>(capacity);
+        }
+
+        @Override
+        public E offer(E frame) {
+            E dropped = frames.size() == capacity ? recordDrop(frames.pollFirst()) : null;
+            frames.addLast(frame);
+            return dropped;
+        }
+
+        @Override
+        public E poll() {
+            return frames.pollFirst();
+        }
+    }
+
+    private static class DropNewest<E> extends BackpressurePolicy<E> {
+        private final ArrayDeque<E> frames;
+        private final int capacity;
+
+        DropNewest(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Invalid capacity: " + capacity);
+            }
+            this.capacity = capacity;
+            frames = new ArrayDeque<>(capacity);
+        }
+
+        @Override
+        public E offer(E frame) {
+            if (frames.size() == capacity) {
+                return recordDrop(frame);
+            }
+            frames.addLast(frame);
+            return null;
+        }
+
+        @Override
+        public E poll() {
+            return frames.pollFirst();
+        }
+    }
+
+    private static class EveryKthFrame<E> extends BackpressurePolicy<E> {
+        private final int k;
+        private long offeredCount;
+        @Nullable private E latest;
+
+        EveryKthFrame(int k) {
+            if (k < 1) {
+                throw new IllegalArgumentException("Invalid frame interval: " + k);
+            }
+            this.k = k;
+        }
+
+        @Override
+        public E offer(E frame) {
+            if (offeredCount++ % k != 0) {
+                return recordDrop(frame);
+            }
+            E dropped = latest != null ? recordDrop(latest) : null;
+            latest = frame;
+            return dropped;
+        }
+
+        @Override
+        public E poll() {
+            E frame = latest;
+            latest = null;
+            return frame;
+        }
+    }
+}
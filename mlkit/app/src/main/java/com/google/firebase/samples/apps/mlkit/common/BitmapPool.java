@@ -0,0 +1,131 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.GuardedBy;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of mutable bitmaps keyed by size and config, so that per-frame conversions and rotations
+ * can reuse the pixel memory of frames that have already been drawn.
+ *
+ * <p>Callers {@link #acquire(int, int, Bitmap.Config)} a bitmap, and hand it back with {@link
+ * #release(Bitmap)} once nothing reads it any more. For camera frames that is when the {@link
+ * CameraImageGraphic} showing it is removed from the {@link GraphicOverlay}.
+ */
+public class BitmapPool {
+
+    /** Upper bound of pixel memory the shared pool keeps around, about eight 640x480 frames. */
+    private static final long DEFAULT_MAX_BYTES = 8L * 640 * 480 * 4;
+
+    private static final BitmapPool instance = new BitmapPool(DEFAULT_MAX_BYTES);
+
+    private final long maxBytes;
+
+    @GuardedBy("this")
+    private final Map<Long, ArrayDeque<Bitmap>> freeBitmaps = new HashMap<>();
+
+    @GuardedBy("this")
+    private long bytesHeld;
+
+    @GuardedBy("this")
+    private long hitCount;
+
+    @GuardedBy("this")
+    private long missCount;
+
+    /** Returns the pool shared by the frame conversion code and the overlay graphics. */
+    public static BitmapPool getInstance() {
+        return instance;
+    }
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a mutable bitmap of the requested size and config. Its content is undefined; callers
+     * are expected to overwrite every pixel.
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        synchronized (this) {
+            ArrayDeque<Bitmap> bitmaps = freeBitmaps.get(key(width, height, config));
+            Bitmap bitmap = bitmaps != null ? bitmaps.pollFirst() : null;
+            if (bitmap != null) {
+                hitCount++;
+                bytesHeld -= bitmap.getByteCount();
+                return bitmap;
+            }
+            missCount++;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns a bitmap to the pool. The caller must not touch the bitmap afterwards. Bitmaps that
+     * are immutable, recycled or that would push the pool over its size limit are left to the GC.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int size = bitmap.getByteCount();
+        if (bytesHeld + size > maxBytes) {
+            return;
+        }
+        Long key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bitmaps = freeBitmaps.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            freeBitmaps.put(key, bitmaps);
+        }
+        bitmaps.addFirst(bitmap);
+        bytesHeld += size;
+    }
+
+    /** Drops every pooled bitmap. */
+    public synchronized void clear() {
+        freeBitmaps.clear();
+        bytesHeld = 0;
+    }
+
+    /** Number of acquire calls served from the pool. */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /** Number of acquire calls that had to allocate a new bitmap. */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /** Pixel memory currently held by idle bitmaps in the pool. */
+    public synchronized long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{hits=" + hitCount + ", misses=" + missCount + ", bytesHeld=" + bytesHeld + "}";
+    }
+
+    private static Long key(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8) | (config == null ? 0xff : config.ordinal());
+    }
+}
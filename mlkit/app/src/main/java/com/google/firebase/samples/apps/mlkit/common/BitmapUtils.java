@@ -1,73 +1,121 @@
 package com.google.firebase.samples.apps.mlkit.common;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.hardware.Camera.CameraInfo;
+import android.media.Image;
 import androidx.annotation.Nullable;
 import android.util.Log;
-import com.google.firebase.ml.vision.common.FirebaseVisionImageMetadata;
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 
 /** Utils functions for bitmap conversions. */
 public class BitmapUtils {
 
+    private static final String TAG = "MIDemoApp:BitmapUtils";
+
+    // Per-thread scratch arrays so that converting a frame does not allocate once warmed up.
+    private static final ThreadLocal<int[]> argbScratch = new ThreadLocal<>();
+    private static final ThreadLocal<byte[]> nv21Scratch = new ThreadLocal<>();
+
     // Convert NV21 format byte buffer to bitmap.
     @Nullable
     public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata) {
-        data.rewind();
-        byte[] imageInBuffer = new byte[data.limit()];
-        data.get(imageInBuffer, 0, imageInBuffer.length);
-        try {
-            YuvImage image =
-                    new YuvImage(
-                            imageInBuffer, ImageFormat.NV21, metadata.getWidth(), metadata.getHeight(), null);
-            if (image != null) {
-                ByteArrayOutputStream stream = new ByteArrayOutputStream();
-                image.compressToJpeg(new Rect(0, 0, metadata.getWidth(), metadata.getHeight()), 70, stream);
+        int pixelCount = metadata.getWidth() * metadata.getHeight();
+        int[] argb = argbScratch.get();
+        if (argb == null || argb.length < pixelCount) {
+            argb = new int[pixelCount];
+            argbScratch.set(argb);
+        }
+        return getBitmap(data, metadata, argb);
+    }
 
-                Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
+    /**
+     * Converts a NV21 frame to an upright bitmap, mirrored for the front camera, using {@code argb}
+     * as the intermediate pixel buffer. {@code argb} must hold at least {@code width * height}
+     * pixels. Rotation and mirroring are done by the conversion itself.
+     *
+     * <p>The returned bitmap comes from {@link BitmapPool#getInstance()}; hand it back with {@link
+     * BitmapPool#release(Bitmap)} (or let {@link CameraImageGraphic} do so) once it is drawn.
+     */
+    @Nullable
+    public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata, int[] argb) {
+        Bitmap bmp = null;
+        try {
+            int width = metadata.getWidth();
+            int height = metadata.getHeight();
+            Nv21Converter.convert(toArray(data, Nv21Converter.getFrameSize(width, height)), width,
+                    height, metadata.getRotation(),
+                    metadata.getCameraFacing() != CameraInfo.CAMERA_FACING_BACK, argb);
+            // Take the bitmap from the pool only once the conversion went through, and give it
+            // back if filling it fails, so that a bad frame does not leak one.
+            boolean sideways = (metadata.getRotation() & 1) != 0;
+            bmp = BitmapPool.getInstance()
+                    .acquire(sideways ? height : width, sideways ? width : height,
+                            Bitmap.Config.ARGB_8888);
+            bmp.setPixels(argb, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+            return bmp;
+        } catch (Exception e) {
+            Log.e(TAG, "Error: " + e.getMessage());
+            BitmapPool.getInstance().release(bmp);
+        }
+        return null;
+    }
 
-                stream.close();
-                return rotateBitmap(bmp, metadata.getRotation(), metadata.getCameraFacing());
+    /**
+     * Converts a YUV_420_888 camera image to an upright bitmap, like {@link #getBitmap(ByteBuffer,
+     * FrameMetadata)} does for NV21 frames, reading the planes in place.
+     */
+    @Nullable
+    public static Bitmap getBitmap(Image image, FrameMetadata metadata) {
+        Bitmap bmp = null;
+        try {
+            int width = metadata.getWidth();
+            int height = metadata.getHeight();
+            int[] argb = argbScratch.get();
+            if (argb == null || argb.length < width * height) {
+                argb = new int[width * height];
+                argbScratch.set(argb);
             }
+            Image.Plane[] planes = image.getPlanes();
+            Nv21Converter.convertYuv420(planes[0].getBuffer(), planes[1].getBuffer(),
+                    planes[2].getBuffer(), planes[0].getRowStride(), planes[1].getRowStride(),
+                    planes[1].getPixelStride(), width, height, metadata.getRotation(),
+                    metadata.getCameraFacing() != CameraInfo.CAMERA_FACING_BACK, argb);
+            boolean sideways = (metadata.getRotation() & 1) != 0;
+            bmp = BitmapPool.getInstance()
+                    .acquire(sideways ? height : width, sideways ? width : height,
+                            Bitmap.Config.ARGB_8888);
+            bmp.setPixels(argb, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+            return bmp;
         } catch (Exception e) {
-            Log.e("VisionProcessorBase", "Error: " + e.getMessage());
+            Log.e(TAG, "Error: " + e.getMessage());
+            BitmapPool.getInstance().release(bmp);
         }
         return null;
     }
 
-    // Rotates a bitmap if it is converted from a bytebuffer.
-    private static Bitmap rotateBitmap(Bitmap bitmap, int rotation, int facing) {
-        Matrix matrix = new Matrix();
-        int rotationDegree = 0;
-        switch (rotation) {
-            case FirebaseVisionImageMetadata.ROTATION_90:
-                rotationDegree = 90;
-                break;
-            case FirebaseVisionImageMetadata.ROTATION_180:
-                rotationDegree = 180;
-                break;
-            case FirebaseVisionImageMetadata.ROTATION_270:
-                rotationDegree = 270;
-                break;
-            default:
-                break;
-        }
+    /**
+     * Converts a NV21 frame into the caller supplied {@code out} bitmap, which must be mutable,
+     * ARGB_8888 and exactly {@code width x height}. No rotation is applied.
+     */
+    public static void convertToBitmap(
+            ByteBuffer data, int width, int height, int[] argb, Bitmap out) {
+        Nv21Converter.convert(toArray(data, Nv21Converter.getFrameSize(width, height)), width, height, argb);
+        out.setPixels(argb, 0, width, 0, 0, width, height);
+    }
 
-        // Rotate the image back to straight.}
-        matrix.postRotate(rotationDegree);
-        if (facing == CameraInfo.CAMERA_FACING_BACK) {
-            return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-        } else {
-            // Mirror the image along X axis for front-facing camera image.
-            matrix.postScale(-1.0f, 1.0f);
-            return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+    // Returns the backing array of the buffer when possible, otherwise copies into a scratch array.
+    private static byte[] toArray(ByteBuffer data, int frameSize) {
+        if (data.hasArray() && data.arrayOffset() == 0) {
+            return data.array();
         }
+        byte[] bytes = nv21Scratch.get();
+        if (bytes == null || bytes.length < frameSize) {
+            bytes = new byte[frameSize];
+            nv21Scratch.set(bytes);
+        }
+        ByteBuffer view = data.duplicate();
+        view.rewind();
+        view.get(bytes, 0, Math.min(frameSize, view.remaining()));
+        return bytes;
     }
 }
-
@@ -5,7 +5,10 @@ import android.graphics.Canvas;
 import android.graphics.Rect;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay.Graphic;
 
-/** Draw camera image to background. */
+/**
+ * Draw camera image to background. The bitmap is handed back to {@link BitmapPool} once the
+ * graphic is removed from the overlay.
+ */
 public class CameraImageGraphic extends Graphic {
 
     private final Bitmap bitmap;
@@ -19,5 +22,10 @@ public class CameraImageGraphic extends Graphic {
     public void draw(Canvas canvas) {
         canvas.drawBitmap(bitmap, null, new Rect(0, 0, canvas.getWidth(), canvas.getHeight()), null);
     }
+
+    @Override
+    public void release() {
+        BitmapPool.getInstance().release(bitmap);
+    }
 }
 
@@ -32,12 +32,8 @@ import android.view.WindowManager;
 import com.google.android.gms.common.images.Size;
 
 import java.io.IOException;
-import java.lang.Thread.State;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Manages the camera and allows UI updates on top of it (e.g. overlaying extra Graphics or
@@ -45,7 +41,7 @@ import java.util.Map;
  * sending those frames to child classes' detectors / classifiers as fast as it is able to process.
  */
 @SuppressLint("MissingPermission")
-public class CameraSource {
+public class CameraSource implements FrameSource {
     @SuppressLint("InlinedApi")
     public static final int CAMERA_FACING_BACK = CameraInfo.CAMERA_FACING_BACK;
 
@@ -84,10 +80,19 @@ public class CameraSource {
     // These values may be requested by the caller.  Due to hardware limitations, we may need to
     // select close, but not exactly the same values for these.
     private final float requestedFps = 30.0f;
-    public static final int requestedPreviewWidth = 320;
-    private final int requestedPreviewHeight = 320;
+    public static final int DEFAULT_PREVIEW_WIDTH = 320;
+    public static final int DEFAULT_PREVIEW_HEIGHT = 320;
+    private int requestedPreviewWidth = DEFAULT_PREVIEW_WIDTH;
+    private int requestedPreviewHeight = DEFAULT_PREVIEW_HEIGHT;
     private final boolean requestedAutoFocus = true;
 
+    // Lowest rate the frame rate governor throttles detection down to.
+    private static final float MIN_GOVERNED_FPS = 2.0f;
+
+    /** Skips preview frames the detector could not keep up with anyway. */
+    private final FrameRateGovernor frameRateGovernor =
+            new FrameRateGovernor(requestedFps, MIN_GOVERNED_FPS);
+
     // These instances need to be held onto to avoid GC of their underlying resources.  Even though
     // these aren't used outside of the method that creates them, they still must have hard
     // references maintained to them.
@@ -102,33 +107,33 @@ public class CameraSource {
     private boolean usingSurfaceTexture;
 
     /**
-     * Dedicated thread and associated runnable for calling into the detector with frames, as the
-     * frames become available from the camera.
+     * Hands frames to the detector on a dedicated thread, as the frames become available from the
+     * camera, and holds the current detector.
      */
-    private Thread processingThread;
-
-    private final FrameProcessingRunnable processingRunnable;
+    private final FrameDispatcher<PreviewBufferPool.Slot> frameDispatcher;
 
-    private final Object processorLock = new Object();
-    // @GuardedBy("processorLock")
-    private VisionImageProcessor frameProcessor;
+    private int previewBufferDepth = PreviewBufferPool.DEFAULT_DEPTH;
 
     /**
-     * Map to convert between a byte array, received from the camera, and its associated byte buffer.
-     * We use byte buffers internally because this is a more efficient way to call into native code
-     * later (avoids a potential copy).
-     *
-     * <p><b>Note:</b> uses IdentityHashMap here instead of HashMap because the behavior of an array's
-     * equals, hashCode and toString methods is both useless and unexpected. IdentityHashMap enforces
-     * identity ('==') check on the keys.
+     * Buffers shared with the camera for preview frames. We use byte buffers internally because this
+     * is a more efficient way to call into native code later (avoids a potential copy).
      */
-    private final Map<byte[], ByteBuffer> bytesToByteBuffer = new IdentityHashMap<>();
+    @Nullable
+    private volatile PreviewBufferPool previewBufferPool;
+
+    // Numbers the preview frames, across restarts of the camera. Only used on the thread the camera
+    // delivers frames on.
+    private long nextSequenceNumber;
+
+    // Receives every preview frame the camera delivers, if set.
+    @Nullable
+    private volatile FrameRecorder frameRecorder;
 
     public CameraSource(Activity activity, GraphicOverlay overlay) {
         this.activity = activity;
         graphicOverlay = overlay;
         graphicOverlay.clear();
-        processingRunnable = new FrameProcessingRunnable();
+        frameDispatcher = new FrameDispatcher<>("CameraSource-processing", new FrameDelegate());
 
         if (Camera.getNumberOfCameras() == 1) {
             CameraInfo cameraInfo = new CameraInfo();
@@ -141,17 +146,15 @@ public class CameraSource {
     // Public
     // ==============================================================================================
 
-    /** Stops the camera and releases the resources of the camera and underlying detector. */
+    /**
+     * Stops the camera and releases the resources of the camera and underlying detector. Does not
+     * wait for a detection in flight; the detector is stopped once that call returns.
+     */
+    @Override
     public void release() {
-        synchronized (processorLock) {
-            stop();
-            processingRunnable.release();
-            cleanScreen();
-
-            if (frameProcessor != null) {
-                frameProcessor.stop();
-            }
-        }
+        stop();
+        cleanScreen();
+        frameDispatcher.setProcessor(null);
     }
 
     /**
@@ -162,6 +165,7 @@ public class CameraSource {
      */
     @SuppressLint("MissingPermission")
     @RequiresPermission(Manifest.permission.CAMERA)
+    @Override
     public synchronized CameraSource start() throws IOException {
         if (camera != null) {
             return this;
@@ -173,9 +177,7 @@ public class CameraSource {
         usingSurfaceTexture = true;
         camera.startPreview();
 
-        processingThread = new Thread(processingRunnable);
-        processingRunnable.setActive(true);
-        processingThread.start();
+        frameDispatcher.start();
         return this;
     }
 
@@ -196,9 +198,7 @@ public class CameraSource {
         camera.setPreviewDisplay(surfaceHolder);
         camera.startPreview();
 
-        processingThread = new Thread(processingRunnable);
-        processingRunnable.setActive(true);
-        processingThread.start();
+        frameDispatcher.start();
 
         usingSurfaceTexture = false;
         return this;
@@ -213,23 +213,16 @@ public class CameraSource {
      * <p>Call {@link #release()} instead to completely shut down this camera source and release the
      * resources of the underlying detector.
      */
+    @Override
     public synchronized void stop() {
-        processingRunnable.setActive(false);
-        if (processingThread != null) {
-            try {
-                // Wait for the thread to complete to ensure that we can't have multiple threads
-                // executing at the same time (i.e., which would happen if we called start too
-                // quickly after stop).
-                processingThread.join();
-            } catch (InterruptedException e) {
-                Log.d(TAG, "Frame processing thread interrupted on release.");
-            }
-            processingThread = null;
-        }
+        // Does not wait for a frame in flight. Its buffer goes back to a detached pool, and start()
+        // waits for it so that two threads never process frames at the same time.
+        frameDispatcher.stop();
 
         if (camera != null) {
             camera.stopPreview();
             camera.setPreviewCallbackWithBuffer(null);
+            previewBufferPool.detach();
             try {
                 if (usingSurfaceTexture) {
                     camera.setPreviewTexture(null);
@@ -242,9 +235,6 @@ public class CameraSource {
             camera.release();
             camera = null;
         }
-
-        // Release the reference to any image buffers, since these will no longer be in use.
-        bytesToByteBuffer.clear();
     }
 
     /** Changes the facing of the camera. */
@@ -255,6 +245,50 @@ public class CameraSource {
         this.facing = facing;
     }
 
+    /**
+     * Sets the preview size to ask the camera for; the closest supported size is used. Takes effect
+     * the next time the camera is started. The size processors detect at can be set separately,
+     * see {@code VisionProcessorBase#setDetectionWidth}.
+     */
+    public synchronized void setRequestedPreviewSize(int width, int height) {
+        requestedPreviewWidth = width;
+        requestedPreviewHeight = height;
+    }
+
+    /**
+     * Sets how many preview buffers are shared with the camera. Takes effect the next time the
+     * camera is started.
+     */
+    public synchronized void setPreviewBufferDepth(int depth) {
+        previewBufferDepth = depth;
+    }
+
+    /**
+     * Returns the preview buffer pool of the running camera, whose counters tell how many frames
+     * were delivered, dropped and recycled.
+     */
+    @Nullable
+    public PreviewBufferPool getPreviewBufferPool() {
+        return previewBufferPool;
+    }
+
+    /**
+     * Returns the governor deciding which preview frames reach the processor. Processors report
+     * their detection latency to it, see {@link
+     * com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase#setFrameRateGovernor}.
+     */
+    public FrameRateGovernor getFrameRateGovernor() {
+        return frameRateGovernor;
+    }
+
+    /**
+     * Sets a recorder that is handed every preview frame delivered by the camera, whether or not it
+     * reaches the detector. The caller starts and stops the recorder.
+     */
+    public void setFrameRecorder(@Nullable FrameRecorder recorder) {
+        frameRecorder = recorder;
+    }
+
     /** Returns the preview size that is currently in use by the underlying camera. */
     public Size getPreviewSize() {
         return previewSize;
@@ -319,22 +353,10 @@ public class CameraSource {
 
         camera.setParameters(parameters);
 
-        // Four frame buffers are needed for working with the camera:
-        //
-        //   one for the frame that is currently being executed upon in doing detection
-        //   one for the next pending frame to process immediately upon completing detection
-        //   two for the frames that the camera uses to populate future preview images
-        //
-        // Through trial and error it appears that two free buffers, in addition to the two buffers
-        // used in this code, are needed for the camera to work properly.  Perhaps the camera has
-        // one thread for acquiring images, and another thread for calling into user code.  If only
-        // three buffers are used, then the camera will spew thousands of warning messages when
-        // detection takes a non-trivial amount of time.
+        // See PreviewBufferPool.DEFAULT_DEPTH for how many buffers the camera needs.
         camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+        previewBufferPool = new PreviewBufferPool(previewBufferDepth, getPreviewBufferSize(previewSize));
+        previewBufferPool.attach(camera);
 
         return camera;
     }
@@ -547,29 +569,14 @@ public class CameraSource {
     }
 
     /**
-     * Creates one buffer for the camera preview callback. The size of the buffer is based off of the
-     * camera preview size and the format of the camera image.
-     *
-     * @return a new preview buffer of the appropriate size for the current camera settings
+     * Returns the size of one buffer for the camera preview callback. The size of the buffer is
+     * based off of the camera preview size and the format of the camera image.
      */
     @SuppressLint("InlinedApi")
-    private byte[] createPreviewBuffer(Size previewSize) {
+    private static int getPreviewBufferSize(Size previewSize) {
         int bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
         long sizeInBits = (long) previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
-        int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
-
-        // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
-        // should guarantee that there will be an array to work with.
-        byte[] byteArray = new byte[bufferSize];
-        ByteBuffer buffer = ByteBuffer.wrap(byteArray);
-        if (!buffer.hasArray() || (buffer.array() != byteArray)) {
-            // I don't think that this will ever happen.  But if it does, then we wouldn't be
-            // passing the preview content to the underlying detector later.
-            throw new IllegalStateException("Failed to create valid buffer for camera source.");
-        }
-
-        bytesToByteBuffer.put(byteArray, buffer);
-        return byteArray;
+        return (int) Math.ceil(sizeInBits / 8.0d) + 1;
     }
 
     // ==============================================================================================
@@ -580,157 +587,75 @@ public class CameraSource {
     private class CameraPreviewCallback implements Camera.PreviewCallback {
         @Override
         public void onPreviewFrame(byte[] data, Camera camera) {
-            processingRunnable.setNextFrame(data, camera);
+            long captureTimeNanos = System.nanoTime();
+            long sequenceNumber = nextSequenceNumber++;
+            PreviewBufferPool.Slot slot = previewBufferPool.onFrameDelivered(data);
+            if (slot == null) {
+                return;
+            }
+            slot.setMetadata(createFrameMetadata(sequenceNumber, captureTimeNanos));
+            FrameRecorder recorder = frameRecorder;
+            if (recorder != null) {
+                // Only copies the frame; the recorder skips it rather than wait for the disk.
+                recorder.record(slot.getBuffer(), slot.getMetadata(), captureTimeNanos);
+            }
+            if (!frameRateGovernor.shouldAccept(System.nanoTime())) {
+                // The detector is still busy with an earlier frame, don't wake the processing
+                // thread for this one.
+                previewBufferPool.drop(slot);
+                return;
+            }
+            frameDispatcher.offer(slot);
         }
     }
 
+    /**
+     * Swaps the detector. Never waits for a detection in flight; the previous detector is stopped
+     * once it is no longer in use.
+     */
+    @Override
     public void setMachineLearningFrameProcessor(VisionImageProcessor processor) {
-        synchronized (processorLock) {
-            cleanScreen();
-            if (frameProcessor != null) {
-                frameProcessor.stop();
-            }
-            frameProcessor = processor;
-        }
+        cleanScreen();
+        frameDispatcher.setProcessor(processor);
+        frameRateGovernor.reset();
     }
 
     /**
-     * This runnable controls access to the underlying receiver, calling it to process frames when
-     * available from the camera. This is designed to run detection on frames as fast as possible
-     * (i.e., without unnecessary context switching or waiting on the next frame).
-     *
-     * <p>While detection is running on a frame, new frames may be received from the camera. As these
-     * frames come in, the most recent frame is held onto as pending. As soon as detection and its
-     * associated processing is done for the previous frame, detection on the mostly recently received
-     * frame will immediately start on the same thread.
+     * Calls the detector with preview frames on the dispatcher's thread, and hands their buffers
+     * back to the camera. This runs detection on frames as fast as possible: while detection is
+     * running on a frame, only the most recent frame from the camera is held onto, and detection on
+     * it starts as soon as the previous call returns.
      */
-    private class FrameProcessingRunnable implements Runnable {
-
-        // This lock guards all of the member variables below.
-        private final Object lock = new Object();
-        private boolean active = true;
-
-        // These pending variables hold the state associated with the new frame awaiting processing.
-        private ByteBuffer pendingFrameData;
-
-        FrameProcessingRunnable() {}
-
-        /**
-         * Releases the underlying receiver. This is only safe to do after the associated thread has
-         * completed, which is managed in camera source's release method above.
-         */
-        @SuppressLint("Assert")
-        void release() {
-            assert (processingThread.getState() == State.TERMINATED);
-        }
-
-        /** Marks the runnable as active/not active. Signals any blocked threads to continue. */
-        void setActive(boolean active) {
-            synchronized (lock) {
-                this.active = active;
-                lock.notifyAll();
-            }
+    private class FrameDelegate implements FrameDispatcher.Delegate<PreviewBufferPool.Slot> {
+        @Override
+        public void process(VisionImageProcessor processor, PreviewBufferPool.Slot frame)
+                throws Exception {
+            Log.d(TAG, "Process an image");
+            processor.process(frame.getBuffer(), frame.getMetadata(), graphicOverlay);
         }
 
-        /**
-         * Sets the frame data received from the camera. This adds the previous unused frame buffer (if
-         * present) back to the camera, and keeps a pending reference to the frame data for future use.
-         */
-        void setNextFrame(byte[] data, Camera camera) {
-            synchronized (lock) {
-                if (pendingFrameData != null) {
-                    camera.addCallbackBuffer(pendingFrameData.array());
-                    pendingFrameData = null;
-                }
-
-                if (!bytesToByteBuffer.containsKey(data)) {
-                    Log.d(
-                            TAG,
-                            "Skipping frame. Could not find ByteBuffer associated with the image "
-                                    + "data from the camera.");
-                    return;
-                }
-
-                pendingFrameData = bytesToByteBuffer.get(data);
-
-                // Notify the processor thread if it is waiting on the next frame (see below).
-                lock.notifyAll();
-            }
+        @Override
+        public void recycle(PreviewBufferPool.Slot frame) {
+            previewBufferPool.recycle(frame);
         }
 
-        /**
-         * As long as the processing thread is active, this executes detection on frames continuously.
-         * The next pending frame is either immediately available or hasn't been received yet. Once it
-         * is available, we transfer the frame info to local variables and run detection on that frame.
-         * It immediately loops back for the next frame without pausing.
-         *
-         * <p>If detection takes longer than the time in between new frames from the camera, this will
-         * mean that this loop will run without ever waiting on a frame, avoiding any context switching
-         * or frame acquisition time latency.
-         *
-         * <p>If you find that this is using more CPU than you'd like, you should probably decrease the
-         * FPS setting above to allow for some idle time in between frames.
-         */
-        @SuppressLint("InlinedApi")
-        @SuppressWarnings("GuardedBy")
         @Override
-        public void run() {
-            ByteBuffer data;
-
-            while (true) {
-                synchronized (lock) {
-                    while (active && (pendingFrameData == null)) {
-                        try {
-                            // Wait for the next frame to be received from the camera, since we
-                            // don't have it yet.
-                            lock.wait();
-                        } catch (InterruptedException e) {
-                            Log.d(TAG, "Frame processing loop terminated.", e);
-                            return;
-                        }
-                    }
-
-                    if (!active) {
-                        // Exit the loop once this camera source is stopped or released.  We check
-                        // this here, immediately after the wait() above, to handle the case where
-                        // setActive(false) had been called, triggering the termination of this
-                        // loop.
-                        return;
-                    }
-
-                    // Hold onto the frame data locally, so that we can use this for detection
-                    // below.  We need to clear pendingFrameData to ensure that this buffer isn't
-                    // recycled back to the camera before we are done using that data.
-                    data = pendingFrameData;
-                    pendingFrameData = null;
-                }
-
-                // The code below needs to run outside of synchronization, because this will allow
-                // the camera to add pending frame(s) while we are running detection on the current
-                // frame.
-
-                try {
-                    synchronized (processorLock) {
-                        Log.d(TAG, "Process an image");
-                        frameProcessor.process(
-                                data,
-                                new FrameMetadata.Builder()
-                                        .setWidth(previewSize.getWidth())
-                                        .setHeight(previewSize.getHeight())
-                                        .setRotation(rotation)
-                                        .setCameraFacing(facing)
-                                        .build(),
-                                graphicOverlay);
-                    }
-                } catch (Throwable t) {
-                    Log.e(TAG, "Exception thrown from receiver.", t);
-                } finally {
-                    camera.addCallbackBuffer(data.array());
-                }
-            }
+        public void drop(PreviewBufferPool.Slot frame) {
+            previewBufferPool.drop(frame);
         }
     }
 
+    private FrameMetadata createFrameMetadata(long sequenceNumber, long captureTimeNanos) {
+        return new FrameMetadata.Builder()
+                .setWidth(previewSize.getWidth())
+                .setHeight(previewSize.getHeight())
+                .setRotation(rotation)
+                .setCameraFacing(facing)
+                .setSequenceNumber(sequenceNumber)
+                .setCaptureTimeNanos(captureTimeNanos)
+                .build();
+    }
+
     /** Cleans up graphicOverlay and child classes can do their cleanups as well . */
     private void cleanScreen() {
         graphicOverlay.clear();
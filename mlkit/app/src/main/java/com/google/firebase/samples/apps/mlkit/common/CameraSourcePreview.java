@@ -26,7 +26,11 @@ import com.google.android.gms.common.images.Size;
 
 import java.io.IOException;
 
-/** Preview the camera image in the screen. */
+/**
+ * Preview the camera image in the screen. By default the camera runs without a display, and the
+ * frames are drawn by the {@link GraphicOverlay}; with {@link #setShowsCameraPreview(boolean)} the
+ * camera draws its preview itself, below the overlay.
+ */
 public class CameraSourcePreview extends ViewGroup {
   private static final String TAG = "MIDemoApp:Preview";
 
@@ -35,6 +39,7 @@ public class CameraSourcePreview extends ViewGroup {
   private boolean startRequested;
   private boolean surfaceAvailable;
   private CameraSource cameraSource;
+  private boolean showsCameraPreview;
 
   private GraphicOverlay overlay;
 
@@ -67,6 +72,14 @@ public class CameraSourcePreview extends ViewGroup {
     start(cameraSource);
   }
 
+  /**
+   * Sets whether the camera shows its live preview on this view's surface, from the next start.
+   * The overlay then only needs to draw the detection results on top.
+   */
+  public void setShowsCameraPreview(boolean showsCameraPreview) {
+    this.showsCameraPreview = showsCameraPreview;
+  }
+
   public void stop() {
     if (cameraSource != null) {
       cameraSource.stop();
@@ -83,7 +96,11 @@ public class CameraSourcePreview extends ViewGroup {
   @SuppressLint("MissingPermission")
   private void startIfReady() throws IOException {
     if (startRequested && surfaceAvailable) {
-      cameraSource.start();
+      if (showsCameraPreview) {
+        cameraSource.start(surfaceView.getHolder());
+      } else {
+        cameraSource.start();
+      }
       if (overlay != null) {
         Size size = cameraSource.getPreviewSize();
         int min = Math.min(size.getWidth(), size.getHeight());
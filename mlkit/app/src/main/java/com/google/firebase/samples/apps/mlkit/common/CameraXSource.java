@@ -0,0 +1,229 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.media.Image;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.camera.core.CameraX;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageAnalysisConfig;
+import androidx.camera.core.ImageProxy;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Delivers camera frames through a CameraX {@link ImageAnalysis} use case instead of the
+ * deprecated {@link android.hardware.Camera} API used by {@link CameraSource}.
+ *
+ * <p>Frames are YUV_420_888 images owned by CameraX. A {@link PlanarImageProcessor} reads their
+ * planes in place; any other processor gets them packed into a reused NV21 buffer. Each frame is
+ * processed on the analysis thread before the analyzer returns, and the image reader only keeps
+ * the latest image meanwhile, so detection always runs on the most recent frame and never queues.
+ */
+public class CameraXSource implements FrameSource {
+
+    private static final String TAG = "MIDemoApp:CameraXSource";
+
+    public static final int DEFAULT_TARGET_WIDTH = 640;
+    public static final int DEFAULT_TARGET_HEIGHT = 480;
+
+    private final LifecycleOwner lifecycleOwner;
+    private final GraphicOverlay graphicOverlay;
+
+    private final HandlerThread analysisThread;
+    private final Handler analysisHandler;
+
+    private int facing = CameraSource.CAMERA_FACING_BACK;
+    private int targetWidth = DEFAULT_TARGET_WIDTH;
+    private int targetHeight = DEFAULT_TARGET_HEIGHT;
+
+    @Nullable
+    private ImageAnalysis imageAnalysis;
+
+    @Nullable
+    private volatile VisionImageProcessor frameProcessor;
+
+    // Only used on the analysis thread.
+    @Nullable
+    private ByteBuffer nv21Buffer;
+    private int overlayWidth;
+    private int overlayHeight;
+    private long nextSequenceNumber;
+
+    public CameraXSource(LifecycleOwner lifecycleOwner, GraphicOverlay overlay) {
+        this.lifecycleOwner = lifecycleOwner;
+        graphicOverlay = overlay;
+        graphicOverlay.clear();
+        analysisThread = new HandlerThread("CameraXSource-analysis");
+        analysisThread.start();
+        analysisHandler = new Handler(analysisThread.getLooper());
+    }
+
+    /**
+     * Binds the analysis use case to the lifecycle owner. CameraX opens the camera once the owner
+     * is started.
+     */
+    @MainThread
+    @Override
+    public synchronized CameraXSource start() {
+        if (imageAnalysis != null) {
+            return this;
+        }
+        ImageAnalysisConfig config = new ImageAnalysisConfig.Builder()
+                .setLensFacing(facing == CameraSource.CAMERA_FACING_FRONT
+                        ? CameraX.LensFacing.FRONT : CameraX.LensFacing.BACK)
+                .setTargetResolution(new Size(targetWidth, targetHeight))
+                .setImageReaderMode(ImageAnalysis.ImageReaderMode.ACQUIRE_LATEST_IMAGE)
+                .setCallbackHandler(analysisHandler)
+                .build();
+        imageAnalysis = new ImageAnalysis(config);
+        imageAnalysis.setAnalyzer(new FrameAnalyzer());
+        CameraX.bindToLifecycle(lifecycleOwner, imageAnalysis);
+        return this;
+    }
+
+    /** Unbinds the analysis use case, which closes the camera. The source may be started again. */
+    @MainThread
+    @Override
+    public synchronized void stop() {
+        if (imageAnalysis != null) {
+            imageAnalysis.removeAnalyzer();
+            CameraX.unbind(imageAnalysis);
+            imageAnalysis = null;
+        }
+    }
+
+    /** Stops the camera, then the processor, and ends the analysis thread. */
+    @MainThread
+    @Override
+    public void release() {
+        stop();
+        graphicOverlay.clear();
+        setMachineLearningFrameProcessor(null);
+        analysisThread.quitSafely();
+    }
+
+    /**
+     * Swaps the processor. Never waits for a frame in flight; the previous processor is stopped on
+     * the analysis thread, after the frame it may be processing.
+     */
+    @Override
+    public void setMachineLearningFrameProcessor(@Nullable VisionImageProcessor processor) {
+        graphicOverlay.clear();
+        final VisionImageProcessor previous = frameProcessor;
+        frameProcessor = processor;
+        if (previous != null && previous != processor) {
+            analysisHandler.post(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            previous.stop();
+                        }
+                    });
+        }
+    }
+
+    /** Changes the facing of the camera, from the next {@link #start()}. */
+    public synchronized void setFacing(int facing) {
+        if ((facing != CameraSource.CAMERA_FACING_BACK)
+                && (facing != CameraSource.CAMERA_FACING_FRONT)) {
+            throw new IllegalArgumentException("Invalid camera: " + facing);
+        }
+        this.facing = facing;
+    }
+
+    /**
+     * Sets the frame size CameraX should aim for, from the next {@link #start()}. The closest size
+     * the camera supports is used.
+     */
+    public synchronized void setTargetResolution(int width, int height) {
+        targetWidth = width;
+        targetHeight = height;
+    }
+
+    public synchronized int getCameraFacing() {
+        return facing;
+    }
+
+    /** Runs the processor on each frame, on the analysis thread. */
+    private class FrameAnalyzer implements ImageAnalysis.Analyzer {
+        @Override
+        public void analyze(ImageProxy imageProxy, int rotationDegrees) {
+            long captureTimeNanos = System.nanoTime();
+            long sequenceNumber = nextSequenceNumber++;
+            VisionImageProcessor processor = frameProcessor;
+            if (processor == null) {
+                return;
+            }
+            FrameMetadata metadata = new FrameMetadata.Builder()
+                    .setWidth(imageProxy.getWidth())
+                    .setHeight(imageProxy.getHeight())
+                    .setRotation(rotationDegrees / 90)
+                    .setCameraFacing(getCameraFacing())
+                    .setSequenceNumber(sequenceNumber)
+                    .setCaptureTimeNanos(captureTimeNanos)
+                    .build();
+            updateOverlay(metadata);
+            try {
+                Image image = imageProxy.getImage();
+                if (processor instanceof PlanarImageProcessor && image != null) {
+                    // CameraX closes the image once this returns, which process(Image) allows for.
+                    ((PlanarImageProcessor) processor).process(image, metadata, graphicOverlay);
+                } else {
+                    nv21Buffer = toNv21(imageProxy.getPlanes(), imageProxy.getWidth(),
+                            imageProxy.getHeight(), nv21Buffer);
+                    processor.process(nv21Buffer, metadata, graphicOverlay);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                Log.e(TAG, "Exception thrown from receiver.", e);
+            }
+        }
+    }
+
+    /**
+     * Packs the YUV_420_888 planes of a {@code width x height} frame as NV21, into {@code reuse} if
+     * it is large enough or else into a new direct buffer, which is returned.
+     */
+    static ByteBuffer toNv21(
+            ImageProxy.PlaneProxy[] planes, int width, int height, @Nullable ByteBuffer reuse) {
+        int size = Nv21Converter.getFrameSize(width, height);
+        ByteBuffer nv21 =
+                reuse != null && reuse.capacity() >= size ? reuse : ByteBuffer.allocateDirect(size);
+        Nv21Transforms.fromYuv420(planes[0].getBuffer(), planes[1].getBuffer(),
+                planes[2].getBuffer(), planes[0].getRowStride(), planes[1].getRowStride(),
+                planes[1].getPixelStride(), width, height, nv21);
+        return nv21;
+    }
+
+    // The overlay maps results with the upright size, which only changes with the camera.
+    private void updateOverlay(FrameMetadata metadata) {
+        boolean sideways = (metadata.getRotation() & 1) != 0;
+        int width = sideways ? metadata.getHeight() : metadata.getWidth();
+        int height = sideways ? metadata.getWidth() : metadata.getHeight();
+        if (width != overlayWidth || height != overlayHeight) {
+            overlayWidth = width;
+            overlayHeight = height;
+            graphicOverlay.setCameraInfo(width, height, metadata.getCameraFacing());
+        }
+    }
+}
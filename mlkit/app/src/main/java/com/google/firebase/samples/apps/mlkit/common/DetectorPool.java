@@ -0,0 +1,151 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A fixed set of detector instances, such as {@code FirebaseVisionTextRecognizer}s, so that
+ * several frames can be in detection at the same time, each on an instance of its own.
+ *
+ * <p>The pool keeps every instance once. A factory that hands out the same instance again, as
+ * the {@code FirebaseVision} getters may for detectors they cache, makes for a smaller pool:
+ * {@link #size()} counts distinct detectors only, and {@link #close()} closes each of them once.
+ *
+ * @param <D> The type of the detector.
+ */
+public class DetectorPool<D extends Closeable> {
+
+    private static final String TAG = "DetectorPool";
+
+    /** Creates the detector instances of a pool. */
+    public interface Factory<D> {
+        D create();
+    }
+
+    // Runs listeners on the thread that completes the task.
+    private static final Executor DIRECT_EXECUTOR =
+            new Executor() {
+                @Override
+                public void execute(@NonNull Runnable command) {
+                    command.run();
+                }
+            };
+
+    private final List<D> detectors;
+    private final ArrayDeque<D> free;
+    private boolean closed;
+
+    public DetectorPool(int size, Factory<D> factory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Invalid pool size: " + size);
+        }
+        detectors = new ArrayList<>(size);
+        free = new ArrayDeque<>(size);
+        for (int i = 0; i < size; i++) {
+            D detector = factory.create();
+            if (indexOf(detector) >= 0) {
+                // Sharing it would gain nothing and close it more than once.
+                Log.w(TAG, "Factory returned the same detector again, the pool keeps it once.");
+                continue;
+            }
+            detectors.add(detector);
+            free.add(detector);
+        }
+    }
+
+    /** Number of distinct detectors, and so of calls that can run at the same time. */
+    public int size() {
+        return detectors.size();
+    }
+
+    /**
+     * Takes a detector for one call. Never blocks.
+     *
+     * @return a detector no one else is using, or null if all of them are in use or the pool is
+     *     closed
+     */
+    @Nullable
+    public synchronized D acquire() {
+        return closed ? null : free.pollFirst();
+    }
+
+    /** Hands back a detector taken with {@link #acquire()}. */
+    public synchronized void release(D detector) {
+        if (indexOf(detector) < 0) {
+            throw new IllegalArgumentException("Not a detector of this pool");
+        }
+        free.addFirst(detector);
+    }
+
+    /**
+     * Releases {@code detector} once {@code task}, a call made on it, completes. The release runs
+     * on the thread completing the task, so the detector is free again by the time listeners on
+     * other threads, such as the main thread, or callers of {@code Tasks.await} see the result.
+     *
+     * @return {@code task}
+     */
+    public <R> Task<R> releaseOnCompletion(final D detector, Task<R> task) {
+        return task.addOnCompleteListener(
+                DIRECT_EXECUTOR,
+                new OnCompleteListener<R>() {
+                    @Override
+                    public void onComplete(@NonNull Task<R> completed) {
+                        release(detector);
+                    }
+                });
+    }
+
+    /**
+     * Closes every detector. Detectors still in use are closed too, so only call this once their
+     * calls are done or may fail.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        free.clear();
+        for (D detector : detectors) {
+            try {
+                detector.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Exception thrown while trying to close detector: " + e);
+            }
+        }
+    }
+
+    // Detectors need not override equals, but two of them must never be the same instance.
+    private int indexOf(D detector) {
+        for (int i = 0; i < detectors.size(); i++) {
+            if (detectors.get(i) == detector) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,231 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands frames from the camera thread to a dedicated processing thread, which calls the current
+ * {@link VisionImageProcessor} with them, without either side taking a lock.
+ *
+ * <p>The handoff is a single slot: {@link #offer(Object)} swaps the new frame in and the frame it
+ * displaced, which the processing thread never got to, goes back to the {@link Delegate}. The
+ * processing thread parks while the slot is empty and is unparked by the next offer.
+ *
+ * <p>The processor can be swapped or released from any thread at any time without waiting for a
+ * {@code process(...)} call in flight. The processing thread publishes the processor it is
+ * calling; a replaced processor is only stopped once it is no longer in use, either right away by
+ * the thread that replaced it or by the processing thread when its call returns.
+ *
+ * @param <F> the type of the frames
+ */
+public class FrameDispatcher<F> {
+
+    private static final String TAG = "MIDemoApp:Dispatcher";
+
+    /** Processes and recycles frames on behalf of the dispatcher. */
+    public interface Delegate<F> {
+
+        /** Runs {@code processor} on {@code frame}. Called on the processing thread. */
+        void process(VisionImageProcessor processor, F frame) throws Exception;
+
+        /** Takes back a frame that was processed, or that failed to process. */
+        void recycle(F frame);
+
+        /** Takes back a frame that was skipped without being processed. */
+        void drop(F frame);
+    }
+
+    private final Delegate<F> delegate;
+    private final String threadName;
+
+    private final AtomicReference<F> pendingFrame = new AtomicReference<>();
+    private final AtomicReference<VisionImageProcessor> processor = new AtomicReference<>();
+    // The processor the processing thread is calling, published before the call.
+    private final AtomicReference<VisionImageProcessor> processorInUse = new AtomicReference<>();
+    // Replaced processors waiting to be stopped.
+    private final ConcurrentLinkedQueue<VisionImageProcessor> retiredProcessors =
+            new ConcurrentLinkedQueue<>();
+
+    @Nullable private volatile Thread processingThread;
+    private volatile boolean active;
+
+    public FrameDispatcher(String threadName, Delegate<F> delegate) {
+        this.threadName = threadName;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Starts the processing thread. If a previous thread is still finishing its last frame after
+     * {@link #stop()}, waits for it first so that a processor is never called from two threads.
+     */
+    public synchronized void start() {
+        if (active) {
+            return;
+        }
+        Thread previous = processingThread;
+        if (previous != null) {
+            try {
+                previous.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        active = true;
+        Thread thread = new Thread(new ProcessingRunnable(), threadName);
+        processingThread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the processing thread without waiting for it: a frame in flight finishes in the
+     * background and frames still pending are dropped.
+     */
+    public synchronized void stop() {
+        active = false;
+        Thread thread = processingThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        F frame = pendingFrame.getAndSet(null);
+        if (frame != null) {
+            delegate.drop(frame);
+        }
+    }
+
+    /** Waits until the processing thread has exited after {@link #stop()}. */
+    public void awaitStopped() throws InterruptedException {
+        Thread thread = processingThread;
+        if (thread != null && !active) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Replaces the processor, which may be null. Never blocks; the previous processor is stopped as
+     * soon as it is not in use any more.
+     */
+    public void setProcessor(@Nullable VisionImageProcessor newProcessor) {
+        VisionImageProcessor previous = processor.getAndSet(newProcessor);
+        if (previous != null && previous != newProcessor) {
+            retiredProcessors.add(previous);
+            stopRetiredProcessors();
+        }
+    }
+
+    @Nullable
+    public VisionImageProcessor getProcessor() {
+        return processor.get();
+    }
+
+    /**
+     * Offers a frame from the producer thread. The frame pending before, if any, is dropped. Frames
+     * offered while stopped are dropped right away.
+     */
+    public void offer(F frame) {
+        if (!active) {
+            delegate.drop(frame);
+            return;
+        }
+        F displaced = pendingFrame.getAndSet(frame);
+        if (displaced != null) {
+            delegate.drop(displaced);
+        }
+        Thread thread = processingThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        if (!active) {
+            // Raced with stop(); make sure the frame does not linger in the slot.
+            F leftover = pendingFrame.getAndSet(null);
+            if (leftover != null) {
+                delegate.drop(leftover);
+            }
+        }
+    }
+
+    private void stopRetiredProcessors() {
+        VisionImageProcessor retired;
+        while ((retired = retiredProcessors.poll()) != null) {
+            if (retired == processorInUse.get()) {
+                retiredProcessors.add(retired);
+                if (retired == processorInUse.get()) {
+                    // Still in a process() call. The processing thread looks at the queue after
+                    // the call returns, so it will stop it.
+                    return;
+                }
+                // The call returned in the meantime, maybe before the processing thread looked
+                // at the queue, so take care of it here.
+                continue;
+            }
+            retired.stop();
+        }
+    }
+
+    // Publishes the current processor as in use and returns it, or null if there is none.
+    @Nullable
+    private VisionImageProcessor acquireProcessor() {
+        while (true) {
+            VisionImageProcessor current = processor.get();
+            processorInUse.set(current);
+            // If it was swapped out before being published, the swapping thread may already have
+            // stopped it, so try again with the new one.
+            if (processor.get() == current) {
+                return current;
+            }
+        }
+    }
+
+    private class ProcessingRunnable implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (active) {
+                    F frame = pendingFrame.getAndSet(null);
+                    if (frame == null) {
+                        LockSupport.park(FrameDispatcher.this);
+                        continue;
+                    }
+                    if (!active) {
+                        delegate.drop(frame);
+                        break;
+                    }
+
+                    VisionImageProcessor current = acquireProcessor();
+                    try {
+                        if (current != null) {
+                            delegate.process(current, frame);
+                        }
+                    } catch (Throwable t) {
+                        Log.e(TAG, "Exception thrown from receiver.", t);
+                    } finally {
+                        processorInUse.set(null);
+                        delegate.recycle(frame);
+                    }
+                    stopRetiredProcessors();
+                }
+            } finally {
+                processorInUse.set(null);
+                stopRetiredProcessors();
+            }
+        }
+    }
+}
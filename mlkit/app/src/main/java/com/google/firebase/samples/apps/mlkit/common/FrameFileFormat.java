@@ -0,0 +1,67 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of recorded frame files: a file header followed by one record per frame, appended in
+ * capture order. All values are big endian.
+ *
+ * <pre>
+ * file header:   int magic ("NV21"), int version
+ * record header: int data size, int width, int height, int rotation, int facing,
+ *                long timestamp (nanoseconds)
+ * record data:   the NV21 frame, data size bytes
+ * </pre>
+ */
+public final class FrameFileFormat {
+
+    public static final int MAGIC = 0x4e563231;
+
+    public static final int VERSION = 1;
+
+    public static final int FILE_HEADER_SIZE = 8;
+
+    public static final int RECORD_HEADER_SIZE = 28;
+
+    private FrameFileFormat() {}
+
+    public static void writeFileHeader(ByteBuffer out) {
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+    }
+
+    /** Checks the file header at the current position of {@code in} and skips past it. */
+    public static void readFileHeader(ByteBuffer in) throws IOException {
+        if (in.remaining() < FILE_HEADER_SIZE || in.getInt() != MAGIC) {
+            throw new IOException("Not a frame recording.");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported frame recording version: " + version);
+        }
+    }
+
+    public static void writeRecordHeader(
+            ByteBuffer out, int dataSize, FrameMetadata metadata, long timestampNanos) {
+        out.putInt(dataSize);
+        out.putInt(metadata.getWidth());
+        out.putInt(metadata.getHeight());
+        out.putInt(metadata.getRotation());
+        out.putInt(metadata.getCameraFacing());
+        out.putLong(timestampNanos);
+    }
+}
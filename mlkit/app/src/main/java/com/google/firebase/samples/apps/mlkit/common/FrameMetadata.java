@@ -16,10 +16,18 @@ package com.google.firebase.samples.apps.mlkit.common;
 /** Describing a frame info. */
 public class FrameMetadata {
 
+  /** Sequence number of frames whose source does not number them. */
+  public static final long NO_SEQUENCE_NUMBER = -1;
+
   private final int width;
   private final int height;
   private final int rotation;
   private final int cameraFacing;
+  private final int detectionOffsetX;
+  private final int detectionOffsetY;
+  private final float detectionScale;
+  private final long sequenceNumber;
+  private final long captureTimeNanos;
 
   public int getWidth() {
     return width;
@@ -37,11 +45,78 @@ public class FrameMetadata {
     return cameraFacing;
   }
 
-  private FrameMetadata(int width, int height, int rotation, int facing) {
+  /**
+   * Where the image handed to the detector starts in the upright frame along the x axis, when only
+   * a region of the frame was detected on. Multiply the x coordinates of the results by {@link
+   * #getDetectionScale()} and add this to get coordinates in the full frame.
+   */
+  public int getDetectionOffsetX() {
+    return detectionOffsetX;
+  }
+
+  /** Counterpart of {@link #getDetectionOffsetX()} along the y axis. */
+  public int getDetectionOffsetY() {
+    return detectionOffsetY;
+  }
+
+  /**
+   * How many frame pixels one pixel of the image handed to the detector covers, when it was
+   * downscaled. 1 if it was not.
+   */
+  public float getDetectionScale() {
+    return detectionScale;
+  }
+
+  /**
+   * Position of the frame in the sequence its source delivered, counting up from 0 and never
+   * going back, even across restarts of the source. {@link #NO_SEQUENCE_NUMBER} if unknown.
+   */
+  public long getSequenceNumber() {
+    return sequenceNumber;
+  }
+
+  /**
+   * When the source received the frame from the camera, in {@link System#nanoTime()} time base,
+   * or 0 if unknown.
+   */
+  public long getCaptureTimeNanos() {
+    return captureTimeNanos;
+  }
+
+  /** Returns a copy of this metadata with the given detection offset and scale. */
+  public FrameMetadata withDetectionTransform(int offsetX, int offsetY, float scale) {
+    if (offsetX == detectionOffsetX && offsetY == detectionOffsetY && scale == detectionScale) {
+      return this;
+    }
+    return new FrameMetadata(width, height, rotation, cameraFacing, offsetX, offsetY, scale,
+        sequenceNumber, captureTimeNanos);
+  }
+
+  /** Returns a copy of this metadata with the given sequence number and capture time. */
+  public FrameMetadata withCapture(long sequenceNumber, long captureTimeNanos) {
+    return new FrameMetadata(width, height, rotation, cameraFacing, detectionOffsetX,
+        detectionOffsetY, detectionScale, sequenceNumber, captureTimeNanos);
+  }
+
+  private FrameMetadata(
+      int width,
+      int height,
+      int rotation,
+      int facing,
+      int detectionOffsetX,
+      int detectionOffsetY,
+      float detectionScale,
+      long sequenceNumber,
+      long captureTimeNanos) {
     this.width = width;
     this.height = height;
     this.rotation = rotation;
     cameraFacing = facing;
+    this.detectionOffsetX = detectionOffsetX;
+    this.detectionOffsetY = detectionOffsetY;
+    this.detectionScale = detectionScale;
+    this.sequenceNumber = sequenceNumber;
+    this.captureTimeNanos = captureTimeNanos;
   }
 
   /** Builder of {@link FrameMetadata}. */
@@ -51,6 +126,8 @@ public class FrameMetadata {
     private int height;
     private int rotation;
     private int cameraFacing;
+    private long sequenceNumber = NO_SEQUENCE_NUMBER;
+    private long captureTimeNanos;
 
     public Builder setWidth(int width) {
       this.width = width;
@@ -72,8 +149,19 @@ public class FrameMetadata {
       return this;
     }
 
+    public Builder setSequenceNumber(long sequenceNumber) {
+      this.sequenceNumber = sequenceNumber;
+      return this;
+    }
+
+    public Builder setCaptureTimeNanos(long captureTimeNanos) {
+      this.captureTimeNanos = captureTimeNanos;
+      return this;
+    }
+
     public FrameMetadata build() {
-      return new FrameMetadata(width, height, rotation, cameraFacing);
+      return new FrameMetadata(width, height, rotation, cameraFacing, 0, 0, 1f, sequenceNumber,
+          captureTimeNanos);
     }
   }
 }
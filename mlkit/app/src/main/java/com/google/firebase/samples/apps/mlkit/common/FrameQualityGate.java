@@ -0,0 +1,228 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps blurry frames away from the detector.
+ *
+ * <p>Frames are scored by the variance of the Laplacian of the NV21 luma plane, sampled on a
+ * coarse grid: sharp edges give a high variance, motion blur a low one. Scoring a 640x480 frame
+ * with the default grid touches a few thousand pixels. The gate either rejects frames scoring
+ * below a fixed threshold, or looks at a short window of frames and passes only the sharpest one.
+ *
+ * @param <E> the type of the frames, handed back through a {@link Listener}
+ */
+public class FrameQualityGate<E> {
+
+    /** Receives the gate's decisions. */
+    public interface Listener<E> {
+
+        /** {@code frame} is sharp enough to be detected on. */
+        void onPass(E frame);
+
+        /** {@code frame} was rejected and can be recycled. */
+        void onReject(E frame);
+    }
+
+    /** Default distance, in pixels, between sampled points in both directions. */
+    public static final int DEFAULT_GRID_STEP = 8;
+
+    private final double minSharpness;
+    private final int windowSize;
+    private final int gridStep;
+
+    @GuardedBy("this")
+    @Nullable
+    private E candidate;
+
+    @GuardedBy("this")
+    private double candidateScore;
+
+    @GuardedBy("this")
+    private int framesInWindow;
+
+    @GuardedBy("this")
+    private long passCount;
+
+    @GuardedBy("this")
+    private long rejectCount;
+
+    @GuardedBy("this")
+    private long scoringNanos;
+
+    @GuardedBy("this")
+    private double lastScore;
+
+    private FrameQualityGate(double minSharpness, int windowSize, int gridStep) {
+        if (windowSize < 1 || gridStep < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid window size " + windowSize + " or grid step " + gridStep);
+        }
+        this.minSharpness = minSharpness;
+        this.windowSize = windowSize;
+        this.gridStep = gridStep;
+    }
+
+    /** Passes every frame scoring at least {@code minSharpness}, rejects the others. */
+    public static <E> FrameQualityGate<E> threshold(double minSharpness) {
+        return new FrameQualityGate<>(minSharpness, 1, DEFAULT_GRID_STEP);
+    }
+
+    /**
+     * Passes the sharpest of every {@code windowSize} consecutive frames, once the window is
+     * complete, and rejects the others.
+     */
+    public static <E> FrameQualityGate<E> sharpestInWindow(int windowSize) {
+        return new FrameQualityGate<>(Double.NEGATIVE_INFINITY, windowSize, DEFAULT_GRID_STEP);
+    }
+
+    /** Scores {@code frame}, whose NV21 data is {@code nv21}, and reports the decision. */
+    public void submit(E frame, ByteBuffer nv21, int width, int height, Listener<E> listener) {
+        long startNanos = System.nanoTime();
+        double score = score(nv21, width, height, gridStep);
+        long elapsed = System.nanoTime() - startNanos;
+
+        E passed = null;
+        E rejected = null;
+        synchronized (this) {
+            scoringNanos += elapsed;
+            lastScore = score;
+            if (windowSize == 1) {
+                if (score >= minSharpness) {
+                    passed = frame;
+                } else {
+                    rejected = frame;
+                }
+            } else {
+                if (candidate == null || score > candidateScore) {
+                    rejected = candidate;
+                    candidate = frame;
+                    candidateScore = score;
+                } else {
+                    rejected = frame;
+                }
+                if (++framesInWindow == windowSize) {
+                    passed = candidate;
+                    candidate = null;
+                    framesInWindow = 0;
+                }
+            }
+            if (passed != null) {
+                passCount++;
+            }
+            if (rejected != null) {
+                rejectCount++;
+            }
+        }
+
+        if (rejected != null) {
+            listener.onReject(rejected);
+        }
+        if (passed != null) {
+            listener.onPass(passed);
+        }
+    }
+
+    /** Rejects the frame held as the sharpest of an incomplete window, if any. */
+    public void flush(Listener<E> listener) {
+        E held;
+        synchronized (this) {
+            held = candidate;
+            candidate = null;
+            framesInWindow = 0;
+        }
+        if (held != null) {
+            listener.onReject(held);
+        }
+    }
+
+    public synchronized long getPassCount() {
+        return passCount;
+    }
+
+    public synchronized long getRejectCount() {
+        return rejectCount;
+    }
+
+    /** Average time spent scoring one frame. */
+    public synchronized long getAverageScoringNanos() {
+        long scored = passCount + rejectCount + (candidate != null ? 1 : 0);
+        return scored == 0 ? 0 : scoringNanos / scored;
+    }
+
+    /** Score of the most recent frame, useful to pick a threshold. */
+    public synchronized double getLastScore() {
+        return lastScore;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FrameQualityGate{passed=" + passCount
+                + ", rejected=" + rejectCount
+                + ", scoringNanos=" + getAverageScoringNanos() + "}";
+    }
+
+    /**
+     * Returns the variance of the 4-neighbour Laplacian of the luma plane, evaluated every {@code
+     * gridStep} pixels in both directions.
+     */
+    public static double score(ByteBuffer nv21, int width, int height, int gridStep) {
+        long sum = 0;
+        long sumOfSquares = 0;
+        int count = 0;
+        if (nv21.hasArray()) {
+            byte[] y = nv21.array();
+            int offset = nv21.arrayOffset();
+            for (int row = 1; row < height - 1; row += gridStep) {
+                int index = offset + row * width + 1;
+                for (int col = 1; col < width - 1; col += gridStep, index += gridStep) {
+                    int laplacian =
+                            4 * (y[index] & 0xff)
+                                    - (y[index - 1] & 0xff)
+                                    - (y[index + 1] & 0xff)
+                                    - (y[index - width] & 0xff)
+                                    - (y[index + width] & 0xff);
+                    sum += laplacian;
+                    sumOfSquares += laplacian * laplacian;
+                    count++;
+                }
+            }
+        } else {
+            for (int row = 1; row < height - 1; row += gridStep) {
+                int index = row * width + 1;
+                for (int col = 1; col < width - 1; col += gridStep, index += gridStep) {
+                    int laplacian =
+                            4 * (nv21.get(index) & 0xff)
+                                    - (nv21.get(index - 1) & 0xff)
+                                    - (nv21.get(index + 1) & 0xff)
+                                    - (nv21.get(index - width) & 0xff)
+                                    - (nv21.get(index + width) & 0xff);
+                    sum += laplacian;
+                    sumOfSquares += laplacian * laplacian;
+                    count++;
+                }
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double mean = (double) sum / count;
+        return (double) sumOfSquares / count - mean * mean;
+    }
+}
@@ -0,0 +1,146 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import androidx.annotation.GuardedBy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches the rate at which camera frames are accepted for detection to how fast the detector
+ * actually is.
+ *
+ * <p>The detector reports each call's latency through {@link #onDetectionLatency(long)}, which
+ * feeds an exponentially weighted moving average. {@link #shouldAccept(long)} then lets a frame
+ * through only once a bit less than that average has passed since the last accepted frame, so a
+ * fresh frame is waiting when detection finishes but the processing thread is not woken up for
+ * frames that would be overwritten anyway. As latency falls the accepted rate climbs back up to
+ * the camera rate.
+ *
+ * <p>When the detector runs several frames at once, see {@link #setConcurrency(int)}, a frame is
+ * accepted that many times as often, so every detector in parallel stays busy.
+ */
+public class FrameRateGovernor {
+
+    /** Weight of the newest latency sample in the moving average. */
+    private static final double DEFAULT_SMOOTHING = 0.2;
+
+    /**
+     * Fraction of the average latency to wait between frames. Below 1 so a frame is ready slightly
+     * before the detector is, which keeps detection throughput unchanged.
+     */
+    private static final double DEFAULT_HEADROOM = 0.8;
+
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final double smoothing;
+    private final double headroom;
+
+    @GuardedBy("this")
+    private double averageLatencyNanos;
+
+    @GuardedBy("this")
+    private int concurrency = 1;
+
+    @GuardedBy("this")
+    private long lastAcceptedNanos = Long.MIN_VALUE;
+
+    @GuardedBy("this")
+    private long acceptedCount;
+
+    @GuardedBy("this")
+    private long skippedCount;
+
+    /**
+     * @param maxFps rate never exceeded, usually the camera frame rate
+     * @param minFps rate never gone below, however slow detection gets
+     */
+    public FrameRateGovernor(float maxFps, float minFps) {
+        this(maxFps, minFps, DEFAULT_SMOOTHING, DEFAULT_HEADROOM);
+    }
+
+    public FrameRateGovernor(float maxFps, float minFps, double smoothing, double headroom) {
+        if (minFps <= 0 || maxFps < minFps) {
+            throw new IllegalArgumentException("Invalid frame rate range: " + minFps + "-" + maxFps);
+        }
+        minIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / maxFps);
+        maxIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / minFps);
+        this.smoothing = smoothing;
+        this.headroom = headroom;
+    }
+
+    /**
+     * Returns whether a frame arriving at {@code nowNanos} ({@link System#nanoTime()} time base)
+     * should be handed to the detector. Accepting a frame starts the next interval.
+     */
+    public synchronized boolean shouldAccept(long nowNanos) {
+        // Camera frames arrive with some jitter, so allow half a frame of slack. Otherwise a frame
+        // arriving a hair early at the full rate would halve the accepted rate.
+        if (lastAcceptedNanos != Long.MIN_VALUE
+                && nowNanos - lastAcceptedNanos < getTargetIntervalNanosLocked() - minIntervalNanos / 2) {
+            skippedCount++;
+            return false;
+        }
+        lastAcceptedNanos = nowNanos;
+        acceptedCount++;
+        return true;
+    }
+
+    /** Feeds the latency of one detector call into the moving average. */
+    public synchronized void onDetectionLatency(long latencyNanos) {
+        if (averageLatencyNanos == 0) {
+            averageLatencyNanos = latencyNanos;
+        } else {
+            averageLatencyNanos += smoothing * (latencyNanos - averageLatencyNanos);
+        }
+    }
+
+    /** Sets how many frames the detector works on at the same time, 1 by default. */
+    public synchronized void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Invalid concurrency: " + concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+
+    /** Forgets the latency history, e.g. after the processor was swapped. */
+    public synchronized void reset() {
+        averageLatencyNanos = 0;
+        lastAcceptedNanos = Long.MIN_VALUE;
+    }
+
+    /** Current moving average of the detector latency. */
+    public synchronized long getAverageLatencyNanos() {
+        return (long) averageLatencyNanos;
+    }
+
+    /** Rate at which frames are currently accepted. */
+    public synchronized float getTargetFps() {
+        return (float) TimeUnit.SECONDS.toNanos(1) / getTargetIntervalNanosLocked();
+    }
+
+    public synchronized long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    @GuardedBy("this")
+    private long getTargetIntervalNanosLocked() {
+        long interval = (long) (averageLatencyNanos * headroom / concurrency);
+        return Math.max(minIntervalNanos, Math.min(maxIntervalNanos, interval));
+    }
+}
@@ -0,0 +1,267 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends camera frames to a recording in the {@link FrameFileFormat} layout, for replay with
+ * {@link ReplayFrameSource}.
+ *
+ * <p>{@link #record(ByteBuffer, FrameMetadata, long)} only copies the frame into one of a fixed
+ * number of pooled direct buffers and queues it; a background thread writes the record header and
+ * frame with a single gathering {@link FileChannel} write. When every buffer is still waiting for
+ * the disk, the frame is skipped instead of making the caller wait, so recording never stalls the
+ * camera's preview callback.
+ */
+public class FrameRecorder {
+
+    private static final String TAG = "MIDemoApp:FrameRecorder";
+
+    /** Default number of frames that can wait for the disk. */
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    /** A pooled record: its header, its frame data and the array handed to gathering writes. */
+    private static final class Record {
+        final ByteBuffer header = ByteBuffer.allocateDirect(FrameFileFormat.RECORD_HEADER_SIZE);
+        ByteBuffer data = ByteBuffer.allocateDirect(0);
+        final ByteBuffer[] buffers = new ByteBuffer[2];
+    }
+
+    // Marks the end of the write queue.
+    private static final Record END_OF_RECORDING = new Record();
+
+    private final File file;
+    private final BlockingQueue<Record> freeRecords;
+    private final BlockingQueue<Record> pendingRecords;
+
+    @Nullable private FileChannel channel;
+    @Nullable private Thread writerThread;
+
+    // Orders queueing a frame against stop() queueing the end marker, so that no frame lands
+    // behind the marker. Held only for the check and the queueing, never while waiting for the
+    // writer.
+    private final Object queueLock = new Object();
+
+    @GuardedBy("queueLock")
+    private boolean recording;
+
+    // Incremented by every stop(), so a frame copied during one recording is not queued in the
+    // next.
+    @GuardedBy("queueLock")
+    private int session;
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+
+    public FrameRecorder(File file) {
+        this(file, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param file the recording, appended to if it already exists
+     * @param poolSize number of frames that can wait for the disk before frames are skipped
+     */
+    public FrameRecorder(File file, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Invalid pool size: " + poolSize);
+        }
+        this.file = file;
+        freeRecords = new ArrayBlockingQueue<>(poolSize);
+        pendingRecords = new ArrayBlockingQueue<>(poolSize + 1);
+        for (int i = 0; i < poolSize; i++) {
+            freeRecords.add(new Record());
+        }
+    }
+
+    /** Opens the file, writing the file header if it is new, and starts the writer thread. */
+    public synchronized void start() throws IOException {
+        if (writerThread != null) {
+            return;
+        }
+        FileChannel fileChannel = new FileOutputStream(file, true /* append */).getChannel();
+        try {
+            if (fileChannel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(FrameFileFormat.FILE_HEADER_SIZE);
+                FrameFileFormat.writeFileHeader(header);
+                header.flip();
+                while (header.hasRemaining()) {
+                    bytesWritten.addAndGet(fileChannel.write(header));
+                }
+            }
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+        channel = fileChannel;
+        synchronized (queueLock) {
+            recording = true;
+        }
+        writerThread = new Thread(new WriterRunnable(fileChannel), "FrameRecorder");
+        writerThread.start();
+    }
+
+    /**
+     * Queues a frame for writing. Returns false, and counts the frame as skipped, if the recorder
+     * is not running or every pooled buffer is still waiting for the disk.
+     *
+     * @param timestampNanos capture time of the frame
+     */
+    public boolean record(ByteBuffer data, FrameMetadata metadata, long timestampNanos) {
+        Record record;
+        int recordSession;
+        synchronized (queueLock) {
+            record = recording ? freeRecords.poll() : null;
+            recordSession = session;
+        }
+        if (record == null) {
+            framesSkipped.incrementAndGet();
+            return false;
+        }
+
+        ByteBuffer source = data.duplicate();
+        source.rewind();
+        int size = source.remaining();
+        if (record.data.capacity() < size) {
+            record.data = ByteBuffer.allocateDirect(size);
+        }
+        record.data.clear();
+        record.data.put(source);
+        record.data.flip();
+
+        record.header.clear();
+        FrameFileFormat.writeRecordHeader(record.header, size, metadata, timestampNanos);
+        record.header.flip();
+
+        synchronized (queueLock) {
+            if (recording && session == recordSession) {
+                // Never blocks: the queue has room for every pooled record plus the end marker.
+                pendingRecords.add(record);
+                return true;
+            }
+        }
+        // Stopped while the frame was copied.
+        freeRecords.add(record);
+        framesSkipped.incrementAndGet();
+        return false;
+    }
+
+    /** Writes out the frames still queued, then stops the writer thread and closes the file. */
+    public synchronized void stop() {
+        if (writerThread == null) {
+            return;
+        }
+        synchronized (queueLock) {
+            recording = false;
+            session++;
+            pendingRecords.add(END_OF_RECORDING);
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close the recording.", e);
+        }
+        channel = null;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Number of bytes written to the file, headers included. */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    /** Number of frames dropped because the recorder was stopped or the disk could not keep up. */
+    public long getFramesSkipped() {
+        return framesSkipped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FrameRecorder{written=" + framesWritten.get()
+                + ", skipped=" + framesSkipped.get()
+                + ", bytes=" + bytesWritten.get() + "}";
+    }
+
+    private class WriterRunnable implements Runnable {
+        private final FileChannel channel;
+        private boolean failed;
+
+        WriterRunnable(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Record record;
+                try {
+                    record = pendingRecords.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (record == END_OF_RECORDING) {
+                    return;
+                }
+                if (!failed) {
+                    write(record);
+                } else {
+                    framesSkipped.incrementAndGet();
+                }
+                freeRecords.add(record);
+            }
+        }
+
+        private void write(Record record) {
+            record.buffers[0] = record.header;
+            record.buffers[1] = record.data;
+            try {
+                while (record.data.hasRemaining()) {
+                    bytesWritten.addAndGet(channel.write(record.buffers));
+                }
+                framesWritten.incrementAndGet();
+            } catch (IOException e) {
+                // Keep taking frames so the pool drains, but stop writing to a broken file.
+                Log.e(TAG, "Failed to write frame, recording stopped.", e);
+                failed = true;
+                framesSkipped.incrementAndGet();
+            }
+        }
+    }
+}
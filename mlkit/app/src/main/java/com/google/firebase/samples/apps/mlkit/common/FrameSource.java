@@ -0,0 +1,35 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.io.IOException;
+
+/**
+ * Something that delivers NV21 frames to a {@link VisionImageProcessor}, such as the device camera
+ * ({@link CameraSource}) or a recording ({@link ReplayFrameSource}).
+ */
+public interface FrameSource {
+
+  /** Starts delivering frames to the current processor. */
+  FrameSource start() throws IOException;
+
+  /** Stops delivering frames. The source may be started again. */
+  void stop();
+
+  /** Stops the source for good and releases the resources of the processor. */
+  void release();
+
+  /** Sets the processor that receives the frames, stopping the previous one. */
+  void setMachineLearningFrameProcessor(VisionImageProcessor processor);
+}
@@ -18,10 +18,13 @@ import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.view.View;
 
+import androidx.annotation.Nullable;
+
 import com.google.android.gms.vision.CameraSource;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A view which renders a series of custom graphics to be overlayed on top of an associated preview
@@ -41,6 +44,13 @@ import java.util.List;
  *   <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the
  *       coordinate from the preview's coordinate system to the view coordinate system.
  * </ol>
+ *
+ * <p>When only a region of the frame, or a downscaled frame, was detected on, {@link
+ * #setDetectionTransform(int, int, float)} moves translated coordinates to where they are in the
+ * preview.
+ *
+ * <p>Several contributors can redraw the overlay as one with {@link #beginUpdate()} and {@link
+ * #endUpdate()}, such as several detectors showing their results on the same frame.
  */
 public class GraphicOverlay extends View {
   private final Object lock = new Object();
@@ -49,8 +59,26 @@ public class GraphicOverlay extends View {
   private int previewHeight;
   private float heightScaleFactor = 1.0f;
   private int facing = CameraSource.CAMERA_FACING_BACK;
+  private int detectionOffsetX;
+  private int detectionOffsetY;
+  private float detectionScale = 1.0f;
   private final List<Graphic> graphics = new ArrayList<>();
 
+  // Nesting depth of beginUpdate calls, and whether an invalidation was held back meanwhile.
+  private int updateDepth;
+  private boolean invalidationPending;
+  private final AtomicLong invalidationCount = new AtomicLong();
+
+  // When the oldest invalidation not yet drawn was posted, or 0, and where to record its latency.
+  private final AtomicLong invalidatedAtNanos = new AtomicLong();
+  @Nullable private volatile LatencyHistogram invalidationLatency;
+
+  // The frame the graphics come from, when it was captured until that has been drawn, and where
+  // to record how long it took to show it.
+  private volatile long frameSequenceNumber = FrameMetadata.NO_SEQUENCE_NUMBER;
+  private final AtomicLong undrawnCaptureTimeNanos = new AtomicLong();
+  @Nullable private volatile LatencyHistogram endToEndLatency;
+
   /**
    * Base class for a custom graphics object to be rendered within the graphic overlay. Subclass
    * this and implement the {@link Graphic#draw(Canvas)} method to define the graphics element. Add
@@ -99,10 +127,11 @@ public class GraphicOverlay extends View {
      * Adjusts the x coordinate from the preview's coordinate system to the view coordinate system.
      */
     public float translateX(float x) {
+      float previewX = x * overlay.detectionScale + overlay.detectionOffsetX;
       if (overlay.facing == CameraSource.CAMERA_FACING_FRONT) {
-        return overlay.getWidth() - scaleX(x);
+        return overlay.getWidth() - scaleX(previewX);
       } else {
-        return scaleX(x);
+        return scaleX(previewX);
       }
     }
 
@@ -110,26 +139,82 @@ public class GraphicOverlay extends View {
      * Adjusts the y coordinate from the preview's coordinate system to the view coordinate system.
      */
     public float translateY(float y) {
-      return scaleY(y);
+      return scaleY(y * overlay.detectionScale + overlay.detectionOffsetY);
     }
 
     public void postInvalidate() {
       overlay.postInvalidate();
     }
+
+    /**
+     * Called once the graphic has been removed from the overlay and will not be drawn again.
+     * Subclasses holding pooled resources should hand them back here.
+     */
+    public void release() {}
   }
 
   public GraphicOverlay(Context context, AttributeSet attrs) {
     super(context, attrs);
   }
 
-  /** Removes all graphics from the overlay. */
+  /**
+   * Removes all graphics from the overlay. Within {@link #beginUpdate()} and {@link #endUpdate()},
+   * keeps the graphics added since {@link #beginUpdate()}, which already cleared the overlay.
+   */
   public void clear() {
     synchronized (lock) {
-      graphics.clear();
+      if (updateDepth > 0) {
+        return;
+      }
     }
+    removeAll();
     postInvalidate();
   }
 
+  /**
+   * Clears the overlay and starts an update that ends with the matching {@link #endUpdate()}.
+   * Meanwhile {@link #clear()} does not remove the graphics added by other contributors, and the
+   * overlay is not redrawn. Updates may nest; only the outermost one clears and redraws.
+   */
+  public void beginUpdate() {
+    boolean outermost;
+    synchronized (lock) {
+      outermost = updateDepth++ == 0;
+    }
+    if (outermost) {
+      removeAll();
+      postInvalidate();
+    }
+  }
+
+  /** Ends the update started by {@link #beginUpdate()}, redrawing the overlay if it changed. */
+  public void endUpdate() {
+    boolean invalidate;
+    synchronized (lock) {
+      if (updateDepth == 0) {
+        throw new IllegalStateException("endUpdate() without beginUpdate()");
+      }
+      invalidate = --updateDepth == 0 && invalidationPending;
+      if (invalidate) {
+        invalidationPending = false;
+      }
+    }
+    if (invalidate) {
+      postInvalidate();
+    }
+  }
+
+  private void removeAll() {
+    List<Graphic> removed;
+    synchronized (lock) {
+      removed = new ArrayList<>(graphics);
+      graphics.clear();
+    }
+    for (Graphic graphic : removed) {
+      graphic.release();
+    }
+  }
+
   /** Adds a graphic to the overlay. */
   public void add(Graphic graphic) {
     synchronized (lock) {
@@ -139,12 +224,67 @@ public class GraphicOverlay extends View {
 
   /** Removes a graphic from the overlay. */
   public void remove(Graphic graphic) {
+    boolean removed;
     synchronized (lock) {
-      graphics.remove(graphic);
+      removed = graphics.remove(graphic);
+    }
+    if (removed) {
+      graphic.release();
     }
     postInvalidate();
   }
 
+  /**
+   * Sets the histogram that records how long it takes from {@link #postInvalidate()} until the
+   * overlay has been drawn.
+   */
+  public void setInvalidationLatencyHistogram(@Nullable LatencyHistogram histogram) {
+    invalidationLatency = histogram;
+  }
+
+  /**
+   * Sets the histogram that records how long it takes from a frame being captured until the
+   * overlay has drawn its graphics, see {@link #setFrameInfo(FrameMetadata)}.
+   */
+  public void setEndToEndLatencyHistogram(@Nullable LatencyHistogram histogram) {
+    endToEndLatency = histogram;
+  }
+
+  /**
+   * Sets the frame the graphics about to be added come from. The next draw records the time since
+   * the frame was captured as end-to-end latency, if the capture time is known.
+   */
+  public void setFrameInfo(FrameMetadata metadata) {
+    frameSequenceNumber = metadata.getSequenceNumber();
+    undrawnCaptureTimeNanos.set(metadata.getCaptureTimeNanos());
+  }
+
+  /**
+   * Returns the sequence number of the frame the graphics come from, or {@link
+   * FrameMetadata#NO_SEQUENCE_NUMBER} if unknown.
+   */
+  public long getFrameSequenceNumber() {
+    return frameSequenceNumber;
+  }
+
+  @Override
+  public void postInvalidate() {
+    synchronized (lock) {
+      if (updateDepth > 0) {
+        invalidationPending = true;
+        return;
+      }
+    }
+    invalidationCount.incrementAndGet();
+    invalidatedAtNanos.compareAndSet(0, System.nanoTime());
+    super.postInvalidate();
+  }
+
+  /** Number of redraws requested so far, not counting those held back within an update. */
+  public long getInvalidationCount() {
+    return invalidationCount.get();
+  }
+
   /**
    * Sets the camera attributes for size and facing direction, which informs how to transform image
    * coordinates later.
@@ -158,6 +298,20 @@ public class GraphicOverlay extends View {
     postInvalidate();
   }
 
+  /**
+   * Sets where, in the upright preview, the image the current graphics were detected on starts,
+   * and how much it was downscaled. Translated coordinates are scaled and offset accordingly, so
+   * results detected on a cropped or downscaled image line up with the preview. Use the detection
+   * offset and scale of the {@link FrameMetadata} of the frame the graphics come from.
+   */
+  public void setDetectionTransform(int offsetX, int offsetY, float scale) {
+    synchronized (lock) {
+      detectionOffsetX = offsetX;
+      detectionOffsetY = offsetY;
+      detectionScale = scale;
+    }
+  }
+
   /** Draws the overlay with its associated graphic objects. */
   @Override
   protected void onDraw(Canvas canvas) {
@@ -173,5 +327,16 @@ public class GraphicOverlay extends View {
         graphic.draw(canvas);
       }
     }
+
+    long invalidatedAt = invalidatedAtNanos.getAndSet(0);
+    LatencyHistogram histogram = invalidationLatency;
+    if (invalidatedAt != 0 && histogram != null) {
+      histogram.recordSince(invalidatedAt);
+    }
+    long capturedAt = undrawnCaptureTimeNanos.getAndSet(0);
+    LatencyHistogram endToEnd = endToEndLatency;
+    if (capturedAt != 0 && endToEnd != null) {
+      endToEnd.recordSince(capturedAt);
+    }
   }
 }
@@ -0,0 +1,108 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+/**
+ * Bookkeeping for frames detected on concurrently: caps how many are in flight at once, numbers
+ * them in the order they start, and only lets results through in that order.
+ *
+ * <p>Detections do not necessarily finish in the order they started. A result that finishes after
+ * the result of a newer frame has been delivered is stale, and {@link #finish(long)} says to drop
+ * it, so what is shown never goes back in time.
+ */
+public class InFlightWindow {
+
+    /** Returned by {@link #begin()} when the window is full. */
+    public static final long NONE = -1;
+
+    private int maxInFlight;
+    private int inFlight;
+    private long nextSequence;
+    private long lastDelivered = NONE;
+    private long staleCount;
+
+    public InFlightWindow(int maxInFlight) {
+        setMaxInFlight(maxInFlight);
+    }
+
+    /**
+     * Sets how many frames may be in flight. Lowering it does not affect the frames already in
+     * flight; new ones only start once enough of them have finished.
+     */
+    public synchronized void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Invalid in-flight limit: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    public synchronized int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public synchronized boolean hasRoom() {
+        return inFlight < maxInFlight;
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    /**
+     * Starts a frame.
+     *
+     * @return the sequence number of the frame, to pass to {@link #finish(long)} or {@link
+     *     #cancel(long)}, or {@link #NONE} if as many frames as allowed are in flight already
+     */
+    public synchronized long begin() {
+        if (inFlight >= maxInFlight) {
+            return NONE;
+        }
+        inFlight++;
+        return nextSequence++;
+    }
+
+    /**
+     * Ends a frame that has results.
+     *
+     * @return true if the results are to be delivered, false if those of a newer frame were
+     *     delivered already
+     */
+    public synchronized boolean finish(long sequence) {
+        end();
+        if (sequence <= lastDelivered) {
+            staleCount++;
+            return false;
+        }
+        lastDelivered = sequence;
+        return true;
+    }
+
+    /** Ends a frame without results, such as one whose detection failed. */
+    public synchronized void cancel(long sequence) {
+        end();
+    }
+
+    /** Number of results {@link #finish(long)} said to drop. */
+    public synchronized long getStaleCount() {
+        return staleCount;
+    }
+
+    private void end() {
+        if (inFlight == 0) {
+            throw new IllegalStateException("No frame in flight");
+        }
+        inFlight--;
+    }
+}
@@ -0,0 +1,199 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts NV21 camera frames straight to packed ARGB_8888 pixels.
+ *
+ * <p>This replaces the YuvImage -> JPEG -> BitmapFactory round trip that used to be done for
+ * every preview frame. The conversion uses the BT.601 video-range coefficients in 10-bit fixed
+ * point, so it only needs integer math and no allocation per frame. {@link #convertYuv420} does
+ * the same for YUV_420_888 images read plane by plane.
+ */
+public final class Nv21Converter {
+
+    private Nv21Converter() {}
+
+    /** Returns the number of bytes an NV21 frame of the given size occupies. */
+    public static int getFrameSize(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * Converts one NV21 frame into {@code argbOut}, row by row, without any rotation.
+     *
+     * @param nv21 the frame data, Y plane followed by interleaved V/U samples
+     * @param width width of the frame in pixels
+     * @param height height of the frame in pixels
+     * @param argbOut destination array, must hold at least {@code width * height} pixels
+     */
+    public static void convert(byte[] nv21, int width, int height, int[] argbOut) {
+        convert(nv21, width, height, 0, false, argbOut);
+    }
+
+    /**
+     * Converts one NV21 frame into {@code argbOut}, turned upright and optionally mirrored on the
+     * way, so no second pass over the pixels is needed. The output is {@code height} pixels wide
+     * and {@code width} pixels high for a quarter or three quarter turn.
+     *
+     * @param rotation number of clockwise quarter turns that make the frame upright, as the {@code
+     *                 FirebaseVisionImageMetadata.ROTATION_*} constants
+     * @param mirror whether to flip the upright frame horizontally, as for the front camera
+     */
+    public static void convert(
+            byte[] nv21, int width, int height, int rotation, boolean mirror, int[] argbOut) {
+        if (nv21.length < getFrameSize(width, height)) {
+            throw new IllegalArgumentException("NV21 buffer too small for " + width + "x" + height);
+        }
+        if (argbOut.length < width * height) {
+            throw new IllegalArgumentException("ARGB buffer too small for " + width + "x" + height);
+        }
+
+        rotation &= 3;
+        int outWidth = (rotation & 1) == 0 ? width : height;
+        int outStep = getOutputStep(outWidth, rotation, mirror);
+        int frameSize = width * height;
+        int chromaStride = 2 * ((width + 1) / 2);
+        for (int row = 0; row < height; row++) {
+            int yIndex = row * width;
+            int uvIndex = frameSize + (row >> 1) * chromaStride;
+            int outIndex = getOutputRowStart(row, width, height, rotation, mirror);
+            int v = 0;
+            int u = 0;
+            for (int col = 0; col < width; col++, yIndex++, outIndex += outStep) {
+                if ((col & 1) == 0) {
+                    v = (nv21[uvIndex++] & 0xff) - 128;
+                    u = (nv21[uvIndex++] & 0xff) - 128;
+                }
+                argbOut[outIndex] = toArgb(nv21[yIndex] & 0xff, u, v);
+            }
+        }
+    }
+
+    /**
+     * Converts a YUV_420_888 image, given as its three planes, like {@link #convert(byte[], int,
+     * int, int, boolean, int[])} does for NV21. The planes are read in place, whatever their row
+     * and pixel strides, so camera images need not be repacked into NV21 first.
+     */
+    public static void convertYuv420(
+            ByteBuffer yPlane,
+            ByteBuffer uPlane,
+            ByteBuffer vPlane,
+            int yRowStride,
+            int uvRowStride,
+            int uvPixelStride,
+            int width,
+            int height,
+            int rotation,
+            boolean mirror,
+            int[] argbOut) {
+        if (argbOut.length < width * height) {
+            throw new IllegalArgumentException("ARGB buffer too small for " + width + "x" + height);
+        }
+        rotation &= 3;
+        int outWidth = (rotation & 1) == 0 ? width : height;
+        int outStep = getOutputStep(outWidth, rotation, mirror);
+        for (int row = 0; row < height; row++) {
+            int yIndex = row * yRowStride;
+            int uvIndex = (row >> 1) * uvRowStride;
+            int outIndex = getOutputRowStart(row, width, height, rotation, mirror);
+            int v = 0;
+            int u = 0;
+            for (int col = 0; col < width; col++, yIndex++, outIndex += outStep) {
+                if ((col & 1) == 0) {
+                    v = (vPlane.get(uvIndex) & 0xff) - 128;
+                    u = (uPlane.get(uvIndex) & 0xff) - 128;
+                    uvIndex += uvPixelStride;
+                }
+                argbOut[outIndex] = toArgb(yPlane.get(yIndex) & 0xff, u, v);
+            }
+        }
+    }
+
+    // How far apart, in the output, two neighbouring pixels of a source row end up: along an
+    // output row for no or a half turn, down an output column for a quarter or three quarter turn.
+    private static int getOutputStep(int outWidth, int rotation, boolean mirror) {
+        int stepX;
+        int stepY;
+        switch (rotation) {
+            case 1:
+                stepX = 0;
+                stepY = 1;
+                break;
+            case 2:
+                stepX = -1;
+                stepY = 0;
+                break;
+            case 3:
+                stepX = 0;
+                stepY = -1;
+                break;
+            default:
+                stepX = 1;
+                stepY = 0;
+                break;
+        }
+        return stepY * outWidth + (mirror ? -stepX : stepX);
+    }
+
+    // Where, in the output, the first pixel of a source row ends up.
+    private static int getOutputRowStart(
+            int row, int width, int height, int rotation, boolean mirror) {
+        int outWidth = (rotation & 1) == 0 ? width : height;
+        int outX;
+        int outY;
+        switch (rotation) {
+            case 1:
+                outX = height - 1 - row;
+                outY = 0;
+                break;
+            case 2:
+                outX = width - 1;
+                outY = height - 1 - row;
+                break;
+            case 3:
+                outX = row;
+                outY = width - 1;
+                break;
+            default:
+                outX = 0;
+                outY = row;
+                break;
+        }
+        if (mirror) {
+            outX = outWidth - 1 - outX;
+        }
+        return outY * outWidth + outX;
+    }
+
+    /**
+     * Converts a single YUV sample to an opaque ARGB pixel. {@code u} and {@code v} are already
+     * centered around zero.
+     */
+    static int toArgb(int y, int u, int v) {
+        int y1192 = 1192 * Math.max(0, y - 16);
+        int r = y1192 + 1634 * v;
+        int g = y1192 - 833 * v - 400 * u;
+        int b = y1192 + 2066 * u;
+
+        // Clamp to the 18 bit range before shifting the channels into place.
+        r = r < 0 ? 0 : (r > 262143 ? 262143 : r);
+        g = g < 0 ? 0 : (g > 262143 ? 262143 : g);
+        b = b < 0 ? 0 : (b > 262143 ? 262143 : b);
+
+        return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+    }
+}
@@ -0,0 +1,219 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Geometric operations on NV21 frames that produce another NV21 frame, so the result can be
+ * handed to the detector without going through a bitmap.
+ *
+ * <p>Chroma is subsampled 2x2 in NV21, one V/U pair per 2x2 block of luma, so the operations
+ * keep luma and chroma aligned by working on even coordinates.
+ */
+public final class Nv21Transforms {
+
+    private Nv21Transforms() {}
+
+    /**
+     * Copies the {@code width x height} region at ({@code left}, {@code top}) of {@code src} into
+     * {@code dst}, as a frame of its own.
+     *
+     * @param left left edge of the region, must be even
+     * @param top top edge of the region, must be even
+     * @param dst receives the cropped frame from position 0, and is flipped for reading; must hold
+     *            at least {@link Nv21Converter#getFrameSize(int, int)} bytes for the region
+     */
+    public static void crop(
+            ByteBuffer src,
+            int srcWidth,
+            int srcHeight,
+            int left,
+            int top,
+            int width,
+            int height,
+            ByteBuffer dst) {
+        if ((left & 1) != 0 || (top & 1) != 0) {
+            throw new IllegalArgumentException(
+                    "Crop origin " + left + "," + top + " is not aligned to the chroma grid");
+        }
+        if (left < 0 || top < 0 || width <= 0 || height <= 0
+                || left + width > srcWidth || top + height > srcHeight) {
+            throw new IllegalArgumentException("Crop " + left + "," + top + " " + width + "x"
+                    + height + " is outside of the " + srcWidth + "x" + srcHeight + " frame");
+        }
+        int dstSize = Nv21Converter.getFrameSize(width, height);
+        if (dst.capacity() < dstSize) {
+            throw new IllegalArgumentException("Destination too small for " + width + "x" + height);
+        }
+
+        int srcLumaSize = srcWidth * srcHeight;
+        int srcChromaStride = 2 * ((srcWidth + 1) / 2);
+        int dstChromaStride = 2 * ((width + 1) / 2);
+        int chromaRows = (height + 1) / 2;
+        int chromaTop = top / 2;
+
+        if (src.hasArray() && dst.hasArray()) {
+            byte[] in = src.array();
+            int inOffset = src.arrayOffset();
+            byte[] out = dst.array();
+            int outOffset = dst.arrayOffset();
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(in, inOffset + (top + row) * srcWidth + left,
+                        out, outOffset + row * width, width);
+            }
+            int outChroma = outOffset + width * height;
+            for (int row = 0; row < chromaRows; row++) {
+                System.arraycopy(in, inOffset + srcLumaSize + (chromaTop + row) * srcChromaStride
+                        + left, out, outChroma + row * dstChromaStride, dstChromaStride);
+            }
+        } else {
+            ByteBuffer in = src.duplicate();
+            dst.clear();
+            for (int row = 0; row < height; row++) {
+                int start = (top + row) * srcWidth + left;
+                in.limit(start + width).position(start);
+                dst.put(in);
+            }
+            for (int row = 0; row < chromaRows; row++) {
+                int start = srcLumaSize + (chromaTop + row) * srcChromaStride + left;
+                in.limit(start + dstChromaStride).position(start);
+                dst.put(in);
+            }
+        }
+        dst.limit(dstSize).position(0);
+    }
+
+    /**
+     * Packs a YUV_420_888 image, given as its three planes, into the NV21 frame {@code dst}, for
+     * consumers that only take NV21. Luma rows are copied in bulk, chroma sample by sample.
+     *
+     * @param dst receives the frame from position 0, and is flipped for reading; must hold at
+     *            least {@link Nv21Converter#getFrameSize(int, int)} bytes
+     */
+    public static void fromYuv420(
+            ByteBuffer yPlane,
+            ByteBuffer uPlane,
+            ByteBuffer vPlane,
+            int yRowStride,
+            int uvRowStride,
+            int uvPixelStride,
+            int width,
+            int height,
+            ByteBuffer dst) {
+        int dstSize = Nv21Converter.getFrameSize(width, height);
+        if (dst.capacity() < dstSize) {
+            throw new IllegalArgumentException("Destination too small for " + width + "x" + height);
+        }
+        dst.clear();
+        ByteBuffer y = yPlane.duplicate();
+        for (int row = 0; row < height; row++) {
+            int start = row * yRowStride;
+            y.limit(start + width).position(start);
+            dst.put(y);
+        }
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        for (int row = 0; row < chromaHeight; row++) {
+            int index = row * uvRowStride;
+            for (int col = 0; col < chromaWidth; col++, index += uvPixelStride) {
+                dst.put(vPlane.get(index));
+                dst.put(uPlane.get(index));
+            }
+        }
+        dst.limit(dstSize).position(0);
+    }
+
+    /**
+     * Shrinks {@code src} to {@code dstWidth x dstHeight} into {@code dst} with a box filter: each
+     * destination sample is the average of the source samples it covers, for luma and both chroma
+     * channels alike. Any ratio works, integer ratios give boxes of equal size.
+     *
+     * @param dst receives the scaled frame from position 0, and is flipped for reading; must hold
+     *            at least {@link Nv21Converter#getFrameSize(int, int)} bytes for the new size
+     */
+    public static void downscale(
+            ByteBuffer src, int srcWidth, int srcHeight, ByteBuffer dst, int dstWidth, int dstHeight) {
+        if (dstWidth <= 0 || dstHeight <= 0 || dstWidth > srcWidth || dstHeight > srcHeight) {
+            throw new IllegalArgumentException("Cannot downscale " + srcWidth + "x" + srcHeight
+                    + " to " + dstWidth + "x" + dstHeight);
+        }
+        int dstSize = Nv21Converter.getFrameSize(dstWidth, dstHeight);
+        if (dst.capacity() < dstSize) {
+            throw new IllegalArgumentException(
+                    "Destination too small for " + dstWidth + "x" + dstHeight);
+        }
+        dst.clear();
+
+        downscalePlane(src, 0, srcWidth, srcHeight, srcWidth, 1,
+                dst, 0, dstWidth, dstHeight, dstWidth, 1);
+
+        int srcChromaWidth = (srcWidth + 1) / 2;
+        int srcChromaHeight = (srcHeight + 1) / 2;
+        int dstChromaWidth = (dstWidth + 1) / 2;
+        int dstChromaHeight = (dstHeight + 1) / 2;
+        int srcChroma = srcWidth * srcHeight;
+        int dstChroma = dstWidth * dstHeight;
+        // V and U are interleaved, so each is a plane with a pixel stride of 2.
+        for (int channel = 0; channel < 2; channel++) {
+            downscalePlane(src, srcChroma + channel, srcChromaWidth, srcChromaHeight,
+                    2 * srcChromaWidth, 2, dst, dstChroma + channel, dstChromaWidth,
+                    dstChromaHeight, 2 * dstChromaWidth, 2);
+        }
+        dst.limit(dstSize).position(0);
+    }
+
+    private static void downscalePlane(
+            ByteBuffer src,
+            int srcOffset,
+            int srcWidth,
+            int srcHeight,
+            int srcRowStride,
+            int pixelStride,
+            ByteBuffer dst,
+            int dstOffset,
+            int dstWidth,
+            int dstHeight,
+            int dstRowStride,
+            int dstPixelStride) {
+        byte[] in = src.hasArray() ? src.array() : null;
+        int inOffset = src.hasArray() ? src.arrayOffset() + srcOffset : srcOffset;
+        for (int y = 0; y < dstHeight; y++) {
+            int top = y * srcHeight / dstHeight;
+            int bottom = (y + 1) * srcHeight / dstHeight;
+            int dstIndex = dstOffset + y * dstRowStride;
+            for (int x = 0; x < dstWidth; x++, dstIndex += dstPixelStride) {
+                int left = x * srcWidth / dstWidth;
+                int right = (x + 1) * srcWidth / dstWidth;
+                int sum = 0;
+                for (int row = top; row < bottom; row++) {
+                    int index = inOffset + row * srcRowStride + left * pixelStride;
+                    int end = index + (right - left) * pixelStride;
+                    if (in != null) {
+                        for (; index < end; index += pixelStride) {
+                            sum += in[index] & 0xff;
+                        }
+                    } else {
+                        for (; index < end; index += pixelStride) {
+                            sum += src.get(index) & 0xff;
+                        }
+                    }
+                }
+                int count = (bottom - top) * (right - left);
+                // Rounded to nearest.
+                dst.put(dstIndex, (byte) ((sum + count / 2) / count));
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.media.Image;
+
+/**
+ * A {@link VisionImageProcessor} that also takes YUV_420_888 camera images as they are, plane by
+ * plane, instead of NV21 copies of them.
+ */
+public interface PlanarImageProcessor extends VisionImageProcessor {
+
+  /**
+   * Processes {@code image} on the calling thread, which must not be the main thread. The image is
+   * only valid during the call, so this returns once nothing reads it anymore; results may still be
+   * delivered later.
+   */
+  void process(Image image, FrameMetadata frameMetadata, GraphicOverlay graphicOverlay)
+      throws InterruptedException;
+}
@@ -0,0 +1,190 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.hardware.Camera;
+import android.util.Log;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed set of preview callback buffers shared with an {@link android.hardware.Camera}.
+ *
+ * <p>The pool is the only place that hands buffers back to the camera. Every buffer is wrapped in
+ * a {@link Slot} once, so the frame processing code passes slots around instead of looking byte
+ * arrays up in a map. Each buffer carries one trailing tag byte holding its slot index, which
+ * makes mapping the array returned by the camera back to its slot O(1).
+ *
+ * <p>Counters for delivered, dropped and recycled frames make it possible to size the pool per
+ * device: a pool that is too shallow shows up as frames the camera could not deliver while all
+ * buffers were busy, a pool that is too deep as buffers that are never delivered.
+ */
+public class PreviewBufferPool {
+
+    private static final String TAG = "MIDemoApp:BufferPool";
+
+    /**
+     * Default number of buffers. One is being processed, one holds the next pending frame, and the
+     * camera needs two more to fill while those are busy; with only three buffers the camera spews
+     * warnings whenever detection takes a non-trivial amount of time.
+     */
+    public static final int DEFAULT_DEPTH = 4;
+
+    /** A preview buffer and the byte buffer view handed to the processors. */
+    public static final class Slot {
+        private final int index;
+        private final byte[] data;
+        private final ByteBuffer buffer;
+        @Nullable private volatile FrameMetadata metadata;
+
+        private Slot(int index, byte[] data, ByteBuffer buffer) {
+            this.index = index;
+            this.data = data;
+            this.buffer = buffer;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        /** Metadata of the frame the buffer holds, as set by the camera source on delivery. */
+        public FrameMetadata getMetadata() {
+            return metadata;
+        }
+
+        void setMetadata(FrameMetadata metadata) {
+            this.metadata = metadata;
+        }
+    }
+
+    private final Slot[] slots;
+
+    @GuardedBy("this")
+    @Nullable
+    private Camera camera;
+
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong recycledCount = new AtomicLong();
+
+    /**
+     * @param depth number of buffers to allocate, at least 2
+     * @param frameSize size in bytes of one preview frame
+     */
+    public PreviewBufferPool(int depth, int frameSize) {
+        if (depth < 2 || depth > 127) {
+            throw new IllegalArgumentException("Invalid preview buffer depth: " + depth);
+        }
+        slots = new Slot[depth];
+        for (int i = 0; i < depth; i++) {
+            // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
+            // guarantees that there will be an array to work with. The extra byte past the frame
+            // holds the slot index.
+            byte[] data = new byte[frameSize + 1];
+            data[frameSize] = (byte) i;
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, frameSize);
+            slots[i] = new Slot(i, data, buffer.slice());
+        }
+    }
+
+    public int getDepth() {
+        return slots.length;
+    }
+
+    /** Slot of the buffer with {@code index}, for tests that stand in for the camera. */
+    Slot getSlot(int index) {
+        return slots[index];
+    }
+
+    /** Gives every buffer to {@code camera}, which becomes the target of later recycling. */
+    public synchronized void attach(Camera camera) {
+        this.camera = camera;
+        for (Slot slot : slots) {
+            camera.addCallbackBuffer(slot.data);
+        }
+    }
+
+    /** Stops handing buffers back to the camera, e.g. because it is about to be released. */
+    public synchronized void detach() {
+        camera = null;
+    }
+
+    /**
+     * Maps a buffer returned by the camera's preview callback to its slot. Returns null, and counts
+     * the frame as dropped, if the array does not belong to this pool.
+     */
+    @Nullable
+    public Slot onFrameDelivered(byte[] data) {
+        deliveredCount.incrementAndGet();
+        if (data.length > 0) {
+            int index = data[data.length - 1];
+            if (index >= 0 && index < slots.length && slots[index].data == data) {
+                return slots[index];
+            }
+        }
+        Log.d(TAG, "Dropping frame. The image data from the camera does not belong to the pool.");
+        droppedCount.incrementAndGet();
+        return null;
+    }
+
+    /** Returns the buffer of a processed frame to the camera. */
+    public void recycle(Slot slot) {
+        recycledCount.incrementAndGet();
+        returnToCamera(slot);
+    }
+
+    /** Returns the buffer of a frame that was skipped without being processed to the camera. */
+    public void drop(Slot slot) {
+        droppedCount.incrementAndGet();
+        returnToCamera(slot);
+    }
+
+    private synchronized void returnToCamera(Slot slot) {
+        // A frame that outlived a restart of the camera belongs to an earlier pool.
+        if (camera != null && slot.index < slots.length && slots[slot.index] == slot) {
+            camera.addCallbackBuffer(slot.data);
+        }
+    }
+
+    /** Number of frames the camera delivered into this pool. */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /** Number of delivered frames that were skipped instead of processed. */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /** Number of processed frames whose buffer went back to the camera. */
+    public long getRecycledCount() {
+        return recycledCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PreviewBufferPool{depth=" + slots.length
+                + ", delivered=" + deliveredCount.get()
+                + ", dropped=" + droppedCount.get()
+                + ", recycled=" + recycledCount.get() + "}";
+    }
+}
@@ -0,0 +1,221 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+/**
+ * The part of a frame handed to the detector, as fractions of the upright frame: the frame as it
+ * is shown on screen once rotated, before any mirroring for the front-facing camera. Being
+ * resolution independent, it can come from the UI or from the results of an earlier frame.
+ *
+ * <p>{@link #toSensorCrop} turns it into a crop of the frame as the camera delivers it, with the
+ * edges aligned to the NV21 chroma grid.
+ */
+public final class RegionOfInterest {
+
+    /** The whole frame. */
+    public static final RegionOfInterest FULL_FRAME = new RegionOfInterest(0f, 0f, 1f, 1f);
+
+    // Indices into the crop array filled by toSensorCrop.
+    public static final int CROP_LEFT = 0;
+    public static final int CROP_TOP = 1;
+    public static final int CROP_WIDTH = 2;
+    public static final int CROP_HEIGHT = 3;
+
+    private final float left;
+    private final float top;
+    private final float right;
+    private final float bottom;
+
+    private RegionOfInterest(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * Returns the region between the given fractions of the upright frame, clamped to the frame.
+     *
+     * @throws IllegalArgumentException if the region is empty
+     */
+    public static RegionOfInterest of(float left, float top, float right, float bottom) {
+        left = clamp(left);
+        top = clamp(top);
+        right = clamp(right);
+        bottom = clamp(bottom);
+        if (right <= left || bottom <= top) {
+            throw new IllegalArgumentException(
+                    "Empty region " + left + "," + top + " - " + right + "," + bottom);
+        }
+        return new RegionOfInterest(left, top, right, bottom);
+    }
+
+    /**
+     * Returns the region covering the given pixel bounds of the upright frame described by {@code
+     * metadata}, such as the bounding box of earlier results mapped to the full frame.
+     */
+    public static RegionOfInterest fromUprightBounds(
+            float left, float top, float right, float bottom, FrameMetadata metadata) {
+        boolean sideways = (metadata.getRotation() & 1) != 0;
+        float uprightWidth = sideways ? metadata.getHeight() : metadata.getWidth();
+        float uprightHeight = sideways ? metadata.getWidth() : metadata.getHeight();
+        return of(left / uprightWidth, top / uprightHeight,
+                right / uprightWidth, bottom / uprightHeight);
+    }
+
+    /** Returns this region grown by {@code margin}, a fraction of its size, on every side. */
+    public RegionOfInterest expand(float margin) {
+        float dx = (right - left) * margin;
+        float dy = (bottom - top) * margin;
+        return of(left - dx, top - dy, right + dx, bottom + dy);
+    }
+
+    /** Returns the smallest region covering both this region and {@code other}. */
+    public RegionOfInterest union(RegionOfInterest other) {
+        return new RegionOfInterest(Math.min(left, other.left), Math.min(top, other.top),
+                Math.max(right, other.right), Math.max(bottom, other.bottom));
+    }
+
+    public boolean isFullFrame() {
+        return left == 0f && top == 0f && right == 1f && bottom == 1f;
+    }
+
+    public float getLeft() {
+        return left;
+    }
+
+    public float getTop() {
+        return top;
+    }
+
+    public float getRight() {
+        return right;
+    }
+
+    public float getBottom() {
+        return bottom;
+    }
+
+    /**
+     * Computes the crop of a {@code width x height} camera frame with the given rotation that
+     * covers this region, and stores it in {@code crop} at {@link #CROP_LEFT}, {@link #CROP_TOP},
+     * {@link #CROP_WIDTH} and {@link #CROP_HEIGHT}. Edges are rounded outwards to even
+     * coordinates, so the crop may be slightly larger than the region.
+     *
+     * @param rotation one of the {@code FirebaseVisionImageMetadata.ROTATION_*} constants, the
+     *                 number of clockwise quarter turns that make the frame upright
+     */
+    public void toSensorCrop(int width, int height, int rotation, int[] crop) {
+        // Undo the rotation, in fractions of the frame.
+        float sensorLeft;
+        float sensorTop;
+        float sensorRight;
+        float sensorBottom;
+        switch (rotation & 3) {
+            case 1:
+                sensorLeft = top;
+                sensorTop = 1f - right;
+                sensorRight = bottom;
+                sensorBottom = 1f - left;
+                break;
+            case 2:
+                sensorLeft = 1f - right;
+                sensorTop = 1f - bottom;
+                sensorRight = 1f - left;
+                sensorBottom = 1f - top;
+                break;
+            case 3:
+                sensorLeft = 1f - bottom;
+                sensorTop = left;
+                sensorRight = 1f - top;
+                sensorBottom = right;
+                break;
+            default:
+                sensorLeft = left;
+                sensorTop = top;
+                sensorRight = right;
+                sensorBottom = bottom;
+                break;
+        }
+        int cropLeft = ((int) (sensorLeft * width)) & ~1;
+        int cropTop = ((int) (sensorTop * height)) & ~1;
+        int cropRight = Math.min(width, ((int) Math.ceil(sensorRight * width) + 1) & ~1);
+        int cropBottom = Math.min(height, ((int) Math.ceil(sensorBottom * height) + 1) & ~1);
+        crop[CROP_LEFT] = cropLeft;
+        crop[CROP_TOP] = cropTop;
+        crop[CROP_WIDTH] = Math.max(1, cropRight - cropLeft);
+        crop[CROP_HEIGHT] = Math.max(1, cropBottom - cropTop);
+    }
+
+    /**
+     * Returns where the top left corner of a crop made by {@link #toSensorCrop} ends up in the
+     * upright frame, along the x axis. Results detected on the crop are offset by this much.
+     */
+    public static int getUprightOffsetX(int width, int height, int rotation, int[] crop) {
+        switch (rotation & 3) {
+            case 1:
+                return height - crop[CROP_TOP] - crop[CROP_HEIGHT];
+            case 2:
+                return width - crop[CROP_LEFT] - crop[CROP_WIDTH];
+            case 3:
+                return crop[CROP_TOP];
+            default:
+                return crop[CROP_LEFT];
+        }
+    }
+
+    /** Counterpart of {@link #getUprightOffsetX} along the y axis. */
+    public static int getUprightOffsetY(int width, int height, int rotation, int[] crop) {
+        switch (rotation & 3) {
+            case 1:
+                return crop[CROP_LEFT];
+            case 2:
+                return height - crop[CROP_TOP] - crop[CROP_HEIGHT];
+            case 3:
+                return width - crop[CROP_LEFT] - crop[CROP_WIDTH];
+            default:
+                return crop[CROP_TOP];
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RegionOfInterest)) {
+            return false;
+        }
+        RegionOfInterest other = (RegionOfInterest) o;
+        return left == other.left && top == other.top && right == other.right
+                && bottom == other.bottom;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(left);
+        result = 31 * result + Float.floatToIntBits(top);
+        result = 31 * result + Float.floatToIntBits(right);
+        return 31 * result + Float.floatToIntBits(bottom);
+    }
+
+    @Override
+    public String toString() {
+        return "RegionOfInterest{" + left + "," + top + " - " + right + "," + bottom + "}";
+    }
+
+    private static float clamp(float value) {
+        return value < 0f ? 0f : (value > 1f ? 1f : value);
+    }
+}
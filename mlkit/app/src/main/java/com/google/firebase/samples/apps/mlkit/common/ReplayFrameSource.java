@@ -0,0 +1,261 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a frame recording (see {@link FrameFileFormat}) to a {@link VisionImageProcessor}, for
+ * benchmarking and regression testing without a camera.
+ *
+ * <p>The file is memory-mapped and every frame handed to the processor is a view into the
+ * mapping, so replay does not copy frame data and does not allocate per frame. Frames are
+ * delivered on a dedicated thread, one {@code process(...)} call after another, either at a fixed
+ * rate or as fast as the processor accepts them. Nothing here needs a device, so the replay also
+ * runs in plain JVM tests.
+ */
+public class ReplayFrameSource implements FrameSource {
+
+    private static final String TAG = "MIDemoApp:Replay";
+
+    /** Frame rate that delivers the next frame as soon as the processor returns. */
+    public static final float AS_FAST_AS_POSSIBLE = 0;
+
+    private final File file;
+    @Nullable private final GraphicOverlay graphicOverlay;
+    private final long frameIntervalNanos;
+    private volatile boolean looping;
+
+    @Nullable private volatile VisionImageProcessor frameProcessor;
+
+    // Views of the frames in the mapped file, and their metadata.
+    @Nullable private ByteBuffer[] frames;
+    @Nullable private FrameMetadata[] frameMetadata;
+
+    @Nullable private Thread replayThread;
+    private volatile boolean running;
+
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private volatile long firstDeliveryNanos;
+    private volatile long lastDeliveryNanos;
+
+    /**
+     * @param file the recording
+     * @param graphicOverlay passed along to the processor, may be null when nothing is displayed
+     * @param fps frames per second to deliver, or {@link #AS_FAST_AS_POSSIBLE}
+     */
+    public ReplayFrameSource(File file, @Nullable GraphicOverlay graphicOverlay, float fps) {
+        if (fps < 0) {
+            throw new IllegalArgumentException("Invalid frame rate: " + fps);
+        }
+        this.file = file;
+        this.graphicOverlay = graphicOverlay;
+        frameIntervalNanos =
+                fps == AS_FAST_AS_POSSIBLE ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+    }
+
+    /** Starts over from the first frame after the last one instead of stopping. */
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    /**
+     * Maps the recording and starts delivering frames from the first one.
+     *
+     * @throws IOException if the file cannot be read or is not a valid recording
+     */
+    @Override
+    public synchronized ReplayFrameSource start() throws IOException {
+        if (replayThread != null && replayThread.isAlive()) {
+            return this;
+        }
+        if (frames == null) {
+            load();
+        }
+        running = true;
+        replayThread = new Thread(new ReplayRunnable(), "ReplayFrameSource");
+        replayThread.start();
+        return this;
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (replayThread != null) {
+            replayThread.interrupt();
+            try {
+                replayThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            replayThread = null;
+        }
+    }
+
+    @Override
+    public void release() {
+        stop();
+        VisionImageProcessor processor = frameProcessor;
+        frameProcessor = null;
+        if (processor != null) {
+            processor.stop();
+        }
+    }
+
+    @Override
+    public void setMachineLearningFrameProcessor(VisionImageProcessor processor) {
+        VisionImageProcessor previous = frameProcessor;
+        frameProcessor = processor;
+        if (previous != null && previous != processor) {
+            previous.stop();
+        }
+    }
+
+    /**
+     * Waits until every frame was delivered once, or the replay was stopped. Never returns while
+     * looping.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = replayThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /** Number of frames in the recording, or 0 before it was started. */
+    public synchronized int getFrameCount() {
+        return frames != null ? frames.length : 0;
+    }
+
+    /** Number of frames handed to the processor so far. */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /** Frames per second handed to the processor, measured between the first and last frame. */
+    public double getDeliveredFps() {
+        long delivered = deliveredCount.get();
+        long elapsed = lastDeliveryNanos - firstDeliveryNanos;
+        if (delivered < 2 || elapsed <= 0) {
+            return 0;
+        }
+        return (delivered - 1) * 1e9 / elapsed;
+    }
+
+    private void load() throws IOException {
+        MappedByteBuffer mapped;
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            // The mapping stays valid after the channel is closed.
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            input.close();
+        }
+
+        FrameFileFormat.readFileHeader(mapped);
+        List<ByteBuffer> frameList = new ArrayList<>();
+        List<FrameMetadata> metadataList = new ArrayList<>();
+        while (mapped.hasRemaining()) {
+            if (mapped.remaining() < FrameFileFormat.RECORD_HEADER_SIZE) {
+                throw new IOException("Truncated frame header at offset " + mapped.position());
+            }
+            int dataSize = mapped.getInt();
+            FrameMetadata metadata =
+                    new FrameMetadata.Builder()
+                            .setWidth(mapped.getInt())
+                            .setHeight(mapped.getInt())
+                            .setRotation(mapped.getInt())
+                            .setCameraFacing(mapped.getInt())
+                            .build();
+            mapped.getLong(); // Capture timestamp, not needed for replay.
+            if (dataSize < Nv21Converter.getFrameSize(metadata.getWidth(), metadata.getHeight())
+                    || dataSize > mapped.remaining()) {
+                throw new IOException("Invalid frame at offset " + mapped.position());
+            }
+            ByteBuffer frame = mapped.slice();
+            frame.limit(dataSize);
+            frameList.add(frame.slice());
+            metadataList.add(metadata);
+            mapped.position(mapped.position() + dataSize);
+        }
+        frames = frameList.toArray(new ByteBuffer[0]);
+        frameMetadata = metadataList.toArray(new FrameMetadata[0]);
+    }
+
+    private class ReplayRunnable implements Runnable {
+        @Override
+        public void run() {
+            ByteBuffer[] frames = ReplayFrameSource.this.frames;
+            FrameMetadata[] metadata = frameMetadata;
+            if (frames.length == 0) {
+                return;
+            }
+            long nextDueNanos = System.nanoTime();
+            do {
+                for (int i = 0; i < frames.length && running; i++) {
+                    if (frameIntervalNanos > 0) {
+                        long delay = nextDueNanos - System.nanoTime();
+                        if (delay > 0) {
+                            try {
+                                TimeUnit.NANOSECONDS.sleep(delay);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                        nextDueNanos += frameIntervalNanos;
+                    }
+                    deliver(frames[i], metadata[i]);
+                }
+            } while (looping && running);
+        }
+
+        private void deliver(ByteBuffer frame, FrameMetadata metadata) {
+            VisionImageProcessor processor = frameProcessor;
+            if (processor == null) {
+                return;
+            }
+            frame.clear();
+            try {
+                // Numbered and timed as if the camera had just delivered the frame.
+                processor.process(frame,
+                        metadata.withCapture(deliveredCount.get(), System.nanoTime()),
+                        graphicOverlay);
+            } catch (Exception e) {
+                Log.e(TAG, "Exception thrown from receiver.", e);
+            }
+            long now = System.nanoTime();
+            if (deliveredCount.getAndIncrement() == 0) {
+                firstDeliveryNanos = now;
+            }
+            lastDeliveryNanos = now;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells whether a frame differs enough from the last one that was sent to the detector to be
+ * worth detecting on again.
+ *
+ * <p>Each frame is reduced to a small signature: the average luma of each cell of a {@value
+ * #GRID_COLUMNS}x{@value #GRID_ROWS} grid, sampled sparsely inside the cell. A frame counts as
+ * changed when the mean absolute difference between its signature and the reference signature
+ * exceeds a threshold, or when the refresh interval has passed since the reference was taken.
+ * Only changed frames replace the reference, so a slow drift adds up until it is detected.
+ */
+public class SceneChangeDetector {
+
+    static final int GRID_COLUMNS = 16;
+    static final int GRID_ROWS = 12;
+
+    /** Default threshold, in luma levels, of the mean absolute signature difference. */
+    public static final float DEFAULT_THRESHOLD = 4f;
+
+    /** Default time after which a frame counts as changed regardless of its content. */
+    public static final long DEFAULT_REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Distance, in pixels, between samples inside a cell.
+    private static final int SAMPLE_STEP = 4;
+
+    private final float threshold;
+    private final long refreshIntervalNanos;
+
+    private final int[] signature = new int[GRID_COLUMNS * GRID_ROWS];
+    private final int[] reference = new int[GRID_COLUMNS * GRID_ROWS];
+    private boolean hasReference;
+    private long referenceNanos;
+    private int referenceWidth;
+    private int referenceHeight;
+
+    private long changedCount;
+    private long unchangedCount;
+
+    public SceneChangeDetector() {
+        this(DEFAULT_THRESHOLD, DEFAULT_REFRESH_INTERVAL_NANOS);
+    }
+
+    /**
+     * @param threshold mean absolute difference, in luma levels, above which a frame has changed
+     * @param refreshIntervalNanos time after which a frame counts as changed anyway
+     */
+    public SceneChangeDetector(float threshold, long refreshIntervalNanos) {
+        this.threshold = threshold;
+        this.refreshIntervalNanos = refreshIntervalNanos;
+    }
+
+    /**
+     * Returns whether the NV21 frame {@code nv21} differs from the reference, making it the new
+     * reference if it does.
+     *
+     * @param nowNanos the current time, in {@link System#nanoTime()} time base
+     */
+    public synchronized boolean hasChanged(ByteBuffer nv21, int width, int height, long nowNanos) {
+        computeSignature(nv21, width, height, signature);
+        boolean changed =
+                !hasReference
+                        || width != referenceWidth
+                        || height != referenceHeight
+                        || nowNanos - referenceNanos >= refreshIntervalNanos
+                        || difference(signature, reference) > threshold;
+        if (changed) {
+            System.arraycopy(signature, 0, reference, 0, signature.length);
+            hasReference = true;
+            referenceNanos = nowNanos;
+            referenceWidth = width;
+            referenceHeight = height;
+            changedCount++;
+        } else {
+            unchangedCount++;
+        }
+        return changed;
+    }
+
+    /** Forgets the reference, so the next frame counts as changed. */
+    public synchronized void reset() {
+        hasReference = false;
+    }
+
+    public synchronized long getChangedCount() {
+        return changedCount;
+    }
+
+    public synchronized long getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SceneChangeDetector{changed=" + changedCount + ", unchanged=" + unchangedCount + "}";
+    }
+
+    static void computeSignature(ByteBuffer nv21, int width, int height, int[] out) {
+        for (int cellRow = 0; cellRow < GRID_ROWS; cellRow++) {
+            int top = cellRow * height / GRID_ROWS;
+            int bottom = (cellRow + 1) * height / GRID_ROWS;
+            for (int cellColumn = 0; cellColumn < GRID_COLUMNS; cellColumn++) {
+                int left = cellColumn * width / GRID_COLUMNS;
+                int right = (cellColumn + 1) * width / GRID_COLUMNS;
+                int sum = 0;
+                int count = 0;
+                for (int y = top; y < bottom; y += SAMPLE_STEP) {
+                    int rowStart = y * width;
+                    for (int x = left; x < right; x += SAMPLE_STEP) {
+                        sum += nv21.get(rowStart + x) & 0xff;
+                        count++;
+                    }
+                }
+                out[cellRow * GRID_COLUMNS + cellColumn] = count == 0 ? 0 : sum / count;
+            }
+        }
+    }
+
+    static float difference(int[] a, int[] b) {
+        int sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return (float) sum / a.length;
+    }
+}
@@ -0,0 +1,111 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One {@link LatencyHistogram} per stage a frame goes through in a processor, shared by every
+ * instance of the same processor class so the numbers survive switching detectors back and forth.
+ *
+ * <p>Poll a single class with {@link #forProcessor(Class)}, or get a text report of every
+ * processor that recorded anything with {@link #dumpAll()}.
+ */
+public class StageLatencies {
+
+    /** The stages of frame processing. */
+    public enum Stage {
+        /** From the camera handing over the frame until processing of it starts. */
+        QUEUE_WAIT,
+        /** Converting the frame to the background bitmap and the detector's image. */
+        CONVERSION,
+        /** The detector call, until its result is available. */
+        DETECTION,
+        /** Handling the result, in {@code onPostProcess} and {@code onSuccess}. */
+        POST_PROCESSING,
+        /** From the overlay being invalidated until it has drawn. */
+        OVERLAY_INVALIDATION,
+        /** From the camera capturing the frame until the overlay has drawn its results. */
+        END_TO_END
+    }
+
+    private static final ConcurrentMap<Class<?>, StageLatencies> registry =
+            new ConcurrentHashMap<>();
+
+    private final String name;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+    private StageLatencies(String name) {
+        this.name = name;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /** Returns the histograms of {@code processorClass}, creating them on first use. */
+    public static StageLatencies forProcessor(Class<?> processorClass) {
+        StageLatencies latencies = registry.get(processorClass);
+        if (latencies == null) {
+            StageLatencies created = new StageLatencies(processorClass.getName());
+            latencies = registry.putIfAbsent(processorClass, created);
+            if (latencies == null) {
+                latencies = created;
+            }
+        }
+        return latencies;
+    }
+
+    /** Returns the histograms of every processor class seen so far. */
+    public static List<StageLatencies> getAll() {
+        return new ArrayList<>(registry.values());
+    }
+
+    /** Returns a multi-line report of every processor class that recorded any latency. */
+    public static String dumpAll() {
+        StringBuilder report = new StringBuilder();
+        for (StageLatencies latencies : registry.values()) {
+            if (latencies.get(Stage.DETECTION).getCount() > 0) {
+                report.append(latencies).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /** Forgets everything recorded for this processor class. */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(name).append(':');
+        for (Stage stage : Stage.values()) {
+            report.append("\n  ").append(stage).append(": ").append(get(stage));
+        }
+        return report.toString();
+    }
+}
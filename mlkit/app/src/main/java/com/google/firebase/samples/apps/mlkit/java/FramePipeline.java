@@ -0,0 +1,225 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs frames through a fixed list of stages, each on its own thread, with a bounded queue in
+ * front of every stage. While one frame is in detection the next one can already be converted.
+ *
+ * <p>Frames enter through {@link #submit(Object)}, which never blocks: when the first queue is full
+ * the frame is refused and the caller keeps ownership. Later stages block on a full queue, so a
+ * slow stage backs up the pipeline until the first queue starts refusing frames. Every accepted
+ * frame ends up in {@link Listener#onFrameDone(Object)} exactly once, whether it went through all
+ * stages, was stopped by a stage or was discarded on shutdown.
+ *
+ * @param <F> the type carrying a frame and its intermediate results through the stages
+ */
+public class FramePipeline<F> {
+
+    /** One step of the pipeline. */
+    public interface Stage<F> {
+
+        /** Name used for the stage's thread. */
+        String getName();
+
+        /**
+         * Processes {@code frame}. Returns false to stop the frame here, e.g. because it is no longer
+         * worth finishing, in which case the remaining stages are skipped. Throws {@link
+         * InterruptedException} when {@link #stop()} interrupts a wait, which is not reported as a
+         * failure.
+         */
+        boolean process(F frame) throws Exception;
+    }
+
+    /** Receives frames once the pipeline is done with them. */
+    public interface Listener<F> {
+
+        /** Called once per accepted frame, on the thread of the stage that finished with it. */
+        void onFrameDone(F frame);
+
+        /** Called when a stage throws; {@link #onFrameDone(Object)} follows for the same frame. */
+        void onStageFailed(F frame, Exception e);
+    }
+
+    private final List<Stage<F>> stages;
+    private final List<BlockingQueue<F>> queues;
+    private final List<Thread> threads = new ArrayList<>();
+    private final Listener<F> listener;
+
+    private volatile boolean running;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong refusedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private volatile long firstCompletionNanos;
+    private volatile long lastCompletionNanos;
+
+    /**
+     * @param stages the stages, in order; must not be empty
+     * @param queueCapacity capacity of the queue in front of every stage
+     * @param listener receives every frame once the pipeline is done with it
+     */
+    public FramePipeline(List<Stage<F>> stages, int queueCapacity, Listener<F> listener) {
+        if (stages.isEmpty()) {
+            throw new IllegalArgumentException("A pipeline needs at least one stage.");
+        }
+        this.stages = new ArrayList<>(stages);
+        this.listener = listener;
+        queues = new ArrayList<>(stages.size());
+        for (int i = 0; i < stages.size(); i++) {
+            queues.add(new ArrayBlockingQueue<F>(queueCapacity));
+        }
+    }
+
+    /** Starts one thread per stage. */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < stages.size(); i++) {
+            Thread thread = new Thread(new StageRunnable(i), "FramePipeline-" + stages.get(i).getName());
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Offers a frame to the first stage. Returns false, leaving the frame with the caller, if the
+     * pipeline is stopped or the first queue is full.
+     */
+    public boolean submit(F frame) {
+        if (!running || !queues.get(0).offer(frame)) {
+            refusedCount.incrementAndGet();
+            return false;
+        }
+        submittedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Stops all stage threads, waits for them to exit and hands every frame still queued to the
+     * listener.
+     */
+    public synchronized void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        threads.clear();
+        List<F> leftovers = new ArrayList<>();
+        for (BlockingQueue<F> queue : queues) {
+            queue.drainTo(leftovers);
+        }
+        for (F frame : leftovers) {
+            listener.onFrameDone(frame);
+        }
+    }
+
+    /** Number of frames accepted by {@link #submit(Object)}. */
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /** Number of frames refused by {@link #submit(Object)} because the pipeline was full. */
+    public long getRefusedCount() {
+        return refusedCount.get();
+    }
+
+    /** Number of frames that made it through every stage. */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /** Frames per second that made it through every stage, measured between the first and last. */
+    public double getThroughputFps() {
+        long completed = completedCount.get();
+        long elapsed = lastCompletionNanos - firstCompletionNanos;
+        if (completed < 2 || elapsed <= 0) {
+            return 0;
+        }
+        return (completed - 1) * 1e9 / elapsed;
+    }
+
+    private void onCompleted() {
+        long now = System.nanoTime();
+        if (completedCount.getAndIncrement() == 0) {
+            firstCompletionNanos = now;
+        }
+        lastCompletionNanos = now;
+    }
+
+    private class StageRunnable implements Runnable {
+        private final int index;
+
+        StageRunnable(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            Stage<F> stage = stages.get(index);
+            BlockingQueue<F> input = queues.get(index);
+            BlockingQueue<F> output = index + 1 < queues.size() ? queues.get(index + 1) : null;
+            while (running) {
+                F frame;
+                try {
+                    frame = input.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                boolean keepGoing;
+                try {
+                    keepGoing = stage.process(frame);
+                } catch (InterruptedException e) {
+                    // Interrupted by stop() while the stage waited: a shutdown, not a failure.
+                    listener.onFrameDone(frame);
+                    return;
+                } catch (Exception e) {
+                    listener.onStageFailed(frame, e);
+                    keepGoing = false;
+                }
+
+                if (!keepGoing) {
+                    listener.onFrameDone(frame);
+                } else if (output == null) {
+                    onCompleted();
+                    listener.onFrameDone(frame);
+                } else {
+                    try {
+                        output.put(frame);
+                    } catch (InterruptedException e) {
+                        listener.onFrameDone(frame);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -44,7 +44,10 @@ import com.google.firebase.ml.vision.objects.FirebaseVisionObjectDetectorOptions
 import com.google.firebase.samples.apps.mlkit.R;
 import com.google.firebase.samples.apps.mlkit.common.CameraSource;
 import com.google.firebase.samples.apps.mlkit.common.CameraSourcePreview;
+import com.google.firebase.samples.apps.mlkit.common.CameraXSource;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.SceneChangeDetector;
+import com.google.firebase.samples.apps.mlkit.common.StageLatencies;
 import com.google.firebase.samples.apps.mlkit.java.automl.AutoMLImageLabelerProcessor;
 import com.google.firebase.samples.apps.mlkit.java.barcodescanning.BarcodeScanningProcessor;
 import com.google.firebase.samples.apps.mlkit.java.custommodel.CustomImageClassifierProcessor;
@@ -75,9 +78,33 @@ import java.util.StringTokenizer;
 public final class LivePreviewActivity extends AppCompatActivity
         implements OnRequestPermissionsResultCallback {
     private static final String TAG = "LivePreviewActivity";
+
+    /**
+     * Boolean intent extra: also scan every frame for barcodes, such as the QR code some receipts
+     * carry. Off by default.
+     */
+    public static final String EXTRA_SCAN_BARCODES = "scan_barcodes";
+    /**
+     * Boolean intent extra: only run OCR around the text found in the previous frame, rather than
+     * on whole frames. On by default.
+     */
+    public static final String EXTRA_REGION_FOLLOWS_TEXT = "region_follows_text";
+    /**
+     * Boolean intent extra: take frames from CameraX rather than the {@link
+     * android.hardware.Camera} API, to compare the two. CameraX has no preview here, so the frames
+     * are drawn behind the results. Off by default.
+     */
+    public static final String EXTRA_USE_CAMERAX = "use_camerax";
     private static final int PERMISSION_REQUESTS = 1;
 
+    // The preview is shown sharper than the detector needs it; OCR runs on frames scaled down to
+    // the width the preview used to have.
+    private static final int PREVIEW_WIDTH = 640;
+    private static final int PREVIEW_HEIGHT = 480;
+    private static final int DETECTION_WIDTH = CameraSource.DEFAULT_PREVIEW_WIDTH;
+
     private CameraSource cameraSource = null;
+    private CameraXSource cameraXSource = null;
     private CameraSourcePreview preview;
     private GraphicOverlay graphicOverlay;
 
@@ -375,14 +402,47 @@ public final class LivePreviewActivity extends AppCompatActivity
 
 
     private void createCameraSource() {
-        // If there's no existing cameraSource, create one.
-        if (cameraSource == null) {
+        boolean useCameraX = getIntent().getBooleanExtra(EXTRA_USE_CAMERAX, false);
+        // If there's no existing camera source, create one.
+        if (useCameraX) {
+            if (cameraXSource == null) {
+                cameraXSource = new CameraXSource(this, graphicOverlay);
+                cameraXSource.setTargetResolution(PREVIEW_WIDTH, PREVIEW_HEIGHT);
+            }
+        } else if (cameraSource == null) {
             cameraSource = new CameraSource(this, graphicOverlay);
+            cameraSource.setRequestedPreviewSize(PREVIEW_WIDTH, PREVIEW_HEIGHT);
         }
 
         try {
-            textRecognitionProcessor = new TextRecognitionProcessor(textDict);
-            cameraSource.setMachineLearningFrameProcessor(textRecognitionProcessor);
+            VisionProcessorBase<?> processor;
+            if (getIntent().getBooleanExtra(EXTRA_SCAN_BARCODES, false)) {
+                // The barcode scanner has a single detector, so one frame at a time for both.
+                textRecognitionProcessor = new TextRecognitionProcessor(textDict, 1);
+                processor = new MultiDetectorProcessor(
+                        textRecognitionProcessor, new BarcodeScanningProcessor());
+            } else {
+                textRecognitionProcessor = new TextRecognitionProcessor(textDict);
+                processor = textRecognitionProcessor;
+            }
+            processor.setDetectionWidth(DETECTION_WIDTH);
+            processor.setMaxFramesInFlight(textRecognitionProcessor.getRecognizerCount());
+            // A receipt held still reads the same every frame, so only run OCR when it moves.
+            processor.setSceneChangeDetector(new SceneChangeDetector());
+            // A receipt fills only part of the frame; with barcodes on, the multi-detector
+            // processor takes the region from the text recognizer.
+            textRecognitionProcessor.setRegionOfInterestFollowsText(
+                    getIntent().getBooleanExtra(EXTRA_REGION_FOLLOWS_TEXT, true));
+            if (useCameraX) {
+                processor.setDrawsCameraImage(true);
+                cameraXSource.setMachineLearningFrameProcessor(processor);
+            } else {
+                processor.setFrameRateGovernor(cameraSource.getFrameRateGovernor());
+                // The camera draws the live preview below the overlay, so results are drawn alone.
+                preview.setShowsCameraPreview(true);
+                processor.setDrawsCameraImage(false);
+                cameraSource.setMachineLearningFrameProcessor(processor);
+            }
         } catch (Exception e) {
             Log.e(TAG, "Can not create image processor", e);
             Toast.makeText(
@@ -399,6 +459,10 @@ public final class LivePreviewActivity extends AppCompatActivity
      * again when the camera source is created.
      */
     private void startCameraSource() {
+        if (cameraXSource != null) {
+            // Frames flow once this activity is started, which CameraX follows by itself.
+            cameraXSource.start();
+        }
         if (cameraSource != null) {
             try {
                 if (preview == null) {
@@ -430,6 +494,14 @@ public final class LivePreviewActivity extends AppCompatActivity
     protected void onPause() {
         super.onPause();
         preview.stop();
+        if (cameraXSource != null) {
+            cameraXSource.stop();
+        }
+        // Off unless asked for with "adb shell setprop log.tag.LivePreviewActivity DEBUG", as the
+        // report covers every stage of every processor used so far.
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Stage latencies:\n" + StageLatencies.dumpAll());
+        }
     }
 
     @Override
@@ -438,6 +510,9 @@ public final class LivePreviewActivity extends AppCompatActivity
         if (cameraSource != null) {
             cameraSource.release();
         }
+        if (cameraXSource != null) {
+            cameraXSource.release();
+        }
     }
 
     private String[] getRequiredPermissions() {
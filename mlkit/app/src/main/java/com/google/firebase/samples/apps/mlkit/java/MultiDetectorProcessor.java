@@ -0,0 +1,185 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic;
+import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.RegionOfInterest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs several detectors on the same frames, such as text recognition and barcode scanning on
+ * receipts that carry a QR code.
+ *
+ * <p>Each frame is converted once: the background bitmap and the {@link FirebaseVisionImage} are
+ * shared by all detectors, which run in parallel. Once every detector is done, their results are
+ * drawn in a single overlay update, on top of one background image.
+ *
+ * <p>The detectors are only used for {@link VisionProcessorBase#detectInImage}, {@link
+ * VisionProcessorBase#onPostProcess}, {@link VisionProcessorBase#onSuccess}, {@link
+ * VisionProcessorBase#onResultsReused} and {@link VisionProcessorBase#onFailure}. Frame handling,
+ * such as the detection width or scene change detector, is configured on this processor and applies
+ * to all of them; the same settings on the detectors themselves have no effect. {@link
+ * VisionProcessorBase#onSuccess} gets no bitmap, as the background is drawn once for all
+ * detectors.
+ *
+ * <p>The region of interest is the exception: unless one is set on this processor, frames are
+ * detected on the regions the detectors set on themselves, such as a text recognizer following
+ * the text, joined together. Detectors without a region leave it to the others.
+ */
+public class MultiDetectorProcessor extends VisionProcessorBase<List<Task<?>>> {
+
+    private static final String TAG = "MultiDetectorProc";
+
+    private final List<VisionProcessorBase<?>> detectors;
+
+    public MultiDetectorProcessor(VisionProcessorBase<?>... detectors) {
+        if (detectors.length == 0) {
+            throw new IllegalArgumentException("No detectors");
+        }
+        this.detectors = new ArrayList<>(Arrays.asList(detectors));
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        for (VisionProcessorBase<?> detector : detectors) {
+            detector.stop();
+        }
+    }
+
+    /**
+     * Returns the region set on this processor, or else the smallest region covering those of the
+     * detectors, or null if none has one.
+     */
+    @Nullable
+    @Override
+    public RegionOfInterest getRegionOfInterest() {
+        RegionOfInterest region = super.getRegionOfInterest();
+        if (region != null) {
+            return region;
+        }
+        for (VisionProcessorBase<?> detector : detectors) {
+            RegionOfInterest detectorRegion = detector.getRegionOfInterest();
+            if (detectorRegion != null) {
+                region = region == null ? detectorRegion : region.union(detectorRegion);
+            }
+        }
+        return region;
+    }
+
+    /** Starts every detector on {@code image}; the task completes once they all have. */
+    @Override
+    protected Task<List<Task<?>>> detectInImage(FirebaseVisionImage image) {
+        List<Task<?>> tasks = new ArrayList<>(detectors.size());
+        for (VisionProcessorBase<?> detector : detectors) {
+            tasks.add(detector.detectInImage(image));
+        }
+        return Tasks.whenAllComplete(tasks);
+    }
+
+    @Override
+    protected void onPostProcess(
+            @NonNull List<Task<?>> results, @NonNull FrameMetadata frameMetadata) {
+        for (int i = 0; i < detectors.size(); i++) {
+            Task<?> task = results.get(i);
+            if (task.isSuccessful()) {
+                postProcess(detectors.get(i), task.getResult(), frameMetadata);
+            }
+        }
+    }
+
+    @Override
+    protected void onSuccess(
+            @Nullable Bitmap originalCameraImage,
+            @NonNull List<Task<?>> results,
+            @NonNull FrameMetadata frameMetadata,
+            @NonNull GraphicOverlay graphicOverlay) {
+        deliverAll(originalCameraImage, results, false /* reused */, frameMetadata, graphicOverlay);
+    }
+
+    /** Hands the reused results to each detector's {@link VisionProcessorBase#onResultsReused}. */
+    @Override
+    protected void onResultsReused(
+            @Nullable Bitmap originalCameraImage,
+            @NonNull List<Task<?>> results,
+            @NonNull FrameMetadata frameMetadata,
+            @NonNull GraphicOverlay graphicOverlay) {
+        deliverAll(originalCameraImage, results, true /* reused */, frameMetadata, graphicOverlay);
+    }
+
+    private void deliverAll(
+            @Nullable Bitmap originalCameraImage,
+            List<Task<?>> results,
+            boolean reused,
+            FrameMetadata frameMetadata,
+            GraphicOverlay graphicOverlay) {
+        graphicOverlay.beginUpdate();
+        try {
+            if (originalCameraImage != null) {
+                graphicOverlay.add(new CameraImageGraphic(graphicOverlay, originalCameraImage));
+            }
+            for (int i = 0; i < detectors.size(); i++) {
+                Task<?> task = results.get(i);
+                if (task.isSuccessful()) {
+                    deliver(detectors.get(i), task.getResult(), reused, frameMetadata,
+                            graphicOverlay);
+                } else {
+                    detectors.get(i).onFailure(task.getException());
+                }
+            }
+        } finally {
+            graphicOverlay.endUpdate();
+        }
+    }
+
+    @Override
+    protected void onFailure(@NonNull Exception e) {
+        Log.e(TAG, "Detection failed " + e);
+    }
+
+    // Each result comes from the detector at the same index, so it has that detector's type.
+    @SuppressWarnings("unchecked")
+    private static <R> void postProcess(
+            VisionProcessorBase<R> detector, Object results, FrameMetadata frameMetadata) {
+        detector.onPostProcess((R) results, frameMetadata);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> void deliver(
+            VisionProcessorBase<R> detector,
+            Object results,
+            boolean reused,
+            FrameMetadata frameMetadata,
+            GraphicOverlay graphicOverlay) {
+        if (reused) {
+            detector.onResultsReused(null /* bitmap */, (R) results, frameMetadata, graphicOverlay);
+        } else {
+            detector.onSuccess(null /* bitmap */, (R) results, frameMetadata, graphicOverlay);
+        }
+    }
+}
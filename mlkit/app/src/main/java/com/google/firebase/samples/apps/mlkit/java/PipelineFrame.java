@@ -0,0 +1,178 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.InFlightWindow;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A camera frame owned by a {@link VisionProcessorBase}, either waiting for the detector or
+ * travelling through the stages of the pipelined mode, along with what was produced for it so far.
+ * Instances and their frame buffers are recycled once the processor is done with them.
+ *
+ * @param <T> The type of the detected feature.
+ */
+public class PipelineFrame<T> {
+
+    private ByteBuffer data;
+    // Holds the region of interest of the frame, when only that is detected on.
+    @Nullable private ByteBuffer cropData;
+    // Holds the frame, or its region of interest, downscaled for the detector.
+    @Nullable private ByteBuffer scaledData;
+    private final int[] crop = new int[4];
+    private FrameMetadata metadata;
+    private GraphicOverlay graphicOverlay;
+    @Nullable private Bitmap bitmap;
+    @Nullable private FirebaseVisionImage image;
+    @Nullable private T results;
+    private boolean resultsReused;
+    private long enqueuedNanos;
+    private long postProcessNanos;
+    private long sequence = InFlightWindow.NONE;
+
+    PipelineFrame(int capacity) {
+        data = ByteBuffer.allocate(capacity);
+    }
+
+    /** Copies the camera frame into this frame's own buffer, growing it if needed. */
+    void set(ByteBuffer source, FrameMetadata metadata, GraphicOverlay graphicOverlay) {
+        ByteBuffer view = source.duplicate();
+        view.rewind();
+        if (data.capacity() < view.remaining()) {
+            data = ByteBuffer.allocate(view.remaining());
+        }
+        data.clear();
+        data.put(view);
+        data.flip();
+        this.metadata = metadata;
+        this.graphicOverlay = graphicOverlay;
+        enqueuedNanos = System.nanoTime();
+    }
+
+    /** Drops the references to the per-frame results so they can be collected. */
+    void reset() {
+        metadata = null;
+        graphicOverlay = null;
+        bitmap = null;
+        image = null;
+        results = null;
+        resultsReused = false;
+        postProcessNanos = 0;
+        sequence = InFlightWindow.NONE;
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public FrameMetadata getMetadata() {
+        return metadata;
+    }
+
+    void setMetadata(FrameMetadata metadata) {
+        this.metadata = metadata;
+    }
+
+    // Returns the buffer for the region of interest, growing it if needed.
+    ByteBuffer getCropBuffer(int size) {
+        if (cropData == null || cropData.capacity() < size) {
+            cropData = ByteBuffer.allocate(size);
+        }
+        return cropData;
+    }
+
+    // Returns the buffer for the downscaled frame, growing it if needed.
+    ByteBuffer getScaledBuffer(int size) {
+        if (scaledData == null || scaledData.capacity() < size) {
+            scaledData = ByteBuffer.allocate(size);
+        }
+        return scaledData;
+    }
+
+    // Scratch array for RegionOfInterest#toSensorCrop.
+    int[] getCrop() {
+        return crop;
+    }
+
+    public GraphicOverlay getGraphicOverlay() {
+        return graphicOverlay;
+    }
+
+    @Nullable
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public void setBitmap(@Nullable Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    @Nullable
+    public FirebaseVisionImage getImage() {
+        return image;
+    }
+
+    public void setImage(@Nullable FirebaseVisionImage image) {
+        this.image = image;
+    }
+
+    @Nullable
+    public T getResults() {
+        return results;
+    }
+
+    public void setResults(@Nullable T results) {
+        this.results = results;
+    }
+
+    /** Whether the results are those of an earlier frame of the same scene. */
+    public boolean isResultsReused() {
+        return resultsReused;
+    }
+
+    public void setResultsReused(boolean resultsReused) {
+        this.resultsReused = resultsReused;
+    }
+
+    /** When the frame was handed to the processor, in {@link System#nanoTime()} time base. */
+    public long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+
+    /** Time spent in the post-process stage of the pipeline. */
+    public long getPostProcessNanos() {
+        return postProcessNanos;
+    }
+
+    public void setPostProcessNanos(long postProcessNanos) {
+        this.postProcessNanos = postProcessNanos;
+    }
+
+    /** Sequence number of the frame in the processor's {@link InFlightWindow}, if in detection. */
+    long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+}
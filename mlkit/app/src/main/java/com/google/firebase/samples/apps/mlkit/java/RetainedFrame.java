@@ -0,0 +1,90 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.samples.apps.mlkit.common.BitmapUtils;
+import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.Nv21Converter;
+import com.google.firebase.samples.apps.mlkit.common.Nv21Transforms;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A copy of the last frame whose results were shown, kept as NV21 in a reused buffer so that a
+ * bitmap of it only has to be built when someone asks for one.
+ *
+ * <p>Ownership: {@link #retain} copies the frame, so the caller may recycle its buffer or close
+ * its image as soon as it returns. The retained frame never holds a bitmap; each {@link
+ * #toBitmap()} takes a new one from the pool and hands it to the caller, who releases it.
+ */
+class RetainedFrame {
+
+    @Nullable
+    private ByteBuffer data;
+
+    @Nullable
+    private FrameMetadata metadata;
+
+    /** Replaces the retained frame with a copy of {@code source}. */
+    synchronized void retain(ByteBuffer source, FrameMetadata metadata) {
+        ByteBuffer view = source.duplicate();
+        view.rewind();
+        ByteBuffer buffer = obtainBuffer(view.remaining());
+        buffer.put(view);
+        buffer.flip();
+        this.metadata = metadata;
+    }
+
+    /** Replaces the retained frame with the YUV_420_888 {@code image}, packed as NV21. */
+    synchronized void retain(Image image, FrameMetadata metadata) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer buffer = obtainBuffer(Nv21Converter.getFrameSize(width, height));
+        Image.Plane[] planes = image.getPlanes();
+        Nv21Transforms.fromYuv420(planes[0].getBuffer(), planes[1].getBuffer(),
+                planes[2].getBuffer(), planes[0].getRowStride(), planes[1].getRowStride(),
+                planes[1].getPixelStride(), width, height, buffer);
+        this.metadata = metadata;
+    }
+
+    /**
+     * Converts the retained frame to an upright bitmap, taken from the {@link
+     * com.google.firebase.samples.apps.mlkit.common.BitmapPool}, which the caller owns from then
+     * on. Returns null if no frame is retained.
+     */
+    @Nullable
+    synchronized Bitmap toBitmap() {
+        if (data == null || metadata == null) {
+            return null;
+        }
+        return BitmapUtils.getBitmap(data, metadata);
+    }
+
+    synchronized void clear() {
+        metadata = null;
+    }
+
+    private ByteBuffer obtainBuffer(int size) {
+        if (data == null || data.capacity() < size) {
+            data = ByteBuffer.allocate(size);
+        }
+        data.clear();
+        return data;
+    }
+}
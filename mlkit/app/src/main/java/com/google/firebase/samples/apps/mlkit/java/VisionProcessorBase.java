@@ -14,6 +14,9 @@
 package com.google.firebase.samples.apps.mlkit.java;
 
 import android.graphics.Bitmap;
+import android.media.Image;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
@@ -22,14 +25,33 @@ import androidx.annotation.Nullable;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.ml.vision.common.FirebaseVisionImage;
 import com.google.firebase.ml.vision.common.FirebaseVisionImageMetadata;
+import com.google.firebase.samples.apps.mlkit.common.BackpressurePolicy;
+import com.google.firebase.samples.apps.mlkit.common.BitmapPool;
 import com.google.firebase.samples.apps.mlkit.common.BitmapUtils;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.FrameQualityGate;
+import com.google.firebase.samples.apps.mlkit.common.FrameRateGovernor;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
-import com.google.firebase.samples.apps.mlkit.common.VisionImageProcessor;
+import com.google.firebase.samples.apps.mlkit.common.InFlightWindow;
+import com.google.firebase.samples.apps.mlkit.common.Nv21Converter;
+import com.google.firebase.samples.apps.mlkit.common.Nv21Transforms;
+import com.google.firebase.samples.apps.mlkit.common.PlanarImageProcessor;
+import com.google.firebase.samples.apps.mlkit.common.RegionOfInterest;
+import com.google.firebase.samples.apps.mlkit.common.SceneChangeDetector;
+import com.google.firebase.samples.apps.mlkit.common.StageLatencies;
+import com.google.firebase.samples.apps.mlkit.common.StageLatencies.Stage;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Abstract base class for ML Kit frame processors. Subclasses need to implement {@link
@@ -37,37 +59,466 @@ import java.nio.ByteBuffer;
  * the detection results and {@link #detectInImage(FirebaseVisionImage)} to specify the detector
  * object.
  *
+ * <p>By default one frame is handled at a time: conversion, detection and {@link #onSuccess} run
+ * one after another, and the latest camera frame waits until they are done. With {@link
+ * #setPipelineEnabled(boolean)} the work is split into stages (convert, detect, post-process and
+ * render by default, see {@link #createPipelineStages()}) that run on their own threads, so the
+ * next frame is converted while the current one is in detection.
+ *
+ * <p>{@link #setMaxFramesInFlight(int)} lets several frames be in detection at once, for
+ * subclasses that spread them over several detector instances, see {@link
+ * com.google.firebase.samples.apps.mlkit.common.DetectorPool}. Results are delivered in frame
+ * order; those finishing after the results of a newer frame are dropped. The same goes for any
+ * results of a frame older than the last one shown, going by {@link
+ * FrameMetadata#getSequenceNumber()}, and the time from capture until the overlay has drawn the
+ * results is recorded as {@link Stage#END_TO_END} latency.
+ *
+ * <p>Camera frames that arrive while the detector is busy are copied into recycled buffers and
+ * queued according to a {@link BackpressurePolicy}, latest-only unless set otherwise with {@link
+ * #setBackpressurePolicy(BackpressurePolicy)}.
+ *
+ * <p>An optional {@link FrameQualityGate}, see {@link #setQualityGate(FrameQualityGate)}, keeps
+ * blurry frames from reaching the detector at all.
+ *
+ * <p>With a {@link SceneChangeDetector}, see {@link #setSceneChangeDetector(SceneChangeDetector)},
+ * frames showing the same scene as the last detected one skip the detector and reuse its results.
+ *
+ * <p>A {@link RegionOfInterest}, see {@link #setRegionOfInterest(RegionOfInterest)}, limits
+ * detection to a crop of the frame, and {@link #setDetectionWidth(int)} downscales what is
+ * detected on independently of the preview size. Results are then relative to the image the
+ * detector saw; the detection offset and scale of the {@link FrameMetadata} map them back to the
+ * frame, and the overlay is transformed accordingly.
+ *
+ * <p>When the camera preview is shown behind the overlay, {@link
+ * #setDrawsCameraImage(boolean)} stops building a background bitmap for every frame. {@link
+ * #getLastFrameBitmap()} then builds one on demand from the last frame shown, if frames are
+ * retained, see {@link #setRetainsLastFrame(boolean)}.
+ *
+ * <p>The time frames spend in each stage is recorded per processor class, see {@link
+ * #getStageLatencies()}.
+ *
  * @param <T> The type of the detected feature.
  */
-public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
+public abstract class VisionProcessorBase<T> implements PlanarImageProcessor {
 
-    // To keep the latest images and its metadata.
+    // Decides which frames wait while the detector is busy.
     @GuardedBy("this")
-    private ByteBuffer latestImage;
+    private BackpressurePolicy<PipelineFrame<T>> backpressurePolicy =
+            BackpressurePolicy.latestOnly();
 
-    @GuardedBy("this")
-    private FrameMetadata latestImageMetaData;
+    // The frames in detection when the pipeline is not enabled.
+    private final InFlightWindow inFlightWindow = new InFlightWindow(1);
+
+    // Sequence number of the last frame whose results were delivered, and how many results were
+    // dropped for coming from an older frame. Only changed on the main thread, and by stop().
+    private volatile long lastDeliveredSequenceNumber = FrameMetadata.NO_SEQUENCE_NUMBER;
+    private final AtomicLong outOfOrderResultCount = new AtomicLong();
+
+    // Capacity of the queue in front of each pipeline stage.
+    private static final int PIPELINE_QUEUE_CAPACITY = 1;
 
-    // To keep the images and metadata in process.
     @GuardedBy("this")
-    private ByteBuffer processingImage;
+    @Nullable
+    private FramePipeline<PipelineFrame<T>> pipeline;
+
+    // Recycled frames, and how many have been allocated in total. Only the pipeline needs a cap;
+    // otherwise the backpressure policy bounds the number of frames.
+    @GuardedBy("freeFrames")
+    private final ArrayDeque<PipelineFrame<T>> freeFrames = new ArrayDeque<>();
+
+    @GuardedBy("freeFrames")
+    private int allocatedFrames;
 
+    @GuardedBy("freeFrames")
+    private int maxFrames = Integer.MAX_VALUE;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Receives the latency of every detector call, if set.
+    @Nullable
+    private volatile FrameRateGovernor frameRateGovernor;
+
+    private final StageLatencies latencies = StageLatencies.forProcessor(getClass());
+
+    // Scores frames before they are queued, if set.
     @GuardedBy("this")
+    @Nullable
+    private FrameQualityGate<PipelineFrame<T>> qualityGate;
+
+    private final FrameQualityGate.Listener<PipelineFrame<T>> qualityGateListener =
+            new FrameQualityGate.Listener<PipelineFrame<T>>() {
+                @Override
+                public void onPass(PipelineFrame<T> frame) {
+                    admitFrame(frame);
+                }
+
+                @Override
+                public void onReject(PipelineFrame<T> frame) {
+                    recycleFrame(frame);
+                }
+            };
+
+    // Decides which frames are worth detecting on, if set.
+    @Nullable
+    private volatile SceneChangeDetector sceneChangeDetector;
+
+    // Results of the last detector call, reused while the scene does not change.
+    @Nullable
+    private volatile Detection<T> lastDetection;
+
+    // Part of the frames handed to the detector, all of it if null.
+    @Nullable
+    private volatile RegionOfInterest regionOfInterest;
+
+    // Widest image handed to the detector, or 0 to never downscale.
+    private volatile int detectionWidth;
+
+    // Whether every frame is converted to a bitmap for onSuccess to draw.
+    private volatile boolean drawsCameraImage = true;
+
+    // Whether the last frame shown is kept for getLastFrameBitmap.
+    private volatile boolean retainsLastFrame;
 
-    private FrameMetadata processingMetaData;
+    // The last frame shown, kept instead of a bitmap when the camera image is not drawn.
+    private final RetainedFrame lastFrame = new RetainedFrame();
+
+    // Results along with the metadata of the frame they were detected on.
+    private static final class Detection<T> {
+        final T results;
+        final FrameMetadata metadata;
+
+        Detection(T results, FrameMetadata metadata) {
+            this.results = results;
+            this.metadata = metadata;
+        }
+    }
 
     public VisionProcessorBase() {
     }
 
+    /**
+     * Switches between processing one frame at a time and the staged pipeline. The stages are
+     * taken from {@link #createPipelineStages()} when the pipeline is enabled.
+     */
+    public synchronized void setPipelineEnabled(boolean enabled) {
+        if (enabled == (pipeline != null)) {
+            return;
+        }
+        if (enabled) {
+            // The pipeline refuses frames itself when full, so nothing waits in the policy.
+            drainBackpressurePolicy();
+            List<FramePipeline.Stage<PipelineFrame<T>>> stages = createPipelineStages();
+            synchronized (freeFrames) {
+                // Every queue and every stage can hold one frame, plus the one being copied in and
+                // the one the quality gate may hold on to.
+                maxFrames = stages.size() * (PIPELINE_QUEUE_CAPACITY + 1) + 2;
+            }
+            pipeline = new FramePipeline<>(stages, PIPELINE_QUEUE_CAPACITY, new PipelineListener());
+            pipeline.start();
+        } else {
+            stopPipeline();
+        }
+        updateGovernorConcurrency();
+    }
+
+    /**
+     * Sets which frames wait for the detector while it is busy when the pipeline is not enabled.
+     * Frames waiting under the previous policy are dropped.
+     */
+    public synchronized void setBackpressurePolicy(
+            @NonNull BackpressurePolicy<PipelineFrame<T>> policy) {
+        drainBackpressurePolicy();
+        backpressurePolicy = policy;
+    }
+
+    /**
+     * Sets a gate that scores every frame for sharpness before it is queued, and keeps the frames
+     * it rejects from the detector. Pass null to let every frame through.
+     */
+    public synchronized void setQualityGate(
+            @Nullable FrameQualityGate<PipelineFrame<T>> gate) {
+        if (qualityGate != null) {
+            qualityGate.flush(qualityGateListener);
+        }
+        qualityGate = gate;
+    }
+
+    /**
+     * Sets a detector that compares every frame with the last one detected on. Frames showing the
+     * same scene skip the detector and are handed to {@link #onResultsReused} with the last
+     * results instead. Pass null to detect on every frame.
+     */
+    public void setSceneChangeDetector(@Nullable SceneChangeDetector detector) {
+        if (detector != null) {
+            detector.reset();
+        }
+        sceneChangeDetector = detector;
+    }
+
+    // Returns the results to reuse for the frame, or null if it has to go to the detector. The
+    // frame takes over the detection offset of the reused results.
+    @Nullable
+    private T findReusableResults(PipelineFrame<T> frame) {
+        SceneChangeDetector detector = sceneChangeDetector;
+        Detection<T> previous = lastDetection;
+        if (detector == null) {
+            return null;
+        }
+        FrameMetadata metadata = frame.getMetadata();
+        boolean changed = detector.hasChanged(frame.getData(), metadata.getWidth(),
+                metadata.getHeight(), System.nanoTime());
+        if (changed || previous == null) {
+            if (!changed) {
+                // Nothing to reuse yet, so make sure the next frame is detected on too.
+                detector.reset();
+            }
+            return null;
+        }
+        frame.setMetadata(metadata.withDetectionTransform(
+                previous.metadata.getDetectionOffsetX(), previous.metadata.getDetectionOffsetY(),
+                previous.metadata.getDetectionScale()));
+        return previous.results;
+    }
+
+    /**
+     * Limits detection to {@code region} of the frames. Pass null, or {@link
+     * RegionOfInterest#FULL_FRAME}, to detect on whole frames.
+     */
+    public void setRegionOfInterest(@Nullable RegionOfInterest region) {
+        regionOfInterest = region;
+    }
+
+    /** The region frames are detected on, or null for whole frames. */
+    @Nullable
+    public RegionOfInterest getRegionOfInterest() {
+        return regionOfInterest;
+    }
+
+    /**
+     * Downscales frames, or their region of interest, wider than {@code width} camera pixels to
+     * that width before detection, keeping the aspect ratio. This lets the preview run at a higher
+     * resolution than the detector needs. Pass 0 to detect at the preview resolution.
+     */
+    public void setDetectionWidth(int width) {
+        detectionWidth = width;
+    }
+
+    // Returns the image to hand to the detector: the region of interest of the frame, or the whole
+    // frame, downscaled to the detection width if needed. Crops and downscaled frames go into the
+    // frame's own buffers. The frame's metadata gets the detection offset and scale.
+    private FirebaseVisionImage createVisionImage(PipelineFrame<T> frame) {
+        FrameMetadata metadata = frame.getMetadata();
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+        int rotation = metadata.getRotation();
+
+        ByteBuffer data = frame.getData();
+        int dataWidth = width;
+        int dataHeight = height;
+        int offsetX = 0;
+        int offsetY = 0;
+        RegionOfInterest region = getRegionOfInterest();
+        if (region != null && !region.isFullFrame()) {
+            int[] crop = frame.getCrop();
+            region.toSensorCrop(width, height, rotation, crop);
+            dataWidth = crop[RegionOfInterest.CROP_WIDTH];
+            dataHeight = crop[RegionOfInterest.CROP_HEIGHT];
+            ByteBuffer cropData =
+                    frame.getCropBuffer(Nv21Converter.getFrameSize(dataWidth, dataHeight));
+            Nv21Transforms.crop(data, width, height, crop[RegionOfInterest.CROP_LEFT],
+                    crop[RegionOfInterest.CROP_TOP], dataWidth, dataHeight, cropData);
+            data = cropData;
+            offsetX = RegionOfInterest.getUprightOffsetX(width, height, rotation, crop);
+            offsetY = RegionOfInterest.getUprightOffsetY(width, height, rotation, crop);
+        }
+
+        float scale = 1f;
+        int maxWidth = detectionWidth;
+        if (maxWidth > 0 && dataWidth > maxWidth) {
+            // Even sizes keep the chroma planes whole.
+            int scaledWidth = Math.max(2, maxWidth & ~1);
+            int scaledHeight =
+                    Math.max(2, Math.round((float) dataHeight * scaledWidth / dataWidth) & ~1);
+            ByteBuffer scaledData =
+                    frame.getScaledBuffer(Nv21Converter.getFrameSize(scaledWidth, scaledHeight));
+            Nv21Transforms.downscale(
+                    data, dataWidth, dataHeight, scaledData, scaledWidth, scaledHeight);
+            scale = (float) dataWidth / scaledWidth;
+            data = scaledData;
+            dataWidth = scaledWidth;
+            dataHeight = scaledHeight;
+        }
+
+        frame.setMetadata(metadata.withDetectionTransform(offsetX, offsetY, scale));
+        return FirebaseVisionImage.fromByteBuffer(
+                data, toVisionMetadata(dataWidth, dataHeight, rotation));
+    }
+
+    /**
+     * Sets how many frames may be in detection at the same time when the pipeline is not enabled,
+     * 1 by default. Only raise it if {@link #detectInImage(FirebaseVisionImage)} can run that many
+     * calls in parallel, typically on instances of a {@link
+     * com.google.firebase.samples.apps.mlkit.common.DetectorPool} of the same size.
+     */
+    public synchronized void setMaxFramesInFlight(int maxFramesInFlight) {
+        inFlightWindow.setMaxInFlight(maxFramesInFlight);
+        updateGovernorConcurrency();
+        processNextFrames();
+    }
+
+    /** Number of results dropped because those of a newer frame were delivered first. */
+    public long getStaleResultCount() {
+        return inFlightWindow.getStaleCount() + outOfOrderResultCount.get();
+    }
+
+    /**
+     * Sets whether frames are converted to bitmaps that {@link #onSuccess} draws behind the
+     * results, true by default. Turn it off when the overlay sits on top of the live camera
+     * preview: {@link #onSuccess} then gets a null bitmap, and {@link #getLastFrameBitmap()} builds
+     * one only when asked, if {@link #setRetainsLastFrame(boolean)} is on.
+     *
+     * <p>Switching is safe at any time. Bitmaps already handed out keep their owner: the {@link
+     * com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic} drawing one releases it when
+     * the overlay is cleared, and a bitmap from {@link #getLastFrameBitmap()} is its caller's.
+     */
+    public void setDrawsCameraImage(boolean drawsCameraImage) {
+        this.drawsCameraImage = drawsCameraImage;
+        if (drawsCameraImage) {
+            lastFrame.clear();
+        }
+    }
+
+    /**
+     * Sets whether the last frame whose results were shown is kept for {@link
+     * #getLastFrameBitmap()}, false by default. Keeping it copies every frame delivered while the
+     * camera image is not drawn, so only turn it on while something may ask for the bitmap, such as
+     * while a screen that saves stills is open.
+     */
+    public void setRetainsLastFrame(boolean retainsLastFrame) {
+        this.retainsLastFrame = retainsLastFrame;
+        if (!retainsLastFrame) {
+            lastFrame.clear();
+        }
+    }
+
+    /**
+     * Returns an upright bitmap of the last frame whose results were shown, such as for saving a
+     * still, or null if there is none. Only available while frames are retained and the camera
+     * image is not drawn, see {@link #setRetainsLastFrame(boolean)} and {@link
+     * #setDrawsCameraImage(boolean)}. The bitmap comes from the {@link BitmapPool} and
+     * belongs to the caller: neither the processor nor the overlay keeps or releases it, so hand it
+     * back with {@link BitmapPool#release(Bitmap)} once done with it. Every call builds a new one.
+     */
+    @Nullable
+    public Bitmap getLastFrameBitmap() {
+        return drawsCameraImage || !retainsLastFrame ? null : lastFrame.toBitmap();
+    }
+
+    // Converts the frame for onSuccess to draw, unless the camera preview shows it already. The
+    // bitmap is handed on with the frame; whoever ends up with it releases it to the pool.
+    @Nullable
+    private Bitmap createCameraImage(PipelineFrame<T> frame) {
+        return drawsCameraImage
+                ? BitmapUtils.getBitmap(frame.getData(), frame.getMetadata()) : null;
+    }
+
+    // Keeps the frame whose results are shown, for getLastFrameBitmap.
+    private void retainFrame(PipelineFrame<T> frame) {
+        if (retainsLastFrame && !drawsCameraImage) {
+            lastFrame.retain(frame.getData(), frame.getMetadata());
+        }
+    }
+
+    /** Number of frames dropped by the current backpressure policy. */
+    public synchronized long getDroppedFrameCount() {
+        return backpressurePolicy.getDroppedCount();
+    }
+
+    @GuardedBy("this")
+    private void drainBackpressurePolicy() {
+        PipelineFrame<T> frame;
+        while ((frame = backpressurePolicy.poll()) != null) {
+            recycleFrame(frame);
+        }
+    }
+
+    /**
+     * Reports the latency of every detector call to {@code governor}, typically the one of the
+     * {@link com.google.firebase.samples.apps.mlkit.common.CameraSource} feeding this processor, so
+     * it can stop waking the processor for frames it has no time for. The governor is told how
+     * many frames may be in detection at once, see {@link #setMaxFramesInFlight(int)}.
+     */
+    public synchronized void setFrameRateGovernor(@Nullable FrameRateGovernor governor) {
+        frameRateGovernor = governor;
+        updateGovernorConcurrency();
+    }
+
+    // The pipeline detects one frame at a time; otherwise as many as the in-flight window allows.
+    @GuardedBy("this")
+    private void updateGovernorConcurrency() {
+        FrameRateGovernor governor = frameRateGovernor;
+        if (governor != null) {
+            governor.setConcurrency(pipeline != null ? 1 : inFlightWindow.getMaxInFlight());
+        }
+    }
+
+    private void reportDetectionLatency(long startNanos) {
+        long latencyNanos = System.nanoTime() - startNanos;
+        latencies.get(Stage.DETECTION).record(latencyNanos);
+        FrameRateGovernor governor = frameRateGovernor;
+        if (governor != null) {
+            governor.onDetectionLatency(latencyNanos);
+        }
+    }
+
+    /**
+     * Returns the latency histograms of this processor's class, one per stage a frame goes through.
+     */
+    public StageLatencies getStageLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Returns how many frames per second made it through every stage of the pipeline, or 0 when the
+     * pipeline is not enabled.
+     */
+    public synchronized double getPipelineThroughputFps() {
+        return pipeline != null ? pipeline.getThroughputFps() : 0;
+    }
+
     @Override
     public synchronized void process(
             ByteBuffer data, final FrameMetadata frameMetadata, final GraphicOverlay
             graphicOverlay) {
-        latestImage = data;
-        latestImageMetaData = frameMetadata;
-        if (processingImage == null && processingMetaData == null) {
-            processLatestImage(graphicOverlay);
+        PipelineFrame<T> frame = obtainFrame(data.limit());
+        if (frame == null) {
+            // Every frame is somewhere in the pipeline, so this one has nowhere to go.
+            return;
+        }
+        // The camera reuses its buffer as soon as this call returns, so queue a copy.
+        frame.set(data, frameMetadata, graphicOverlay);
+        if (qualityGate != null) {
+            qualityGate.submit(frame, frame.getData(), frameMetadata.getWidth(),
+                    frameMetadata.getHeight(), qualityGateListener);
+        } else {
+            admitFrame(frame);
+        }
+    }
+
+    // Hands a frame that made it past the quality gate to the pipeline or backpressure policy.
+    @GuardedBy("this")
+    private void admitFrame(PipelineFrame<T> frame) {
+        if (pipeline != null) {
+            if (!pipeline.submit(frame)) {
+                recycleFrame(frame);
+            }
+            return;
+        }
+        PipelineFrame<T> dropped = backpressurePolicy.offer(frame);
+        if (dropped != null) {
+            recycleFrame(dropped);
         }
+        processNextFrames();
     }
 
     // Bitmap version
@@ -75,63 +526,421 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
     public void process(Bitmap bitmap, final GraphicOverlay
             graphicOverlay) {
         detectInVisionImage(null /* bitmap */, FirebaseVisionImage.fromBitmap(bitmap), null,
-                graphicOverlay);
+                graphicOverlay, null /* frame */);
     }
 
-    private synchronized void processLatestImage(final GraphicOverlay graphicOverlay) {
-        processingImage = latestImage;
-        processingMetaData = latestImageMetaData;
-        latestImage = null;
-        latestImageMetaData = null;
-        if (processingImage != null && processingMetaData != null) {
-            processImage(processingImage, processingMetaData, graphicOverlay);
+    /**
+     * YUV_420_888 version. The image is read in place, so detection runs to completion on the
+     * calling thread and only the results are handed to the main thread. There is no queue: the
+     * frame source drops the frames that arrive meanwhile. The backpressure policy, quality gate,
+     * scene change detector, region of interest and detection width only apply to NV21 frames.
+     */
+    @Override
+    public void process(
+            Image image, final FrameMetadata frameMetadata, final GraphicOverlay graphicOverlay)
+            throws InterruptedException {
+        long startNanos = System.nanoTime();
+        final Bitmap bitmap;
+        if (drawsCameraImage) {
+            bitmap = BitmapUtils.getBitmap(image, frameMetadata);
+        } else {
+            bitmap = null;
+            if (retainsLastFrame) {
+                // The image is gone once this returns.
+                lastFrame.retain(image, frameMetadata);
+            }
+        }
+        FirebaseVisionImage visionImage =
+                FirebaseVisionImage.fromMediaImage(image, frameMetadata.getRotation());
+        latencies.get(Stage.CONVERSION).recordSince(startNanos);
+
+        long detectionStartNanos = System.nanoTime();
+        final T results;
+        try {
+            results = Tasks.await(detectInImage(visionImage));
+        } catch (final ExecutionException e) {
+            mainHandler.post(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            BitmapPool.getInstance().release(bitmap);
+                            onFailure(e.getCause() instanceof Exception
+                                    ? (Exception) e.getCause() : e);
+                        }
+                    });
+            return;
         }
+        reportDetectionLatency(detectionStartNanos);
+        mainHandler.post(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        deliverResults(bitmap, results, false /* reused */, frameMetadata,
+                                graphicOverlay, 0);
+                    }
+                });
     }
 
-    private void processImage(
-            ByteBuffer data, final FrameMetadata frameMetadata,
-            final GraphicOverlay graphicOverlay) {
-        FirebaseVisionImageMetadata metadata =
-                new FirebaseVisionImageMetadata.Builder()
-                        .setFormat(FirebaseVisionImageMetadata.IMAGE_FORMAT_NV21)
-                        .setWidth(frameMetadata.getWidth())
-                        .setHeight(frameMetadata.getHeight())
-                        .setRotation(frameMetadata.getRotation())
-                        .build();
+    // Starts detection on waiting frames while the in-flight window has room.
+    @GuardedBy("this")
+    private void processNextFrames() {
+        while (inFlightWindow.hasRoom()) {
+            PipelineFrame<T> frame = backpressurePolicy.poll();
+            if (frame == null) {
+                return;
+            }
+            frame.setSequence(inFlightWindow.begin());
+            processImage(frame);
+        }
+    }
 
-        Bitmap bitmap = BitmapUtils.getBitmap(data, frameMetadata);
-        detectInVisionImage(
-                bitmap, FirebaseVisionImage.fromByteBuffer(data, metadata), frameMetadata,
-                graphicOverlay);
+    // Called once detection of a queued frame finished, successfully or not, and its sequence
+    // number has been ended in the in-flight window.
+    private synchronized void onFrameProcessed(PipelineFrame<T> frame) {
+        recycleFrame(frame);
+        processNextFrames();
+    }
+
+    private void processImage(final PipelineFrame<T> frame) {
+        long startNanos = System.nanoTime();
+        latencies.get(Stage.QUEUE_WAIT).record(startNanos - frame.getEnqueuedNanos());
+        final Bitmap bitmap = createCameraImage(frame);
+        final T reusable = findReusableResults(frame);
+        if (reusable != null) {
+            latencies.get(Stage.CONVERSION).recordSince(startNanos);
+            // Same thread as detector results are delivered on.
+            mainHandler.post(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            if (inFlightWindow.finish(frame.getSequence())) {
+                                retainFrame(frame);
+                                deliverResults(bitmap, reusable, true /* reused */,
+                                        frame.getMetadata(), frame.getGraphicOverlay(), 0);
+                            } else {
+                                BitmapPool.getInstance().release(bitmap);
+                            }
+                            onFrameProcessed(frame);
+                        }
+                    });
+            return;
+        }
+        FirebaseVisionImage image = createVisionImage(frame);
+        latencies.get(Stage.CONVERSION).recordSince(startNanos);
+        detectInVisionImage(bitmap, image, frame.getMetadata(), frame.getGraphicOverlay(), frame);
+    }
+
+    private static FirebaseVisionImageMetadata toVisionMetadata(
+            int width, int height, int rotation) {
+        return new FirebaseVisionImageMetadata.Builder()
+                .setFormat(FirebaseVisionImageMetadata.IMAGE_FORMAT_NV21)
+                .setWidth(width)
+                .setHeight(height)
+                .setRotation(rotation)
+                .build();
     }
 
     private void detectInVisionImage(
             final Bitmap originalCameraImage,
             FirebaseVisionImage image,
             final FrameMetadata metadata,
-            final GraphicOverlay graphicOverlay) {
+            final GraphicOverlay graphicOverlay,
+            @Nullable final PipelineFrame<T> frame) {
+        final long startNanos = System.nanoTime();
         detectInImage(image)
                 .addOnSuccessListener(
                         new OnSuccessListener<T>() {
                             @Override
                             public void onSuccess(T results) {
-                                VisionProcessorBase.this.onSuccess(originalCameraImage, results,
-                                        metadata,
-                                        graphicOverlay);
-                                processLatestImage(graphicOverlay);
+                                reportDetectionLatency(startNanos);
+                                if (frame != null && !inFlightWindow.finish(frame.getSequence())) {
+                                    // A newer frame is on screen already.
+                                    BitmapPool.getInstance().release(originalCameraImage);
+                                    onFrameProcessed(frame);
+                                    return;
+                                }
+                                if (frame != null) {
+                                    lastDetection = new Detection<>(results, metadata);
+                                    retainFrame(frame);
+                                }
+                                deliverResults(originalCameraImage, results, false /* reused */,
+                                        metadata, graphicOverlay, 0);
+                                if (frame != null) {
+                                    onFrameProcessed(frame);
+                                }
                             }
                         })
                 .addOnFailureListener(
                         new OnFailureListener() {
                             @Override
                             public void onFailure(@NonNull Exception e) {
+                                // Nothing is going to draw the frame, so recycle it right away.
+                                BitmapPool.getInstance().release(originalCameraImage);
                                 VisionProcessorBase.this.onFailure(e);
+                                // Move on, or the processor would stall on this frame for good.
+                                if (frame != null) {
+                                    inFlightWindow.cancel(frame.getSequence());
+                                    onFrameProcessed(frame);
+                                }
                             }
                         });
     }
 
+    // Calls onSuccess, or onResultsReused, and records how long it took, plus any earlier
+    // post-processing time. Drops the results, and the bitmap, if those of a newer camera frame
+    // were delivered already. Package-private for tests.
+    void deliverResults(
+            @Nullable Bitmap originalCameraImage,
+            T results,
+            boolean reused,
+            @Nullable FrameMetadata metadata,
+            GraphicOverlay graphicOverlay,
+            long postProcessNanos) {
+        if (metadata != null
+                && metadata.getSequenceNumber() != FrameMetadata.NO_SEQUENCE_NUMBER) {
+            if (metadata.getSequenceNumber() < lastDeliveredSequenceNumber) {
+                // The results of a newer camera frame are on screen already.
+                outOfOrderResultCount.incrementAndGet();
+                BitmapPool.getInstance().release(originalCameraImage);
+                return;
+            }
+            lastDeliveredSequenceNumber = metadata.getSequenceNumber();
+        }
+        graphicOverlay.setInvalidationLatencyHistogram(latencies.get(Stage.OVERLAY_INVALIDATION));
+        graphicOverlay.setEndToEndLatencyHistogram(latencies.get(Stage.END_TO_END));
+        if (metadata != null) {
+            graphicOverlay.setFrameInfo(metadata);
+            graphicOverlay.setDetectionTransform(metadata.getDetectionOffsetX(),
+                    metadata.getDetectionOffsetY(), metadata.getDetectionScale());
+        } else {
+            graphicOverlay.setDetectionTransform(0, 0, 1f);
+        }
+        long startNanos = System.nanoTime();
+        if (reused) {
+            onResultsReused(originalCameraImage, results, metadata, graphicOverlay);
+        } else {
+            onSuccess(originalCameraImage, results, metadata, graphicOverlay);
+        }
+        latencies.get(Stage.POST_PROCESSING).record(
+                postProcessNanos + System.nanoTime() - startNanos);
+    }
+
     @Override
     public void stop() {
+        synchronized (this) {
+            stopPipeline();
+            drainBackpressurePolicy();
+            if (qualityGate != null) {
+                qualityGate.flush(qualityGateListener);
+            }
+        }
+        lastDetection = null;
+        lastFrame.clear();
+        // The next frames may come from another source, numbered from 0 again.
+        lastDeliveredSequenceNumber = FrameMetadata.NO_SEQUENCE_NUMBER;
+    }
+
+    // ==============================================================================================
+    // Pipelined mode
+    // ==============================================================================================
+
+    @GuardedBy("this")
+    private void stopPipeline() {
+        if (pipeline != null) {
+            pipeline.stop();
+            pipeline = null;
+            synchronized (freeFrames) {
+                maxFrames = Integer.MAX_VALUE;
+            }
+            updateGovernorConcurrency();
+        }
+    }
+
+    // Returns a recycled frame, or null if the pipeline already holds as many as it can use.
+    @Nullable
+    private PipelineFrame<T> obtainFrame(int capacity) {
+        synchronized (freeFrames) {
+            PipelineFrame<T> frame = freeFrames.pollFirst();
+            if (frame == null && allocatedFrames < maxFrames) {
+                allocatedFrames++;
+                frame = new PipelineFrame<>(capacity);
+            }
+            return frame;
+        }
+    }
+
+    private void recycleFrame(PipelineFrame<T> frame) {
+        // A bitmap still attached here was never handed to the overlay.
+        BitmapPool.getInstance().release(frame.getBitmap());
+        frame.reset();
+        synchronized (freeFrames) {
+            freeFrames.addFirst(frame);
+        }
+    }
+
+    private class PipelineListener implements FramePipeline.Listener<PipelineFrame<T>> {
+        @Override
+        public void onFrameDone(PipelineFrame<T> frame) {
+            recycleFrame(frame);
+        }
+
+        @Override
+        public void onStageFailed(PipelineFrame<T> frame, Exception e) {
+            onFailure(e);
+        }
+    }
+
+    /**
+     * Declares the stages of the pipelined mode. The default is {@link #createConvertStage()},
+     * {@link #createDetectStage()}, {@link #createPostProcessStage()} and {@link
+     * #createRenderStage()}; subclasses can drop stages they do not need or add their own.
+     */
+    protected List<FramePipeline.Stage<PipelineFrame<T>>> createPipelineStages() {
+        List<FramePipeline.Stage<PipelineFrame<T>>> stages = new ArrayList<>();
+        stages.add(createConvertStage());
+        stages.add(createDetectStage());
+        stages.add(createPostProcessStage());
+        stages.add(createRenderStage());
+        return stages;
+    }
+
+    /** Converts the frame to the background bitmap and the image handed to the detector. */
+    protected FramePipeline.Stage<PipelineFrame<T>> createConvertStage() {
+        return new FramePipeline.Stage<PipelineFrame<T>>() {
+            @Override
+            public String getName() {
+                return "convert";
+            }
+
+            @Override
+            public boolean process(PipelineFrame<T> frame) {
+                long startNanos = System.nanoTime();
+                latencies.get(Stage.QUEUE_WAIT).record(startNanos - frame.getEnqueuedNanos());
+                frame.setBitmap(createCameraImage(frame));
+                T reusable = findReusableResults(frame);
+                if (reusable != null) {
+                    frame.setResults(reusable);
+                    frame.setResultsReused(true);
+                } else {
+                    frame.setImage(createVisionImage(frame));
+                }
+                latencies.get(Stage.CONVERSION).recordSince(startNanos);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Runs {@link #detectInImage(FirebaseVisionImage)} and waits for its result, unless the frame
+     * already reuses earlier results.
+     */
+    protected FramePipeline.Stage<PipelineFrame<T>> createDetectStage() {
+        return new FramePipeline.Stage<PipelineFrame<T>>() {
+            @Override
+            public String getName() {
+                return "detect";
+            }
+
+            @Override
+            public boolean process(PipelineFrame<T> frame) throws Exception {
+                if (frame.isResultsReused()) {
+                    return true;
+                }
+                long startNanos = System.nanoTime();
+                T results = Tasks.await(detectInImage(frame.getImage()));
+                frame.setResults(results);
+                lastDetection = new Detection<>(results, frame.getMetadata());
+                reportDetectionLatency(startNanos);
+                return true;
+            }
+        };
+    }
+
+    /** Runs {@link #onPostProcess(Object, FrameMetadata)} off the main thread. */
+    protected FramePipeline.Stage<PipelineFrame<T>> createPostProcessStage() {
+        return new FramePipeline.Stage<PipelineFrame<T>>() {
+            @Override
+            public String getName() {
+                return "postprocess";
+            }
+
+            @Override
+            public boolean process(PipelineFrame<T> frame) {
+                if (frame.isResultsReused()) {
+                    return true;
+                }
+                long startNanos = System.nanoTime();
+                onPostProcess(frame.getResults(), frame.getMetadata());
+                frame.setPostProcessNanos(System.nanoTime() - startNanos);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Hands the results to {@link #onSuccess} on the main thread, which is where the overlay and
+     * any views are updated, and waits until that is done so frames are rendered in order.
+     */
+    protected FramePipeline.Stage<PipelineFrame<T>> createRenderStage() {
+        return new FramePipeline.Stage<PipelineFrame<T>>() {
+            @Override
+            public String getName() {
+                return "render";
+            }
+
+            @Override
+            public boolean process(final PipelineFrame<T> frame) throws InterruptedException {
+                final CountDownLatch rendered = new CountDownLatch(1);
+                // Claimed by whichever comes first: the main thread rendering the frame, or this
+                // thread giving up on it because the pipeline is stopping.
+                final AtomicBoolean claimed = new AtomicBoolean();
+                mainHandler.post(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                if (!claimed.compareAndSet(false, true)) {
+                                    return;
+                                }
+                                try {
+                                    Bitmap bitmap = frame.getBitmap();
+                                    // The overlay owns the bitmap from here on.
+                                    frame.setBitmap(null);
+                                    retainFrame(frame);
+                                    deliverResults(bitmap, frame.getResults(),
+                                            frame.isResultsReused(), frame.getMetadata(),
+                                            frame.getGraphicOverlay(),
+                                            frame.getPostProcessNanos());
+                                } finally {
+                                    rendered.countDown();
+                                }
+                            }
+                        });
+                try {
+                    rendered.await();
+                } catch (InterruptedException e) {
+                    if (!claimed.compareAndSet(false, true)) {
+                        // Already rendering; the frame must not be recycled before that finishes.
+                        while (rendered.getCount() > 0) {
+                            try {
+                                rendered.await();
+                            } catch (InterruptedException ignored) {
+                                // Keep waiting, the main thread is about to finish.
+                            }
+                        }
+                    }
+                    throw e;
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Called by the post-process stage of the pipelined mode, on its own thread, before {@link
+     * #onSuccess} runs on the main thread. Subclasses can move CPU heavy result handling that does
+     * not touch views here. Not called when the pipeline is disabled.
+     */
+    protected void onPostProcess(@NonNull T results, @NonNull FrameMetadata frameMetadata) {
     }
 
     protected abstract Task<T> detectInImage(FirebaseVisionImage image);
@@ -140,7 +949,11 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
      * Callback that executes with a successful detection result.
      *
      * @param originalCameraImage hold the original image from camera, used to draw the background
-     *                            image.
+     *                            image. It is pooled: draw it with a {@link
+     *                            com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic},
+     *                            which hands it back to {@link BitmapPool} once it is cleared.
+     *                            Null if the camera image is not drawn, see {@link
+     *                            #setDrawsCameraImage(boolean)}.
      */
     protected abstract void onSuccess(
             @Nullable Bitmap originalCameraImage,
@@ -148,5 +961,18 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
             @NonNull FrameMetadata frameMetadata,
             @NonNull GraphicOverlay graphicOverlay);
 
+    /**
+     * Callback for a frame that skipped the detector because it shows the same scene as the frame
+     * {@code results} were detected on, see {@link #setSceneChangeDetector}. Calls {@link
+     * #onSuccess} by default; override to redraw without treating the results as new.
+     */
+    protected void onResultsReused(
+            @Nullable Bitmap originalCameraImage,
+            @NonNull T results,
+            @NonNull FrameMetadata frameMetadata,
+            @NonNull GraphicOverlay graphicOverlay) {
+        onSuccess(originalCameraImage, results, frameMetadata, graphicOverlay);
+    }
+
     protected abstract void onFailure(@NonNull Exception e);
 }
@@ -83,6 +83,7 @@ public class AutoMLImageLabelerProcessor
 
   @Override
   public void stop() {
+    super.stop();
     try {
       detector.close();
     } catch (IOException e) {
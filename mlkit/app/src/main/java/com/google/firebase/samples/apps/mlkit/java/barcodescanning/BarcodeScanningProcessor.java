@@ -51,6 +51,7 @@ public class BarcodeScanningProcessor extends VisionProcessorBase<List<FirebaseV
 
     @Override
     public void stop() {
+        super.stop();
         try {
             detector.close();
         } catch (IOException e) {
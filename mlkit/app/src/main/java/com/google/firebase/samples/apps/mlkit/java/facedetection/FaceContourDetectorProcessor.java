@@ -40,6 +40,7 @@ public class FaceContourDetectorProcessor extends VisionProcessorBase<List<Fireb
 
     @Override
     public void stop() {
+        super.stop();
         try {
             detector.close();
         } catch (IOException e) {
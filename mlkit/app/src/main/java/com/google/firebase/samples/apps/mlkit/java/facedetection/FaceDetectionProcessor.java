@@ -61,6 +61,7 @@ public class FaceDetectionProcessor extends VisionProcessorBase<List<FirebaseVis
 
     @Override
     public void stop() {
+        super.stop();
         try {
             detector.close();
         } catch (IOException e) {
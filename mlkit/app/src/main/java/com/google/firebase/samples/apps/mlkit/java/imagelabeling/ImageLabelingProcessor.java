@@ -46,6 +46,7 @@ public class ImageLabelingProcessor extends VisionProcessorBase<List<FirebaseVis
 
     @Override
     public void stop() {
+        super.stop();
         try {
             detector.close();
         } catch (IOException e) {
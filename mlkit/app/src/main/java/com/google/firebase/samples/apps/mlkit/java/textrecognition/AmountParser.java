@@ -0,0 +1,192 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+/**
+ * Reads a monetary amount as OCR prints it, such as "$1,234.56", "12,50", "4.99-" or "1O.OO CR",
+ * into cents, in one pass and without allocating or throwing.
+ *
+ * <p>Accepted:
+ * <ul>
+ *   <li>a leading currency symbol and a leading minus, in either order;
+ *   <li>thousands separators, '.' or ',', with groups of three digits;
+ *   <li>a decimal point, '.' or ',', followed by one or two digits, and at most one space after it;
+ *   <li>a trailing '-' or "CR" for a credit;
+ *   <li>letters OCR mistakes for digits: 'O' and 'o' for 0, 'l' and 'I' for 1, 'S' and 's' for
+ *       5, as long as there is at least one real digit.
+ * </ul>
+ * Anything else makes the text {@link #NOT_AN_AMOUNT}.
+ */
+public final class AmountParser {
+
+    /** Returned for text that is not an amount. */
+    public static final long NOT_AN_AMOUNT = Long.MIN_VALUE;
+
+    // More digits than this could overflow once in cents, and are not a receipt amount anyway.
+    private static final int MAX_DIGITS = 15;
+
+    private AmountParser() {}
+
+    /** Returns the amount {@code text} holds in cents, or {@link #NOT_AN_AMOUNT}. */
+    public static long parse(CharSequence text) {
+        return parse(text, 0, text.length(), false);
+    }
+
+    /** Like {@link #parse(CharSequence)}, for the characters from {@code start} to {@code end}. */
+    public static long parse(CharSequence text, int start, int end) {
+        return parse(text, start, end, false);
+    }
+
+    /**
+     * Like {@link #parse(CharSequence, int, int)}, but when {@code requireDecimals} is set a whole
+     * number such as "12" or "1,234" is {@link #NOT_AN_AMOUNT}.
+     */
+    static long parse(CharSequence text, int start, int end, boolean requireDecimals) {
+        int i = skipSpaces(text, start, end);
+        end = trimSpaces(text, i, end);
+
+        boolean negative = false;
+        if (end - i >= 2
+                && Character.toUpperCase(text.charAt(end - 2)) == 'C'
+                && Character.toUpperCase(text.charAt(end - 1)) == 'R') {
+            negative = true;
+            end = trimSpaces(text, i, end - 2);
+        } else if (end > i && text.charAt(end - 1) == '-') {
+            negative = true;
+            end = trimSpaces(text, i, end - 1);
+        }
+        // A minus and a currency symbol, in either order: "-$5.00", "$ -5.00".
+        boolean symbol = false;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == '-' && !negative) {
+                negative = true;
+            } else if (isCurrencySymbol(c) && !symbol) {
+                symbol = true;
+            } else {
+                break;
+            }
+            i = skipSpaces(text, i + 1, end);
+        }
+
+        long value = 0;
+        int digits = 0;
+        int realDigits = 0;
+        // Digits since the last separator, or since the start.
+        int groupDigits = 0;
+        int firstGroupDigits = 0;
+        int separators = 0;
+        char lastSeparator = 0;
+        char thousandsSeparator = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            int digit = digitValue(c);
+            if (digit >= 0) {
+                if (++digits > MAX_DIGITS) {
+                    return NOT_AN_AMOUNT;
+                }
+                if (c >= '0' && c <= '9') {
+                    realDigits++;
+                }
+                value = 10 * value + digit;
+                groupDigits++;
+            } else if (c == '.' || c == ',') {
+                if (groupDigits == 0) {
+                    return NOT_AN_AMOUNT;
+                }
+                if (separators == 0) {
+                    firstGroupDigits = groupDigits;
+                } else {
+                    // The previous separator was not the decimal point, so it separates thousands.
+                    if (groupDigits != 3
+                            || (thousandsSeparator != 0 && thousandsSeparator != lastSeparator)) {
+                        return NOT_AN_AMOUNT;
+                    }
+                    thousandsSeparator = lastSeparator;
+                }
+                separators++;
+                lastSeparator = c;
+                groupDigits = 0;
+                if (i + 1 < end && text.charAt(i + 1) == ' ') {
+                    i++;
+                }
+            } else {
+                return NOT_AN_AMOUNT;
+            }
+        }
+        if (realDigits == 0 || groupDigits == 0) {
+            return NOT_AN_AMOUNT;
+        }
+
+        long cents;
+        if (separators > 0 && groupDigits <= 2) {
+            // The last separator is the decimal point.
+            if (separators > 1 && firstGroupDigits > 3) {
+                return NOT_AN_AMOUNT;
+            }
+            cents = groupDigits == 1 ? 10 * value : value;
+        } else {
+            if (requireDecimals) {
+                return NOT_AN_AMOUNT;
+            }
+            if (separators > 0
+                    && (groupDigits != 3
+                            || firstGroupDigits > 3
+                            || (thousandsSeparator != 0 && thousandsSeparator != lastSeparator))) {
+                return NOT_AN_AMOUNT;
+            }
+            cents = 100 * value;
+        }
+        return negative ? -cents : cents;
+    }
+
+    /** The digit {@code c} is, or OCR likely misread, or -1. */
+    static int digitValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        switch (c) {
+            case 'O':
+            case 'o':
+                return 0;
+            case 'l':
+            case 'I':
+                return 1;
+            case 'S':
+            case 's':
+                return 5;
+            default:
+                return -1;
+        }
+    }
+
+    private static boolean isCurrencySymbol(char c) {
+        // Dollar, euro, pound and yen.
+        return c == '$' || c == '\u20AC' || c == '\u00A3' || c == '\u00A5';
+    }
+
+    private static int skipSpaces(CharSequence text, int i, int end) {
+        while (i < end && text.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimSpaces(CharSequence text, int start, int end) {
+        while (end > start && text.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return end;
+    }
+}
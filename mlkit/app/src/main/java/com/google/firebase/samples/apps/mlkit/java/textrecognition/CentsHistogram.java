@@ -0,0 +1,188 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import java.util.Arrays;
+
+/**
+ * Weights of amounts in cents, in primitive arrays: no boxing, and no allocation once the table
+ * is large enough for the amounts in play.
+ *
+ * <p>An open-addressing hash table with linear probing. Entries that decay below a minimum weight
+ * are removed by shifting the rest of their probe run back, so the table needs no tombstones.
+ */
+final class CentsHistogram {
+
+    /** Key of an empty slot, and what {@link #argmax()} returns when there are no entries. */
+    static final long EMPTY = Long.MIN_VALUE;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private float[] weights;
+    private int mask;
+    private int size;
+
+    CentsHistogram() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    CentsHistogram(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Adds {@code weight} to {@code cents}. */
+    void add(long cents, float weight) {
+        if (cents == EMPTY) {
+            throw new IllegalArgumentException("Reserved key");
+        }
+        int slot = slotOf(cents);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == cents) {
+                weights[slot] += weight;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = cents;
+        weights[slot] = weight;
+        // Keep at most half the slots used, so probe runs stay short.
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /** Weight of {@code cents}, 0 if it has none. */
+    float get(long cents) {
+        int slot = slotOf(cents);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == cents) {
+                return weights[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /** Multiplies every weight by {@code factor}, and removes those left below {@code minWeight}. */
+    void decay(float factor, float minWeight) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            weights[slot] *= factor;
+        }
+        int slot = 0;
+        while (slot < keys.length) {
+            if (keys[slot] != EMPTY && weights[slot] < minWeight) {
+                // The slot may now hold an entry shifted back from later in the run; look again.
+                removeAt(slot);
+            } else {
+                slot++;
+            }
+        }
+    }
+
+    /** The amount with the most weight, or {@link #EMPTY}. */
+    long argmax() {
+        long best = EMPTY;
+        float bestWeight = Float.NEGATIVE_INFINITY;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY && weights[slot] > bestWeight) {
+                best = keys[slot];
+                bestWeight = weights[slot];
+            }
+        }
+        return best;
+    }
+
+    /** The most weight any amount other than {@code cents} has, 0 if there is none. */
+    float maxWeightExcept(long cents) {
+        float max = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY && keys[slot] != cents && weights[slot] > max) {
+                max = weights[slot];
+            }
+        }
+        return max;
+    }
+
+    float totalWeight() {
+        float total = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                total += weights[slot];
+            }
+        }
+        return total;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(weights, 0);
+        size = 0;
+    }
+
+    // Backward shift deletion: moves later entries of the run into the hole when their home slot
+    // allows it, so lookups never stop early at an empty slot.
+    private void removeAt(int slot) {
+        int hole = slot;
+        int next = (slot + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = slotOf(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                weights[hole] = weights[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        weights[hole] = 0;
+        size--;
+    }
+
+    private int slotOf(long cents) {
+        long hash = cents * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        float[] oldWeights = weights;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                weights[slot] = oldWeights[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        weights = new float[capacity];
+        mask = capacity - 1;
+    }
+}
@@ -0,0 +1,139 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+/**
+ * Settles the value of one receipt field, such as the total, from the readings of many frames.
+ *
+ * <p>Each reading is a weighted vote for a value. Votes lose half their weight every half-life,
+ * so misreadings from frames long gone stop counting. The field is stable once the same value has
+ * led the others by a margin of the total weight for a number of frames in a row, each of them
+ * with a reading of the field.
+ *
+ * <p>A frame is {@link #beginFrame(long)}, any number of {@link #vote}s, then {@link #endFrame()}.
+ * Votes are counted in place in a {@link CentsHistogram}, so voting allocates nothing once the
+ * histogram has room for the amounts read. Not thread safe.
+ */
+final class FieldConsensus {
+
+    /** Leader of a field that has no votes. */
+    static final long NO_VALUE = CentsHistogram.EMPTY;
+
+    // Votes that decayed below this weight are forgotten.
+    private static final float MIN_WEIGHT = 0.01f;
+
+    private final double halfLifeNanos;
+    private final float margin;
+    private final int stableFrames;
+
+    private final CentsHistogram weights = new CentsHistogram();
+
+    private long lastFrameNanos;
+    private boolean started;
+    private int frameVotes;
+
+    private long leader = NO_VALUE;
+    private float confidence;
+    private int leadingFrames;
+    private boolean stable;
+
+    /**
+     * @param halfLifeMillis time after which a vote counts for half
+     * @param margin         share of the total weight the leader must have over the runner-up
+     * @param stableFrames   frames in a row the leader must keep that margin to be stable
+     */
+    FieldConsensus(long halfLifeMillis, float margin, int stableFrames) {
+        halfLifeNanos = halfLifeMillis * 1e6;
+        this.margin = margin;
+        this.stableFrames = stableFrames;
+    }
+
+    /** Starts a frame captured at {@code timeNanos}, decaying the votes of earlier frames. */
+    void beginFrame(long timeNanos) {
+        if (started && timeNanos > lastFrameNanos) {
+            float decay = (float) Math.pow(0.5, (timeNanos - lastFrameNanos) / halfLifeNanos);
+            weights.decay(decay, MIN_WEIGHT);
+        }
+        if (!started || timeNanos > lastFrameNanos) {
+            lastFrameNanos = timeNanos;
+        }
+        started = true;
+        frameVotes = 0;
+    }
+
+    /** Adds a reading of {@code value} to the frame. */
+    void vote(long value, float weight) {
+        weights.add(value, weight);
+        frameVotes++;
+    }
+
+    /**
+     * Ends the frame and updates the leader. A frame without votes keeps the leader, and a field
+     * that is stable stays so, but it breaks the run of frames a field needs to become stable.
+     *
+     * @return whether the field just became stable
+     */
+    boolean endFrame() {
+        if (frameVotes == 0) {
+            leadingFrames = 0;
+            return false;
+        }
+        long best = weights.argmax();
+        float bestWeight = weights.get(best);
+        float secondWeight = weights.maxWeightExcept(best);
+        float totalWeight = weights.totalWeight();
+        if (best != leader) {
+            leader = best;
+            leadingFrames = 0;
+            stable = false;
+        }
+        confidence = totalWeight > 0 ? bestWeight / totalWeight : 0;
+        if ((bestWeight - secondWeight) >= margin * totalWeight) {
+            leadingFrames++;
+        } else {
+            leadingFrames = 0;
+            stable = false;
+        }
+        if (!stable && leadingFrames >= stableFrames) {
+            stable = true;
+            return true;
+        }
+        return false;
+    }
+
+    /** The value with the most weight, or {@link #NO_VALUE}. */
+    long getLeader() {
+        return leader;
+    }
+
+    /** Share of the total weight the leader has, from 0 to 1. */
+    float getConfidence() {
+        return confidence;
+    }
+
+    boolean isStable() {
+        return stable;
+    }
+
+    /** Forgets every vote, for a new receipt. */
+    void reset() {
+        weights.clear();
+        started = false;
+        frameVotes = 0;
+        leader = NO_VALUE;
+        confidence = 0;
+        leadingFrames = 0;
+        stable = false;
+    }
+}
@@ -0,0 +1,144 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import java.util.Arrays;
+
+/**
+ * The lines of one frame of receipt text, indexed by row, to pair a label such as "TOTAL" with the
+ * amount printed next to it.
+ *
+ * <p>Lines are added in any order, then {@link #build()} sorts them once by vertical midpoint.
+ * Finding the lines on the row of a label is then a binary search and a scan over that row only,
+ * so pairing every label of a frame takes O(n log n) whatever order OCR returned the blocks in.
+ */
+final class ReceiptLineIndex {
+
+    /** Amount of a line that has none. */
+    static final long NO_AMOUNT = Long.MIN_VALUE;
+
+    /** Returned when no line matches. */
+    static final int NONE = -1;
+
+    private int count;
+    private float[] lefts = new float[32];
+    private float[] rights = new float[32];
+    private float[] midYs = new float[32];
+    private long[] amounts = new long[32];
+
+    // Line indexes in the low half, their midpoint as a sortable int in the high half.
+    private long[] rows = new long[32];
+    private boolean built;
+
+    void clear() {
+        count = 0;
+        built = false;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Adds a line with its bounds and the last amount on it, or {@link #NO_AMOUNT}.
+     *
+     * @return the index of the line, in the order lines were added
+     */
+    int add(float left, float top, float right, float bottom, long amount) {
+        if (count == lefts.length) {
+            int capacity = 2 * count;
+            lefts = Arrays.copyOf(lefts, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+            midYs = Arrays.copyOf(midYs, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            rows = Arrays.copyOf(rows, capacity);
+        }
+        lefts[count] = left;
+        rights[count] = right;
+        midYs[count] = (top + bottom) / 2f;
+        amounts[count] = amount;
+        built = false;
+        return count++;
+    }
+
+    /** Sorts the lines by row. Call after the last {@link #add} and before any query. */
+    void build() {
+        for (int i = 0; i < count; i++) {
+            rows[i] = ((long) sortableBits(midYs[i]) << 32) | i;
+        }
+        Arrays.sort(rows, 0, count);
+        built = true;
+    }
+
+    long getAmount(int line) {
+        return amounts[line];
+    }
+
+    /**
+     * Returns the line with an amount that is on the same row as {@code label} and to its right,
+     * or {@link #NONE}. A line is on the row when its midpoint is within {@code tolerance} of the
+     * label's. The line closest to the row wins, then the one furthest right, as amounts are right
+     * aligned.
+     */
+    int findAmountOnRow(int label, float tolerance) {
+        if (!built) {
+            throw new IllegalStateException("build() was not called");
+        }
+        float midY = midYs[label];
+        float labelCenterX = (lefts[label] + rights[label]) / 2f;
+        int best = NONE;
+        float bestDistance = Float.MAX_VALUE;
+        for (int i = lowerBound(midY - tolerance); i < count; i++) {
+            int line = (int) rows[i];
+            float distance = midYs[line] - midY;
+            if (distance > tolerance) {
+                break;
+            }
+            distance = Math.abs(distance);
+            if (line == label
+                    || amounts[line] == NO_AMOUNT
+                    || (lefts[line] + rights[line]) / 2f <= labelCenterX) {
+                continue;
+            }
+            if (distance < bestDistance
+                    || (distance == bestDistance && rights[line] > rights[best])) {
+                best = line;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    // First position in the sorted rows whose midpoint is at least y.
+    private int lowerBound(float y) {
+        long key = (long) sortableBits(y) << 32;
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rows[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Maps a float to an int with the same order, negative values included.
+    private static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits < 0 ? bits ^ Integer.MAX_VALUE : bits;
+    }
+}
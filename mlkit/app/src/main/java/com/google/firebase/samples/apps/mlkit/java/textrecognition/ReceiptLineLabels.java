@@ -0,0 +1,70 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+/**
+ * Decides which receipt field, if any, a line labels from its {@link ReceiptLineLexer} tokens.
+ *
+ * <p>"TOTAL" labels the total only when it starts the line, so "SUB TOTAL" does not. A tax rate
+ * such as "5%" labels a tax line; the word "GST" or "PST" alone is told apart from the rate, as
+ * it only labels a line that has an amount next to it.
+ */
+final class ReceiptLineLabels {
+
+    static final int NONE = 0;
+    static final int TOTAL = 1;
+    static final int GST_RATE = 2;
+    static final int PST_RATE = 3;
+    static final int GST_WORD = 4;
+    static final int PST_WORD = 5;
+
+    // Tax rates, in hundredths of a percent, that label a GST or PST line.
+    private static final long GST_PERCENT = 500;
+    private static final long PST_PERCENT = 700;
+
+    private ReceiptLineLabels() {}
+
+    /** What {@code line}, lexed into {@code tokens}, labels: one of the constants above. */
+    static int labelOf(CharSequence line, ReceiptLineLexer.Tokens tokens) {
+        if (tokens.size() > 0
+                && tokens.getType(0) == ReceiptLineLexer.KEYWORD
+                && tokens.getValue(0) == ReceiptLineLexer.KEYWORD_TOTAL
+                && tokens.getStart(0) == firstNonBlank(line)) {
+            return TOTAL;
+        }
+        if (tokens.contains(ReceiptLineLexer.PERCENT, PST_PERCENT)) {
+            return PST_RATE;
+        }
+        if (tokens.contains(ReceiptLineLexer.PERCENT, GST_PERCENT)) {
+            return GST_RATE;
+        }
+        if (tokens.contains(ReceiptLineLexer.KEYWORD, ReceiptLineLexer.KEYWORD_PST)) {
+            return PST_WORD;
+        }
+        if (tokens.contains(ReceiptLineLexer.KEYWORD, ReceiptLineLexer.KEYWORD_GST)) {
+            return GST_WORD;
+        }
+        return NONE;
+    }
+
+    // The lexer skips words that are not keywords, so a "SUB" before "TOTAL" leaves no token;
+    // the keyword has to be where the text of the line starts.
+    private static int firstNonBlank(CharSequence line) {
+        int i = 0;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
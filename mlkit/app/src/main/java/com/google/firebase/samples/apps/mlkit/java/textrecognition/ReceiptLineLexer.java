@@ -0,0 +1,374 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import java.util.Arrays;
+
+/**
+ * Splits a line of receipt text into the tokens receipt parsing cares about, in one pass over its
+ * characters and without allocating: {@link #KEYWORD}s such as "TOTAL", {@link #AMOUNT}s such as
+ * "$12.50", {@link #PERCENT}s such as "5%", and {@link #DATE}s such as "Jan 5, 2019" or
+ * "01/05/2019". Everything else is skipped.
+ *
+ * <p>Tokens go into a reusable {@link Tokens} buffer, each with its type, its character range in
+ * the line and a numeric value.
+ */
+public final class ReceiptLineLexer {
+
+    /** A word receipts label fields with. The value is one of the {@code KEYWORD_*} constants. */
+    public static final int KEYWORD = 0;
+    /**
+     * A number with decimals, such as a price, read by {@link AmountParser}. The value is in cents,
+     * negative for a credit.
+     */
+    public static final int AMOUNT = 1;
+    /** A number followed by '%'. The value is in hundredths of a percent. */
+    public static final int PERCENT = 2;
+    /** A calendar date. The value is {@code year * 10000 + month * 100 + day}. */
+    public static final int DATE = 3;
+
+    public static final int KEYWORD_TOTAL = 0;
+    public static final int KEYWORD_GST = 1;
+    public static final int KEYWORD_PST = 2;
+
+    private static final String[] KEYWORDS = {"TOTAL", "GST", "PST"};
+
+    private static final String[] MONTHS = {
+        "JANUARY", "FEBRUARY", "MARCH", "APRIL", "MAY", "JUNE", "JULY", "AUGUST", "SEPTEMBER",
+        "OCTOBER", "NOVEMBER", "DECEMBER"
+    };
+
+    /** Tokens of one line, reused from line to line. */
+    public static final class Tokens {
+        private int count;
+        private int[] types = new int[8];
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private long[] values = new long[8];
+
+        public int size() {
+            return count;
+        }
+
+        public int getType(int index) {
+            return types[index];
+        }
+
+        /** Index of the first character of the token in the line. */
+        public int getStart(int index) {
+            return starts[index];
+        }
+
+        /** Index after the last character of the token in the line. */
+        public int getEnd(int index) {
+            return ends[index];
+        }
+
+        public long getValue(int index) {
+            return values[index];
+        }
+
+        /** Returns the index of the first token of {@code type}, or -1 if there is none. */
+        public int indexOf(int type) {
+            for (int i = 0; i < count; i++) {
+                if (types[i] == type) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Returns the index of the last token of {@code type}, or -1 if there is none. */
+        public int lastIndexOf(int type) {
+            for (int i = count - 1; i >= 0; i--) {
+                if (types[i] == type) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Whether there is a token of {@code type} with {@code value}. */
+        public boolean contains(int type, long value) {
+            for (int i = 0; i < count; i++) {
+                if (types[i] == type && values[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void clear() {
+            count = 0;
+        }
+
+        void add(int type, int start, int end, long value) {
+            if (count == types.length) {
+                int capacity = 2 * count;
+                types = Arrays.copyOf(types, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            types[count] = type;
+            starts[count] = start;
+            ends[count] = end;
+            values[count] = value;
+            count++;
+        }
+    }
+
+    private ReceiptLineLexer() {}
+
+    /**
+     * Replaces the content of {@code tokens} with the tokens of {@code line}.
+     *
+     * @return the number of tokens
+     */
+    public static int lex(CharSequence line, Tokens tokens) {
+        tokens.clear();
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (isDigit(c) || startsMisreadNumber(line, i)
+                    || (c == '$' && i + 1 < length
+                            && (isDigit(line.charAt(i + 1)) || startsMisreadNumber(line, i + 1)))) {
+                i = lexNumber(line, i, tokens);
+            } else if (isLetter(c)) {
+                i = lexWord(line, i, tokens);
+            } else {
+                i++;
+            }
+        }
+        return tokens.size();
+    }
+
+    // Whether the letters at start are digits OCR misread that begin a number, as in "l2.50",
+    // "O.99" or "S.00": letters that stand for digits, then a digit or a decimal separator and a
+    // digit. A lone "SOS" or a word such as "Sold" stays a word.
+    private static boolean startsMisreadNumber(CharSequence line, int start) {
+        int length = line.length();
+        int i = start;
+        while (i < length && isLetter(line.charAt(i))
+                && AmountParser.digitValue(line.charAt(i)) >= 0) {
+            i++;
+        }
+        if (i == start || i == length) {
+            return false;
+        }
+        char c = line.charAt(i);
+        if (c == '.' || c == ',') {
+            return i + 1 < length && isDigit(line.charAt(i + 1));
+        }
+        return isDigit(c);
+    }
+
+    // Lexes the word at start: a keyword, or a month that starts a date. Returns where it ends.
+    private static int lexWord(CharSequence line, int start, Tokens tokens) {
+        int end = start;
+        while (end < line.length() && isLetter(line.charAt(end))) {
+            end++;
+        }
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            if (equalsIgnoreCase(line, start, end, KEYWORDS[k])) {
+                tokens.add(KEYWORD, start, end, k);
+                return end;
+            }
+        }
+        if (end - start >= 3) {
+            // "Jan", "Sept" or "January", but not "Market".
+            for (int m = 0; m < MONTHS.length; m++) {
+                if (isPrefixIgnoreCase(line, start, end, MONTHS[m])) {
+                    return lexNamedDate(line, start, end, m + 1, tokens);
+                }
+            }
+        }
+        return end;
+    }
+
+    // "Jan 5, 2019", "Jan.05-2019" and the like: the day comes after the month name, then the
+    // year, with any separators but digits in between.
+    private static int lexNamedDate(
+            CharSequence line, int start, int wordEnd, int month, Tokens tokens) {
+        int i = skipSeparators(line, wordEnd);
+        int dayStart = i;
+        int day = 0;
+        while (i < line.length() && isDigit(line.charAt(i)) && i - dayStart < 2) {
+            day = 10 * day + line.charAt(i) - '0';
+            i++;
+        }
+        if (i == dayStart || (i < line.length() && isDigit(line.charAt(i)))) {
+            return wordEnd;
+        }
+        i = skipSeparators(line, i);
+        int yearStart = i;
+        int year = 0;
+        while (i < line.length() && isDigit(line.charAt(i))) {
+            year = 10 * year + line.charAt(i) - '0';
+            i++;
+        }
+        if (i - yearStart != 4 || day < 1 || day > 31) {
+            return wordEnd;
+        }
+        tokens.add(DATE, start, i, year * 10000L + month * 100 + day);
+        return i;
+    }
+
+    // Lexes the number at start, with an optional leading '$': a date, an amount, a percent or
+    // nothing. Returns where it ends.
+    private static int lexNumber(CharSequence line, int start, Tokens tokens) {
+        int length = line.length();
+        int digitsStart = line.charAt(start) == '$' ? start + 1 : start;
+        int i = digitsStart;
+        long whole = 0;
+        while (i < length && isDigit(line.charAt(i))) {
+            whole = 10 * whole + line.charAt(i) - '0';
+            i++;
+        }
+        if (i < length && line.charAt(i) == '/' && start == digitsStart) {
+            return i - digitsStart <= 2
+                    ? lexNumericDate(line, start, i + 1, (int) whole, tokens) : i + 1;
+        }
+
+        int end = scanAmount(line, digitsStart);
+        int afterSpace = end < length && line.charAt(end) == ' ' ? end + 1 : end;
+        if (afterSpace < length && line.charAt(afterSpace) == '%') {
+            long hundredths = AmountParser.parse(line, digitsStart, end);
+            if (hundredths != AmountParser.NOT_AN_AMOUNT) {
+                tokens.add(PERCENT, start, afterSpace + 1, hundredths);
+            }
+            return afterSpace + 1;
+        }
+        end = scanCredit(line, end);
+        long cents = AmountParser.parse(line, start, end, true /* requireDecimals */);
+        if (cents != AmountParser.NOT_AN_AMOUNT) {
+            tokens.add(AMOUNT, start, end, cents);
+        }
+        return end;
+    }
+
+    // Returns where the digits and separators of an amount starting at start end. Takes a space
+    // after a separator, as OCR tends to insert one, and letters OCR mistakes for digits when the
+    // whole word is made of them, so "1O.OO" is taken but "3OZ" stops after the 3.
+    private static int scanAmount(CharSequence line, int start) {
+        int length = line.length();
+        int i = start;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (isDigit(c)) {
+                i++;
+            } else if (c == '.' || c == ',') {
+                int next = i + 1 < length && line.charAt(i + 1) == ' ' ? i + 2 : i + 1;
+                if (next >= length || AmountParser.digitValue(line.charAt(next)) < 0) {
+                    break;
+                }
+                i = next;
+            } else if (isLetter(c)) {
+                int wordEnd = i;
+                while (wordEnd < length && AmountParser.digitValue(line.charAt(wordEnd)) >= 0) {
+                    wordEnd++;
+                }
+                if (wordEnd < length && isLetter(line.charAt(wordEnd))) {
+                    break;
+                }
+                i = wordEnd;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    // Takes a credit mark after an amount, "-" or "CR", with an optional space before it.
+    private static int scanCredit(CharSequence line, int end) {
+        int length = line.length();
+        int i = end < length && line.charAt(end) == ' ' ? end + 1 : end;
+        if (i < length && line.charAt(i) == '-'
+                && (i + 1 == length || !isDigit(line.charAt(i + 1)))) {
+            return i + 1;
+        }
+        if (i + 1 < length
+                && Character.toUpperCase(line.charAt(i)) == 'C'
+                && Character.toUpperCase(line.charAt(i + 1)) == 'R'
+                && (i + 2 == length || !isLetter(line.charAt(i + 2)))) {
+            return i + 2;
+        }
+        return end;
+    }
+
+    // "1/5/2019", "01/05/2019": month, day and year, the month read already. Returns where the
+    // date ends, or where lexing goes on if it is not one.
+    private static int lexNumericDate(
+            CharSequence line, int start, int dayStart, int month, Tokens tokens) {
+        int length = line.length();
+        int i = dayStart;
+        int day = 0;
+        while (i < length && isDigit(line.charAt(i)) && i - dayStart < 2) {
+            day = 10 * day + line.charAt(i) - '0';
+            i++;
+        }
+        if (i == dayStart || i >= length || line.charAt(i) != '/') {
+            return dayStart;
+        }
+        int yearStart = ++i;
+        int year = 0;
+        while (i < length && isDigit(line.charAt(i))) {
+            year = 10 * year + line.charAt(i) - '0';
+            i++;
+        }
+        if (i - yearStart != 4 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return i;
+        }
+        tokens.add(DATE, start, i, year * 10000L + month * 100 + day);
+        return i;
+    }
+
+    private static int skipSeparators(CharSequence line, int i) {
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c != ' ' && c != '.' && c != ',' && c != '-' && c != '\'' && c != '/') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean equalsIgnoreCase(CharSequence line, int start, int end, String word) {
+        return end - start == word.length() && isPrefixIgnoreCase(line, start, end, word);
+    }
+
+    // Whether the characters between start and end are the beginning of the upper case word.
+    private static boolean isPrefixIgnoreCase(
+            CharSequence line, int start, int end, String word) {
+        if (end - start > word.length()) {
+            return false;
+        }
+        for (int i = 0; i < end - start; i++) {
+            if (Character.toUpperCase(line.charAt(start + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -18,56 +18,40 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import android.graphics.Color;
+import android.graphics.Rect;
 import android.util.Log;
 import android.widget.TextView;
 
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.ml.vision.FirebaseVision;
 import com.google.firebase.ml.vision.common.FirebaseVisionImage;
 import com.google.firebase.ml.vision.text.FirebaseVisionText;
 import com.google.firebase.ml.vision.text.FirebaseVisionTextRecognizer;
 import com.google.firebase.samples.apps.mlkit.common.CameraImageGraphic;
-import com.google.firebase.samples.apps.mlkit.common.CameraSource;
+import com.google.firebase.samples.apps.mlkit.common.DetectorPool;
 import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
 import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.RegionOfInterest;
 import com.google.firebase.samples.apps.mlkit.java.VisionProcessorBase;
 
-import java.io.IOException;
 import java.text.DecimalFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 class TextLineMetadata {
-    public Pattern searchable;
-    public float YValueMidPoint = -1;
-    public float RectHeight = -1;
-    public Map<String, Map<Float, Integer>> counterSet = new HashMap<>();
+    // A reading counts for half after a second; five frames with a clear lead settle the field.
+    public final FieldConsensus consensus = new FieldConsensus(1000, 0.3f, 5);
+    // Amount the text view shows, so it is only formatted again when the leader changes.
+    public long shownCents = FieldConsensus.NO_VALUE;
     public String textviewKey;
 
-
-    public String adjacent;
-
-    public TextLineMetadata(String regex, int patternFlags, String key) {
-        if (patternFlags > 0) {
-            searchable = Pattern.compile(regex, patternFlags);
-        } else {
-            searchable = Pattern.compile(regex);
-        }
-
+    public TextLineMetadata(String key) {
         textviewKey = key;
     }
-
-    public void Reset() {
-        YValueMidPoint = -1;
-        RectHeight = -1;
-    }
 }
 
 /**
@@ -77,100 +61,152 @@ public class TextRecognitionProcessor extends VisionProcessorBase<FirebaseVision
 
     private static final String TAG = "TextRecProc";
 
-    private final FirebaseVisionTextRecognizer detector;
+    /**
+     * Recognizers used by default. {@code FirebaseVision} caches the on-device recognizer per app,
+     * so asking it for more most likely returns the same instance again, which gains nothing; only
+     * pass a higher count to the constructor once the recognizers are known to be distinct.
+     */
+    public static final int DEFAULT_RECOGNIZER_COUNT = 1;
+
+    private final DetectorPool<FirebaseVisionTextRecognizer> recognizers;
+
+    /** Receives the value a receipt field settled on. */
+    public interface OnFieldStableListener {
+        /**
+         * Called on the main thread when {@code field} ("TOTAL", "GST" or "PST") has read the same
+         * amount for long enough to trust it.
+         */
+        void onFieldStable(String field, long cents);
+    }
 
     private Map<String, TextView> outputMap;
-    private Map<String, Map<Float, Integer>> counterSet = new HashMap<>();
-
-    private final Map<String, Integer> abbrevMonths = new HashMap<String, Integer> () {{
-        put("Jan",  1);
-        put("Feb",  2);
-        put("Mar",  3);
-        put("Apr",  4);
-        put("May",  5);
-        put("Jun",  6);
-        put("Jul",  7);
-        put("Aug",  8);
-        put("Sep",  9);
-        put("Oct", 10);
-        put("Nov", 11);
-        put("Dec", 12);
-    }};
-
-    private String mmddyyyy = "(.*?)(\\d{1,2}/\\d{1,2}/\\d{4})(.*)";
-    private Pattern mmddyyyyPattern = Pattern.compile(mmddyyyy, Pattern.DOTALL);
-
-    private String abbrevMonth = "((?:Jan)|(?:Feb)|(?:Mar)|(?:Apr)|(?:May)|(?:Jun)|(?:Jul)|(?:Aug)|(?:Sep)|(?:Oct)|(?:Nov)|(?:Dec))(.*?)(\\d{1,2})(.*)(\\d{4})";
-    private Pattern abbrevMonthPattern = Pattern.compile(abbrevMonth, Pattern.DOTALL);
-    
+    private final DecimalFormat amountFormat = new DecimalFormat("#.00");
+    @Nullable
+    private OnFieldStableListener fieldStableListener;
+
+    // Tokens of the line being classified, reused for every line.
+    private final ReceiptLineLexer.Tokens tokens = new ReceiptLineLexer.Tokens();
+
+    // Lines of the frame that hold a label or an amount, by their index in lineIndex, with what
+    // each one labels.
+    private final ReceiptLineIndex lineIndex = new ReceiptLineIndex();
+    private final List<FirebaseVisionText.Line> indexedLines = new ArrayList<>();
+    private int[] lineLabels = new int[32];
+
+    // Smallest distance between midpoints for two lines to count as on the same row.
     private float NearnessThreshold = 8;
     private TextLineMetadata total;
     private TextLineMetadata pst;
     private TextLineMetadata gst;
 
-    private int rightAlign;
     private float rightPercent = 0.6f;
-    private final Map<String, String> DATE_FORMAT_REGEXPS = new HashMap<String, String>() {{
-        put("^\\d{8}$", "yyyyMMdd");
-        put("^\\d{1,2}-\\d{1,2}-\\d{4}$", "dd-MM-yyyy");
-        put("^\\d{4}-\\d{1,2}-\\d{1,2}$", "yyyy-MM-dd");
-        put(mmddyyyy, "MM/dd/yyyy");
-        put("^\\d{4}/\\d{1,2}/\\d{1,2}$", "yyyy/MM/dd");
-        put("^\\d{1,2}\\s[a-z]{3}\\s\\d{4}$", "dd MMM yyyy");
-        put("^\\d{1,2}\\s[a-z]{4,}\\s\\d{4}$", "dd MMMM yyyy");
-
-        put("^\\d{12}$", "yyyyMMddHHmm");
-        put("^\\d{8}\\s\\d{4}$", "yyyyMMdd HHmm");
-        put("^\\d{1,2}-\\d{1,2}-\\d{4}\\s\\d{1,2}:\\d{2}$", "dd-MM-yyyy HH:mm");
-        put("^\\d{4}-\\d{1,2}-\\d{1,2}\\s\\d{1,2}:\\d{2}$", "yyyy-MM-dd HH:mm");
-        put("^\\d{1,2}/\\d{1,2}/\\d{4}\\s\\d{1,2}:\\d{2}$", "MM/dd/yyyy HH:mm");
-        put("^\\d{4}/\\d{1,2}/\\d{1,2}\\s\\d{1,2}:\\d{2}$", "yyyy/MM/dd HH:mm");
-        put("^\\d{1,2}\\s[a-z]{3}\\s\\d{4}\\s\\d{1,2}:\\d{2}$", "dd MMM yyyy HH:mm");
-        put("^\\d{1,2}\\s[a-z]{4,}\\s\\d{4}\\s\\d{1,2}:\\d{2}$", "dd MMMM yyyy HH:mm");
-        put("^\\d{14}$", "yyyyMMddHHmmss");
-        put("^\\d{8}\\s\\d{6}$", "yyyyMMdd HHmmss");
-        put("^\\d{1,2}-\\d{1,2}-\\d{4}\\s\\d{1,2}:\\d{2}:\\d{2}$", "dd-MM-yyyy HH:mm:ss");
-        put("^\\d{4}-\\d{1,2}-\\d{1,2}\\s\\d{1,2}:\\d{2}:\\d{2}$", "yyyy-MM-dd HH:mm:ss");
-        put("^\\d{1,2}/\\d{1,2}/\\d{4}\\s\\d{1,2}:\\d{2}:\\d{2}$", "MM/dd/yyyy HH:mm:ss");
-        put("^\\d{4}/\\d{1,2}/\\d{1,2}\\s\\d{1,2}:\\d{2}:\\d{2}$", "yyyy/MM/dd HH:mm:ss");
-        put("^\\d{1,2}\\s[a-z]{3}\\s\\d{4}\\s\\d{1,2}:\\d{2}:\\d{2}$", "dd MMM yyyy HH:mm:ss");
-        put("^\\d{1,2}\\s[a-z]{4,}\\s\\d{4}\\s\\d{1,2}:\\d{2}:\\d{2}$", "dd MMMM yyyy HH:mm:ss");
-    }};
 
     public boolean needToClearData = false;
 
+    // Margin kept around the text found in the last frame when the region of interest follows it.
+    private static final float TEXT_REGION_MARGIN = 0.25f;
+    private boolean regionFollowsText;
+    private final Rect textBounds = new Rect();
+
     public TextRecognitionProcessor(Map<String, TextView> textDict) {
-        detector = FirebaseVision.getInstance().getOnDeviceTextRecognizer();
-        outputMap = textDict;
+        this(textDict, DEFAULT_RECOGNIZER_COUNT);
+    }
 
-        total = new TextLineMetadata("^TOTAL", Pattern.MULTILINE | Pattern.CASE_INSENSITIVE, "TOTAL");
-        gst = new TextLineMetadata("(.*)5(\\.\\s?(0*))?%", 0, "GST");
-        pst = new TextLineMetadata("(.*)7(\\.\\s?(0*))?%", 0, "PST");
+    /**
+     * @param recognizerCount how many recognizers to ask for, and so at most how many frames may
+     *                        be in recognition at the same time. Pass {@link
+     *                        #getRecognizerCount()} to {@link #setMaxFramesInFlight(int)} of
+     *                        whichever processor drives this one.
+     */
+    public TextRecognitionProcessor(Map<String, TextView> textDict, int recognizerCount) {
+        recognizers = new DetectorPool<>(recognizerCount,
+                new DetectorPool.Factory<FirebaseVisionTextRecognizer>() {
+                    @Override
+                    public FirebaseVisionTextRecognizer create() {
+                        return FirebaseVision.getInstance().getOnDeviceTextRecognizer();
+                    }
+                });
+        outputMap = textDict;
 
-        rightAlign = (int) (CameraSource.requestedPreviewWidth * rightPercent);
+        total = new TextLineMetadata("TOTAL");
+        gst = new TextLineMetadata("GST");
+        pst = new TextLineMetadata("PST");
     }
 
     @Override
     public void stop() {
-        try {
-            detector.close();
-        } catch (IOException e) {
-            Log.e(TAG, "Exception thrown while trying to close Text Detector: " + e);
+        super.stop();
+        recognizers.close();
+    }
+
+    /**
+     * Number of distinct recognizers this processor got, which is less than it asked for when
+     * {@code FirebaseVision} returned a cached one more than once.
+     */
+    public int getRecognizerCount() {
+        return recognizers.size();
+    }
+
+    /**
+     * Makes the region of interest follow the text: each frame is only detected on around the
+     * text found in the previous one, and on the whole frame again once no text is found.
+     */
+    public void setRegionOfInterestFollowsText(boolean follow) {
+        regionFollowsText = follow;
+        if (!follow) {
+            setRegionOfInterest(null);
         }
     }
 
     @Override
     protected Task<FirebaseVisionText> detectInImage(FirebaseVisionImage image) {
-        return detector.processImage(image);
+        FirebaseVisionTextRecognizer recognizer = recognizers.acquire();
+        if (recognizer == null) {
+            // More frames in flight than recognizers, or stopped.
+            return Tasks.forException(new IllegalStateException("No free text recognizer"));
+        }
+        return recognizers.releaseOnCompletion(recognizer, recognizer.processImage(image));
     }
 
 
+    public void setOnFieldStableListener(@Nullable OnFieldStableListener listener) {
+        fieldStableListener = listener;
+    }
+
     @Override
     protected void onSuccess(
             @Nullable Bitmap originalCameraImage,
             @NonNull FirebaseVisionText results,
             @NonNull FrameMetadata frameMetadata,
             @NonNull GraphicOverlay graphicOverlay) {
+        showResults(originalCameraImage, results, frameMetadata, graphicOverlay, true);
+    }
+
+    /** Redraws results detected on an earlier frame, without reading them again. */
+    @Override
+    protected void onResultsReused(
+            @Nullable Bitmap originalCameraImage,
+            @NonNull FirebaseVisionText results,
+            @NonNull FrameMetadata frameMetadata,
+            @NonNull GraphicOverlay graphicOverlay) {
+        showResults(originalCameraImage, results, frameMetadata, graphicOverlay, false);
+    }
+
+    // Draws the results, and when they are new, votes for the fields they read.
+    private void showResults(
+            @Nullable Bitmap originalCameraImage,
+            FirebaseVisionText results,
+            FrameMetadata frameMetadata,
+            GraphicOverlay graphicOverlay,
+            boolean vote) {
+        // Amounts are right aligned, measured in pixels of the upright frame whatever the
+        // detection size. The text boxes are upright, so a sideways frame is as wide as it is high.
+        boolean sideways = (frameMetadata.getRotation() & 1) != 0;
+        float rightAlign =
+                (sideways ? frameMetadata.getHeight() : frameMetadata.getWidth()) * rightPercent;
+        float detectionScale = frameMetadata.getDetectionScale();
+        int detectionOffsetX = frameMetadata.getDetectionOffsetX();
+
         graphicOverlay.clear();
         if (originalCameraImage != null) {
             CameraImageGraphic imageGraphic = new CameraImageGraphic(graphicOverlay,
@@ -179,9 +215,12 @@ public class TextRecognitionProcessor extends VisionProcessorBase<FirebaseVision
         }
 
         if (needToClearData) {
-            total.counterSet.clear();
-            gst.counterSet.clear();
-            pst.counterSet.clear();
+            total.consensus.reset();
+            gst.consensus.reset();
+            pst.consensus.reset();
+            total.shownCents = FieldConsensus.NO_VALUE;
+            gst.shownCents = FieldConsensus.NO_VALUE;
+            pst.shownCents = FieldConsensus.NO_VALUE;
 
             outputMap.get(total.textviewKey).setText("$0.00");
             outputMap.get(gst.textviewKey).setText("$0.00");
@@ -190,203 +229,165 @@ public class TextRecognitionProcessor extends VisionProcessorBase<FirebaseVision
             needToClearData = false;
         }
 
-        for (FirebaseVisionText.TextBlock tmpBlock : results.getTextBlocks()) {
-            if (total.searchable.matcher(tmpBlock.getText()).lookingAt()) {
-//                GraphicOverlay.Graphic blockGraphic = new TextGraphicBlock(graphicOverlay, tmpBlock);
-//                graphicOverlay.add(blockGraphic);
-                List<FirebaseVisionText.Line> lines = tmpBlock.getLines();
-                for (int j = 0; j < lines.size(); j++) {
-                    if (total.searchable.matcher(lines.get(j).getText()).lookingAt()) {
-                        FirebaseVisionText.Line line = lines.get(j);
-                        ExtractAdjacent(line, total);
-                        GraphicOverlay.Graphic lineGraphic = new TextGraphicLine(graphicOverlay, line);
-                        graphicOverlay.add(lineGraphic);
-
-                        j = lines.size();
+        // Each line is lexed once and indexed by row, then labels are paired with the amount on
+        // their row, so blocks may come in any order.
+        lineIndex.clear();
+        indexedLines.clear();
+        for (FirebaseVisionText.TextBlock block : results.getTextBlocks()) {
+            boolean blockDrawn = false;
+            for (FirebaseVisionText.Line line : block.getLines()) {
+                Rect box = line.getBoundingBox();
+                if (box == null || ReceiptLineLexer.lex(line.getText(), tokens) == 0) {
+                    continue;
+                }
+                int date = tokens.indexOf(ReceiptLineLexer.DATE);
+                if (date >= 0) {
+                    if (!blockDrawn) {
+                        graphicOverlay.add(new TextGraphicBlock(graphicOverlay, block));
+                        blockDrawn = true;
                     }
+                    showDate(tokens.getValue(date));
+                    continue;
                 }
-            }
-            else if (abbrevMonthPattern.matcher(tmpBlock.getText()).lookingAt()) {
-                GraphicOverlay.Graphic blockGraphic = new TextGraphicBlock(graphicOverlay, tmpBlock);
-                graphicOverlay.add(blockGraphic);
 
-                processDateAbbrevMonth(tmpBlock);
-            }
-            else if (tmpBlock.getText().contains("/")) {
-                GraphicOverlay.Graphic blockGraphic = new TextGraphicBlock(graphicOverlay, tmpBlock);
-                graphicOverlay.add(blockGraphic);
-
-                Matcher match = mmddyyyyPattern.matcher(tmpBlock.getText());
-
-                if (match.matches()) {
-                    String str = match.group(2);
-                    SimpleDateFormat outputFormat = new SimpleDateFormat("MM/dd/yyyy");
-                    try {
-                        Date date = outputFormat.parse(str);
-                        outputMap.get("Date").setText(outputFormat.format(date));
-                    } catch (ParseException parseX) {}
+                int label = ReceiptLineLabels.labelOf(line.getText(), tokens);
+                int amount = tokens.lastIndexOf(ReceiptLineLexer.AMOUNT);
+                if (label == ReceiptLineLabels.NONE && amount < 0) {
+                    continue;
                 }
-            }
-            else if (tmpBlock.getText().contains("%")) {
-                for (FirebaseVisionText.Line line : tmpBlock.getLines()) {
-
-                    if (pst.searchable.matcher(line.getText()).lookingAt()) {
-                        GraphicOverlay.Graphic lineGraphic = new TextGraphicLine(graphicOverlay, line);
-                        graphicOverlay.add(lineGraphic);
-                        ExtractAdjacent(line, pst);
-                    }
-                    if (gst.searchable.matcher(line.getText()).lookingAt()) {
-                        GraphicOverlay.Graphic lineGraphic = new TextGraphicLine(graphicOverlay, line);
-                        graphicOverlay.add(lineGraphic);
-                        ExtractAdjacent(line, gst);
-                    }
+                int index = lineIndex.add(box.left, box.top, box.right, box.bottom,
+                        amount < 0 ? ReceiptLineIndex.NO_AMOUNT : tokens.getValue(amount));
+                indexedLines.add(line);
+                if (index == lineLabels.length) {
+                    lineLabels = Arrays.copyOf(lineLabels, 2 * index);
                 }
-            }
-            else {
-                for (FirebaseVisionText.Line line : tmpBlock.getLines()) {
-//                    if (Pattern.compile("($?)(\\d{1,2}(.*)\\d{1,2})").matcher(line.getText()).lookingAt())
-                    {
-                        float lineMidPoint = (line.getBoundingBox().top + line.getBoundingBox().bottom) / 2f;
-                        if (Math.abs(lineMidPoint - total.YValueMidPoint) < NearnessThreshold) {
-                            GraphicOverlay.Graphic lineGraphic = new TextGraphicLine(graphicOverlay, line);
-                            graphicOverlay.add(lineGraphic);
-                            processText(line.getText(), total);
-                        }
-                        else if (line.getText().length() <= 6) {
-//                        else if (!line.getText().contains("%") && !line.getText().contains("@") ) {
-                            if (Math.abs(lineMidPoint - pst.YValueMidPoint) < NearnessThreshold) {
-                                GraphicOverlay.Graphic lineGraphic = new TextGraphicLine(graphicOverlay, line, Color.BLUE);
-                                graphicOverlay.add(lineGraphic);
-                                processText(line.getText(), pst);
-                            }
-                            else if (Math.abs(lineMidPoint - gst.YValueMidPoint) < NearnessThreshold) {
-    //                            if (Pattern.compile("\\d{1,2}\\.(.*)\\d{1,2}", Pattern.MULTILINE).matcher(line.getText()).lookingAt()) {
-                                GraphicOverlay.Graphic lineGraphic = new TextGraphicLine(graphicOverlay, line, Color.BLUE);
-                                graphicOverlay.add(lineGraphic);
-                                processText(line.getText(), gst);
-                            }
-                        }
-                        else if (Pattern.compile("\\d{1,2}\\.(.*)\\d{1,2}", Pattern.MULTILINE).matcher(line.getText()).lookingAt()) {
-                            GraphicOverlay.Graphic lineGraphic;// = new TextGraphicLine(graphicOverlay, line);
-//                            graphicOverlay.add(lineGraphic);
-
-                            float boxRight = line.getBoundingBox().right;
-                            float boxCenterX = centroid(line.getBoundingBox().left, line.getBoundingBox().right);
-//                            rolling.put(boxCenterX);
-
-//                            if (maxRight <= boxRight) {
-//                            if (Math.abs(boxCenterX - rightAlign) < 100) {
-                            if (boxCenterX >= rightAlign) {
-                                lineGraphic = new TextGraphicLine(graphicOverlay, line, Color.RED);
-                                graphicOverlay.add(lineGraphic);
-                                if (Math.abs(lineMidPoint - pst.YValueMidPoint) < NearnessThreshold) {
-                                    lineGraphic = new TextGraphicLine(graphicOverlay, line, Color.BLUE);
-                                    graphicOverlay.add(lineGraphic);
-                                    processText(line.getText(), pst);
-                                }
-                                else if (Math.abs(lineMidPoint - gst.YValueMidPoint) < NearnessThreshold) {
-                                    lineGraphic = new TextGraphicLine(graphicOverlay, line, Color.BLUE);
-                                    graphicOverlay.add(lineGraphic);
-                                    processText(line.getText(), gst);
-                                }
-
-
-//                                maxRight = boxRight;
-//                                rolling.put((int) boxCenterX);
-                            }
-//                            if (Math.abs(boxRight - maxRight) < NearnessThreshold
-//                                && Math.abs(boxCenterX - rolling.get()) < NearnessThreshold) {
-//                                lineGraphic = new TextGraphicLine(graphicOverlay, line, Color.BLUE);
-//                                graphicOverlay.add(lineGraphic);
-//                            }
-                        }
-                    }
+                lineLabels[index] = label;
+
+                if (label == ReceiptLineLabels.NONE
+                        && centroid(box.left, box.right) * detectionScale + detectionOffsetX
+                                >= rightAlign) {
+                    graphicOverlay.add(new TextGraphicLine(graphicOverlay, line, Color.RED));
                 }
             }
         }
 
-        graphicOverlay.postInvalidate();
-        total.Reset();
-        gst.Reset();
-        pst.Reset();
-    }
+        lineIndex.build();
+        long captureTimeNanos = frameMetadata.getCaptureTimeNanos() != 0
+                ? frameMetadata.getCaptureTimeNanos() : System.nanoTime();
+        readField(total, ReceiptLineLabels.TOTAL, ReceiptLineLabels.NONE, vote, captureTimeNanos,
+                graphicOverlay);
+        readField(gst, ReceiptLineLabels.GST_RATE, ReceiptLineLabels.GST_WORD, vote,
+                captureTimeNanos, graphicOverlay);
+        readField(pst, ReceiptLineLabels.PST_RATE, ReceiptLineLabels.PST_WORD, vote,
+                captureTimeNanos, graphicOverlay);
 
-    private float centroid(int a, int b) {
-        return (a + b) / 2f;
+        graphicOverlay.postInvalidate();
+        if (regionFollowsText) {
+            updateRegionOfInterest(results, frameMetadata);
+        }
     }
 
-    private void ExtractAdjacent(FirebaseVisionText.Line line, TextLineMetadata metadata) {
-        metadata.RectHeight = line.getBoundingBox().top - line.getBoundingBox().bottom;
-        metadata.YValueMidPoint = (line.getBoundingBox().top + line.getBoundingBox().bottom) / 2f;
+    // The line with the amount for the label line, itself or one on its row, or NONE.
+    private int findAmount(int labelLine) {
+        if (lineIndex.getAmount(labelLine) != ReceiptLineIndex.NO_AMOUNT) {
+            return labelLine;
+        }
+        Rect box = indexedLines.get(labelLine).getBoundingBox();
+        float tolerance = Math.max(NearnessThreshold, (box.bottom - box.top) / 2f);
+        return lineIndex.findAmountOnRow(labelLine, tolerance);
     }
 
-    private void processDateAbbrevMonth(FirebaseVisionText.TextBlock tmpBlock) {
-        Matcher dateMatcher = abbrevMonthPattern.matcher(tmpBlock.getText());
-        if (dateMatcher.lookingAt()) {
-            String monthStr = dateMatcher.group(1);
-            String dayStr = dateMatcher.group(3);
-            String yearStr = dateMatcher.group(5);
-
-            int month = abbrevMonths.get(monthStr);
-            int day = Integer.parseInt(dayStr);
-            int year = Integer.parseInt(yearStr);
-
-            SimpleDateFormat outputFormat = new SimpleDateFormat("MM/dd/yyyy");
-            Date date;
-            try {
-                date = outputFormat.parse(String.format("%d/%d/%d", month, day, year));
-            } catch (ParseException parseX) {
-                Calendar cal = Calendar.getInstance();
-                cal.set(Calendar.YEAR, year);
-                cal.set(Calendar.MONTH, month - 1);
-                cal.set(Calendar.DAY_OF_MONTH, day);
-                date = cal.getTime();
+    /**
+     * Reads a field from the first line labelled {@code label} that has an amount on that line or
+     * the rest of its row, or else from the first line labelled {@code wordLabel} that has one, and
+     * votes for it when {@code vote} is set. A frame without the field still decays it, and keeps
+     * it from becoming stable until enough frames in a row read it again.
+     */
+    private void readField(TextLineMetadata metadata, int label, int wordLabel, boolean vote,
+            long captureTimeNanos, GraphicOverlay graphicOverlay) {
+        if (vote) {
+            metadata.consensus.beginFrame(captureTimeNanos);
+        }
+        int labelLine = ReceiptLineIndex.NONE;
+        int amountLine = ReceiptLineIndex.NONE;
+        for (int i = 0; i < lineIndex.size(); i++) {
+            if (lineLabels[i] == label) {
+                labelLine = labelLine == ReceiptLineIndex.NONE ? i : labelLine;
+                amountLine = findAmount(i);
+                if (amountLine != ReceiptLineIndex.NONE) {
+                    labelLine = i;
+                    break;
+                }
             }
-
-            outputMap.get("Date").setText(outputFormat.format(date));
+        }
+        // A word alone only labels the field with an amount next to it, as "GST" also heads the
+        // registration number printed near the top of receipts.
+        for (int i = 0; i < lineIndex.size() && amountLine == ReceiptLineIndex.NONE; i++) {
+            if (wordLabel != ReceiptLineLabels.NONE && lineLabels[i] == wordLabel) {
+                amountLine = findAmount(i);
+                labelLine = amountLine != ReceiptLineIndex.NONE ? i : labelLine;
+            }
+        }
+        if (labelLine != ReceiptLineIndex.NONE) {
+            graphicOverlay.add(new TextGraphicLine(graphicOverlay, indexedLines.get(labelLine)));
+        }
+        if (amountLine != ReceiptLineIndex.NONE && amountLine != labelLine) {
+            graphicOverlay.add(
+                    new TextGraphicLine(graphicOverlay, indexedLines.get(amountLine), Color.BLUE));
+        }
+        if (!vote) {
+            return;
+        }
+        // The frame is ended even without a reading, which breaks the run the field needs to
+        // become stable.
+        if (amountLine != ReceiptLineIndex.NONE) {
+            metadata.consensus.vote(lineIndex.getAmount(amountLine), 1f);
+        }
+        if (metadata.consensus.endFrame() && fieldStableListener != null) {
+            fieldStableListener.onFieldStable(metadata.textviewKey, metadata.consensus.getLeader());
+        }
+        long leader = metadata.consensus.getLeader();
+        if (leader != metadata.shownCents) {
+            metadata.shownCents = leader;
+            outputMap.get(metadata.textviewKey).setText(amountFormat.format(leader / 100.0));
         }
     }
 
-    private float FindMaxOccuring (Map<Float, Integer> countingMap){
-        int max = -1;
-        float maxKey = Float.NaN;
-        for (Map.Entry<Float, Integer> entry : countingMap.entrySet()) {
-            if (entry.getValue() > max){
-                max = entry.getValue();
-                maxKey = entry.getKey();
+    private void updateRegionOfInterest(FirebaseVisionText results, FrameMetadata frameMetadata) {
+        textBounds.setEmpty();
+        for (FirebaseVisionText.TextBlock block : results.getTextBlocks()) {
+            Rect box = block.getBoundingBox();
+            if (box != null) {
+                textBounds.union(box);
             }
         }
-
-        return maxKey;
+        if (textBounds.isEmpty()) {
+            setRegionOfInterest(null);
+            return;
+        }
+        float scale = frameMetadata.getDetectionScale();
+        int offsetX = frameMetadata.getDetectionOffsetX();
+        int offsetY = frameMetadata.getDetectionOffsetY();
+        setRegionOfInterest(
+                RegionOfInterest.fromUprightBounds(
+                        textBounds.left * scale + offsetX,
+                        textBounds.top * scale + offsetY,
+                        textBounds.right * scale + offsetX,
+                        textBounds.bottom * scale + offsetY,
+                        frameMetadata)
+                        .expand(TEXT_REGION_MARGIN));
     }
 
-    private void processText(String raw, TextLineMetadata metadata) {
-        raw = raw.replace("$","");
-        raw = raw.replace(" ","");
-        raw = raw.replace(",",".");
-        try {
-            float parsed = Float.parseFloat(raw);
-            if (metadata.counterSet.containsKey(metadata)){
-                Map<Float, Integer> x = metadata.counterSet.get(metadata);
-                if (x.containsKey(parsed)) {
-                    x.put (parsed, x.get(parsed) + 1);
-                }
-                else {
-                    x.put (parsed, 1);
-                }
-            }
-            else {
-                Map<Float, Integer> x = new HashMap<>();
-                x.put(parsed, 1);
-                metadata.counterSet.put(metadata.textviewKey, x);
-            }
+    private float centroid(int a, int b) {
+        return (a + b) / 2f;
+    }
 
-            outputMap.get(metadata.textviewKey)
-                    .setText(new DecimalFormat("#.00")
-                    .format(FindMaxOccuring(metadata.counterSet.get(metadata.textviewKey))));
-        } catch (NumberFormatException formatEx) {
-//            outputMap.get("TOTAL").setText("$" + raw);
-        }
+    private void showDate(long date) {
+        int year = (int) (date / 10000);
+        int month = (int) (date / 100 % 100);
+        int day = (int) (date % 100);
+        outputMap.get("Date").setText(
+                String.format(Locale.US, "%02d/%02d/%04d", month, day, year));
     }
 
     @Override
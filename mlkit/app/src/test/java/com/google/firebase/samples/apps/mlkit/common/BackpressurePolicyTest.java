@@ -0,0 +1,110 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class BackpressurePolicyTest {
+
+    @Test
+    public void latestOnlyReplacesWaitingFrame() {
+        BackpressurePolicy<String> policy = BackpressurePolicy.latestOnly();
+
+        assertNull(policy.offer("a"));
+        assertEquals("a", policy.offer("b"));
+        assertEquals("b", policy.offer("c"));
+
+        assertEquals("c", policy.poll());
+        assertNull(policy.poll());
+        assertEquals(2, policy.getDroppedCount());
+    }
+
+    @Test
+    public void dropNewestKeepsFirstFramesInOrder() {
+        BackpressurePolicy<String> policy = BackpressurePolicy.dropNewest(2);
+
+        assertNull(policy.offer("a"));
+        assertNull(policy.offer("b"));
+        assertEquals("c", policy.offer("c"));
+        assertEquals("d", policy.offer("d"));
+
+        assertEquals("a", policy.poll());
+        // Room again for one frame.
+        assertNull(policy.offer("e"));
+        assertEquals("b", policy.poll());
+        assertEquals("e", policy.poll());
+        assertNull(policy.poll());
+        assertEquals(2, policy.getDroppedCount());
+    }
+
+    @Test
+    public void boundedFifoDropsOldestWaitingFrame() {
+        BackpressurePolicy<String> policy = BackpressurePolicy.boundedFifo(3);
+
+        assertNull(policy.offer("a"));
+        assertNull(policy.offer("b"));
+        assertNull(policy.offer("c"));
+        assertEquals("a", policy.offer("d"));
+        assertEquals("b", policy.offer("e"));
+
+        assertEquals("c", policy.poll());
+        assertEquals("d", policy.poll());
+        assertEquals("e", policy.poll());
+        assertNull(policy.poll());
+        assertEquals(2, policy.getDroppedCount());
+    }
+
+    @Test
+    public void everyKthFrameOnlyConsidersEveryKthOffer() {
+        BackpressurePolicy<Integer> policy = BackpressurePolicy.everyKthFrame(3);
+
+        // Offers 0 and 3 are considered, the others dropped straight away.
+        assertNull(policy.offer(0));
+        assertEquals(Integer.valueOf(1), policy.offer(1));
+        assertEquals(Integer.valueOf(2), policy.offer(2));
+        // 3 replaces 0, which was still waiting.
+        assertEquals(Integer.valueOf(0), policy.offer(3));
+        assertEquals(Integer.valueOf(3), policy.poll());
+        assertNull(policy.poll());
+
+        assertEquals(Integer.valueOf(4), policy.offer(4));
+        assertEquals(Integer.valueOf(5), policy.offer(5));
+        assertNull(policy.offer(6));
+        assertEquals(Integer.valueOf(6), policy.poll());
+        assertEquals(5, policy.getDroppedCount());
+    }
+
+    @Test
+    public void everyFrameIntervalOfOneBehavesLikeLatestOnly() {
+        BackpressurePolicy<String> policy = BackpressurePolicy.everyKthFrame(1);
+
+        assertNull(policy.offer("a"));
+        assertEquals("a", policy.offer("b"));
+        assertEquals("b", policy.poll());
+        assertEquals(1, policy.getDroppedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        BackpressurePolicy.boundedFifo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroFrameInterval() {
+        BackpressurePolicy.everyKthFrame(0);
+    }
+}
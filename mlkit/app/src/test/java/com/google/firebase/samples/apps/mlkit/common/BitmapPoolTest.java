@@ -0,0 +1,105 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class BitmapPoolTest {
+
+    private static final long FRAME_BYTES = 64 * 48 * 4;
+
+    @Test
+    public void releasedBitmapIsReused() {
+        BitmapPool pool = new BitmapPool(4 * FRAME_BYTES);
+
+        Bitmap first = pool.acquire(64, 48, Bitmap.Config.ARGB_8888);
+        pool.release(first);
+        assertEquals(FRAME_BYTES, pool.getBytesHeld());
+
+        assertSame(first, pool.acquire(64, 48, Bitmap.Config.ARGB_8888));
+        assertEquals(0, pool.getBytesHeld());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+    }
+
+    @Test
+    public void otherSizeOrConfigIsNotReused() {
+        BitmapPool pool = new BitmapPool(4 * FRAME_BYTES);
+        Bitmap landscape = pool.acquire(64, 48, Bitmap.Config.ARGB_8888);
+        pool.release(landscape);
+
+        Bitmap portrait = pool.acquire(48, 64, Bitmap.Config.ARGB_8888);
+        Bitmap rgb565 = pool.acquire(64, 48, Bitmap.Config.RGB_565);
+
+        assertNotSame(landscape, portrait);
+        assertEquals(48, portrait.getWidth());
+        assertEquals(64, portrait.getHeight());
+        assertNotSame(landscape, rgb565);
+        assertEquals(Bitmap.Config.RGB_565, rgb565.getConfig());
+        assertEquals(0, pool.getHitCount());
+        assertEquals(3, pool.getMissCount());
+        // The released bitmap is still waiting for a request of its own size.
+        assertEquals(FRAME_BYTES, pool.getBytesHeld());
+        assertSame(landscape, pool.acquire(64, 48, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void releaseKeepsPoolWithinItsLimit() {
+        BitmapPool pool = new BitmapPool(FRAME_BYTES);
+        Bitmap first = pool.acquire(64, 48, Bitmap.Config.ARGB_8888);
+        Bitmap second = pool.acquire(64, 48, Bitmap.Config.ARGB_8888);
+
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(FRAME_BYTES, pool.getBytesHeld());
+        assertSame(first, pool.acquire(64, 48, Bitmap.Config.ARGB_8888));
+        assertNotSame(second, pool.acquire(64, 48, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void unusableBitmapsAreNotPooled() {
+        BitmapPool pool = new BitmapPool(4 * FRAME_BYTES);
+        Bitmap recycled = Bitmap.createBitmap(64, 48, Bitmap.Config.ARGB_8888);
+        recycled.recycle();
+        Bitmap immutable = Bitmap.createBitmap(new int[64 * 48], 64, 48, Bitmap.Config.ARGB_8888);
+
+        pool.release(null);
+        pool.release(recycled);
+        pool.release(immutable);
+
+        assertEquals(0, pool.getBytesHeld());
+    }
+
+    @Test
+    public void clearDropsPooledBitmaps() {
+        BitmapPool pool = new BitmapPool(4 * FRAME_BYTES);
+        Bitmap bitmap = pool.acquire(64, 48, Bitmap.Config.ARGB_8888);
+        pool.release(bitmap);
+
+        pool.clear();
+
+        assertEquals(0, pool.getBytesHeld());
+        assertNotSame(bitmap, pool.acquire(64, 48, Bitmap.Config.ARGB_8888));
+    }
+}
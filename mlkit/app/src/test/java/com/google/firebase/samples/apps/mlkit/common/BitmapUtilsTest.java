@@ -0,0 +1,67 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import android.graphics.Bitmap;
+import android.hardware.Camera.CameraInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.ByteBuffer;
+
+@RunWith(RobolectricTestRunner.class)
+public class BitmapUtilsTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static FrameMetadata metadata(int rotation) {
+        return new FrameMetadata.Builder()
+                .setWidth(WIDTH)
+                .setHeight(HEIGHT)
+                .setRotation(rotation)
+                .setCameraFacing(CameraInfo.CAMERA_FACING_BACK)
+                .build();
+    }
+
+    @Test
+    public void convertedFrameIsUpright() {
+        ByteBuffer data = ByteBuffer.wrap(new byte[Nv21Converter.getFrameSize(WIDTH, HEIGHT)]);
+
+        Bitmap bitmap = BitmapUtils.getBitmap(data, metadata(1), new int[WIDTH * HEIGHT]);
+
+        assertNotNull(bitmap);
+        assertEquals(HEIGHT, bitmap.getWidth());
+        assertEquals(WIDTH, bitmap.getHeight());
+        BitmapPool.getInstance().release(bitmap);
+    }
+
+    @Test
+    public void failedConversionDoesNotTakeBitmapFromPool() {
+        BitmapPool pool = BitmapPool.getInstance();
+        ByteBuffer data = ByteBuffer.wrap(new byte[Nv21Converter.getFrameSize(WIDTH, HEIGHT)]);
+        long taken = pool.getHitCount() + pool.getMissCount();
+
+        // The pixel buffer is too small for the frame.
+        assertNull(BitmapUtils.getBitmap(data, metadata(0), new int[WIDTH]));
+
+        assertEquals(taken, pool.getHitCount() + pool.getMissCount());
+    }
+}
@@ -0,0 +1,133 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import androidx.camera.core.ImageProxy;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class CameraXSourceTest {
+
+    private static final int WIDTH = 10;
+    private static final int HEIGHT = 6;
+    private static final int ROW_STRIDE = 16;
+
+    private static class FakePlane implements ImageProxy.PlaneProxy {
+        private final ByteBuffer buffer;
+        private final int rowStride;
+        private final int pixelStride;
+
+        FakePlane(ByteBuffer buffer, int rowStride, int pixelStride) {
+            this.buffer = buffer;
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+        }
+
+        @Override
+        public int getRowStride() {
+            return rowStride;
+        }
+
+        @Override
+        public int getPixelStride() {
+            return pixelStride;
+        }
+
+        @Override
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+    }
+
+    @Test
+    public void packsSemiPlanarImage() {
+        byte[] nv21 = randomFrame(3);
+        // Padded rows, and U and V planes that are views of one interleaved V/U plane.
+        byte[] chroma = new byte[ROW_STRIDE * HEIGHT / 2];
+        for (int y = 0; y < HEIGHT / 2; y++) {
+            System.arraycopy(nv21, WIDTH * HEIGHT + y * WIDTH, chroma, y * ROW_STRIDE, WIDTH);
+        }
+        ImageProxy.PlaneProxy[] planes = {
+                lumaPlane(nv21),
+                new FakePlane(ByteBuffer.wrap(chroma, 1, chroma.length - 1).slice(), ROW_STRIDE, 2),
+                new FakePlane(ByteBuffer.wrap(chroma), ROW_STRIDE, 2)};
+
+        assertContent(nv21, CameraXSource.toNv21(planes, WIDTH, HEIGHT, null));
+    }
+
+    @Test
+    public void packsPlanarImage() {
+        byte[] nv21 = randomFrame(5);
+        int chromaStride = ROW_STRIDE / 2;
+        byte[] u = new byte[chromaStride * HEIGHT / 2];
+        byte[] v = new byte[chromaStride * HEIGHT / 2];
+        for (int y = 0; y < HEIGHT / 2; y++) {
+            for (int x = 0; x < WIDTH / 2; x++) {
+                int vu = WIDTH * HEIGHT + y * WIDTH + 2 * x;
+                v[y * chromaStride + x] = nv21[vu];
+                u[y * chromaStride + x] = nv21[vu + 1];
+            }
+        }
+        ImageProxy.PlaneProxy[] planes = {
+                lumaPlane(nv21),
+                new FakePlane(ByteBuffer.wrap(u), chromaStride, 1),
+                new FakePlane(ByteBuffer.wrap(v), chromaStride, 1)};
+
+        assertContent(nv21, CameraXSource.toNv21(planes, WIDTH, HEIGHT, null));
+    }
+
+    @Test
+    public void reusesLargeEnoughBuffer() {
+        byte[] nv21 = randomFrame(7);
+        byte[] chroma = new byte[ROW_STRIDE * HEIGHT / 2];
+        ImageProxy.PlaneProxy[] planes = {
+                lumaPlane(nv21),
+                new FakePlane(ByteBuffer.wrap(chroma, 1, chroma.length - 1).slice(), ROW_STRIDE, 2),
+                new FakePlane(ByteBuffer.wrap(chroma), ROW_STRIDE, 2)};
+
+        ByteBuffer first = CameraXSource.toNv21(planes, WIDTH, HEIGHT, null);
+        assertSame(first, CameraXSource.toNv21(planes, WIDTH, HEIGHT, first));
+        ByteBuffer small = ByteBuffer.allocateDirect(nv21.length - 1);
+        assertNotSame(small, CameraXSource.toNv21(planes, WIDTH, HEIGHT, small));
+    }
+
+    private static FakePlane lumaPlane(byte[] nv21) {
+        byte[] luma = new byte[ROW_STRIDE * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            System.arraycopy(nv21, y * WIDTH, luma, y * ROW_STRIDE, WIDTH);
+        }
+        return new FakePlane(ByteBuffer.wrap(luma), ROW_STRIDE, 1);
+    }
+
+    private static void assertContent(byte[] expected, ByteBuffer actual) {
+        assertEquals(0, actual.position());
+        assertEquals(expected.length, actual.limit());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("byte " + i, expected[i], actual.get(i));
+        }
+    }
+
+    private static byte[] randomFrame(long seed) {
+        byte[] frame = new byte[Nv21Converter.getFrameSize(WIDTH, HEIGHT)];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+}
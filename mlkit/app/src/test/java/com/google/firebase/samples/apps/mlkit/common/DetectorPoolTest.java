@@ -0,0 +1,110 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.Closeable;
+
+@RunWith(RobolectricTestRunner.class)
+public class DetectorPoolTest {
+
+    /** Detector stand-in that counts how often it is closed. */
+    private static class FakeDetector implements Closeable {
+        int closeCount;
+
+        @Override
+        public void close() {
+            closeCount++;
+        }
+    }
+
+    @Test
+    public void handsOutEachDetectorToOneCallerAtATime() {
+        DetectorPool<FakeDetector> pool = new DetectorPool<>(2, newDetectors());
+
+        FakeDetector first = pool.acquire();
+        FakeDetector second = pool.acquire();
+        assertNotSame(first, second);
+        assertNull(pool.acquire());
+
+        pool.release(first);
+        assertSame(first, pool.acquire());
+    }
+
+    @Test
+    public void keepsSharedInstanceOnce() {
+        final FakeDetector shared = new FakeDetector();
+        DetectorPool<FakeDetector> pool = new DetectorPool<>(3,
+                new DetectorPool.Factory<FakeDetector>() {
+                    @Override
+                    public FakeDetector create() {
+                        return shared;
+                    }
+                });
+
+        assertEquals(1, pool.size());
+        assertSame(shared, pool.acquire());
+        assertNull(pool.acquire());
+
+        pool.close();
+        assertEquals(1, shared.closeCount);
+    }
+
+    @Test
+    public void closesEveryDetectorOnce() {
+        final FakeDetector[] created = new FakeDetector[2];
+        DetectorPool<FakeDetector> pool = new DetectorPool<>(2,
+                new DetectorPool.Factory<FakeDetector>() {
+                    int count;
+
+                    @Override
+                    public FakeDetector create() {
+                        return created[count++] = new FakeDetector();
+                    }
+                });
+        FakeDetector inUse = pool.acquire();
+
+        pool.close();
+        pool.close();
+
+        assertEquals(1, created[0].closeCount);
+        assertEquals(1, created[1].closeCount);
+        assertNull(pool.acquire());
+        // A call that was still running hands its detector back after the close.
+        pool.release(inUse);
+        assertNull(pool.acquire());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsForeignDetector() {
+        new DetectorPool<>(1, newDetectors()).release(new FakeDetector());
+    }
+
+    private static DetectorPool.Factory<FakeDetector> newDetectors() {
+        return new DetectorPool.Factory<FakeDetector>() {
+            @Override
+            public FakeDetector create() {
+                return new FakeDetector();
+            }
+        };
+    }
+}
@@ -0,0 +1,177 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class FrameDispatcherTest {
+
+    // Far below the time detection is held up in these tests, far above a non-blocking call.
+    private static final long NON_BLOCKING_MILLIS = 200;
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    /** Processor whose detection blocks until the test lets it finish. */
+    private static class BlockingProcessor implements VisionImageProcessor {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final List<Integer> frames = Collections.synchronizedList(new ArrayList<Integer>());
+        volatile boolean stoppedDuringProcess;
+        volatile boolean inProcess;
+
+        void detect(int frame) throws InterruptedException {
+            inProcess = true;
+            frames.add(frame);
+            entered.countDown();
+            finish.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            inProcess = false;
+        }
+
+        @Override
+        public void process(ByteBuffer data, FrameMetadata frameMetadata,
+                            GraphicOverlay graphicOverlay) {
+        }
+
+        @Override
+        public void process(Bitmap bitmap, GraphicOverlay graphicOverlay) {
+        }
+
+        @Override
+        public void stop() {
+            if (inProcess) {
+                stoppedDuringProcess = true;
+            }
+            stopped.countDown();
+        }
+    }
+
+    private static class RecordingDelegate implements FrameDispatcher.Delegate<Integer> {
+        final List<Integer> recycled = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> dropped = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @Override
+        public void process(VisionImageProcessor processor, Integer frame) throws Exception {
+            ((BlockingProcessor) processor).detect(frame);
+        }
+
+        @Override
+        public void recycle(Integer frame) {
+            recycled.add(frame);
+        }
+
+        @Override
+        public void drop(Integer frame) {
+            dropped.add(frame);
+        }
+    }
+
+    @Test
+    public void swapDuringDetectionDoesNotBlock() throws Exception {
+        RecordingDelegate delegate = new RecordingDelegate();
+        FrameDispatcher<Integer> dispatcher = new FrameDispatcher<>("test", delegate);
+        BlockingProcessor first = new BlockingProcessor();
+        BlockingProcessor second = new BlockingProcessor();
+        second.finish.countDown();
+        dispatcher.setProcessor(first);
+        dispatcher.start();
+
+        dispatcher.offer(1);
+        assertTrue(first.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        dispatcher.setProcessor(second);
+        assertTrue(elapsedMillis(start) < NON_BLOCKING_MILLIS);
+        assertEquals(1, first.stopped.getCount());
+
+        first.finish.countDown();
+        assertTrue(first.stopped.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(first.stoppedDuringProcess);
+
+        dispatcher.offer(2);
+        assertTrue(second.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(2), second.frames);
+
+        dispatcher.stop();
+        dispatcher.awaitStopped();
+    }
+
+    @Test
+    public void releaseDuringDetectionDoesNotBlock() throws Exception {
+        RecordingDelegate delegate = new RecordingDelegate();
+        FrameDispatcher<Integer> dispatcher = new FrameDispatcher<>("test", delegate);
+        BlockingProcessor processor = new BlockingProcessor();
+        dispatcher.setProcessor(processor);
+        dispatcher.start();
+
+        dispatcher.offer(1);
+        assertTrue(processor.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        dispatcher.offer(2);
+
+        long start = System.nanoTime();
+        dispatcher.stop();
+        dispatcher.setProcessor(null);
+        assertTrue(elapsedMillis(start) < NON_BLOCKING_MILLIS);
+        assertEquals(Collections.singletonList(2), delegate.dropped);
+
+        processor.finish.countDown();
+        dispatcher.awaitStopped();
+        assertEquals(0, processor.stopped.getCount());
+        assertFalse(processor.stoppedDuringProcess);
+        assertEquals(Collections.singletonList(1), delegate.recycled);
+    }
+
+    @Test
+    public void keepsOnlyTheLatestPendingFrame() throws Exception {
+        RecordingDelegate delegate = new RecordingDelegate();
+        FrameDispatcher<Integer> dispatcher = new FrameDispatcher<>("test", delegate);
+        BlockingProcessor processor = new BlockingProcessor();
+        dispatcher.setProcessor(processor);
+        dispatcher.start();
+
+        dispatcher.offer(1);
+        assertTrue(processor.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        dispatcher.offer(2);
+        dispatcher.offer(3);
+        processor.finish.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (delegate.recycled.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        dispatcher.stop();
+        dispatcher.awaitStopped();
+
+        assertEquals(Arrays.asList(1, 3), processor.frames);
+        assertEquals(Collections.singletonList(2), delegate.dropped);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
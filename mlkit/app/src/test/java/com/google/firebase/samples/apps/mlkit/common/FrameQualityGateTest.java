@@ -0,0 +1,137 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class FrameQualityGateTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    private static class RecordingListener implements FrameQualityGate.Listener<String> {
+        final List<String> passed = new ArrayList<>();
+        final List<String> rejected = new ArrayList<>();
+
+        @Override
+        public void onPass(String frame) {
+            passed.add(frame);
+        }
+
+        @Override
+        public void onReject(String frame) {
+            rejected.add(frame);
+        }
+    }
+
+    @Test
+    public void blurLowersTheScore() {
+        ByteBuffer sharp = textLikeFrame();
+        ByteBuffer blurred = blur(sharp, 2);
+        ByteBuffer veryBlurred = blur(sharp, 6);
+
+        double sharpScore = FrameQualityGate.score(sharp, WIDTH, HEIGHT, 4);
+        double blurredScore = FrameQualityGate.score(blurred, WIDTH, HEIGHT, 4);
+        double veryBlurredScore = FrameQualityGate.score(veryBlurred, WIDTH, HEIGHT, 4);
+        assertTrue(sharpScore > 2 * blurredScore);
+        assertTrue(blurredScore > 2 * veryBlurredScore);
+        assertEquals(0, FrameQualityGate.score(flatFrame(), WIDTH, HEIGHT, 4), 1e-9);
+    }
+
+    @Test
+    public void thresholdRejectsBlurryFrames() {
+        ByteBuffer sharp = textLikeFrame();
+        double sharpScore = FrameQualityGate.score(sharp, WIDTH, HEIGHT,
+                FrameQualityGate.DEFAULT_GRID_STEP);
+        FrameQualityGate<String> gate = FrameQualityGate.threshold(sharpScore / 2);
+        RecordingListener listener = new RecordingListener();
+
+        gate.submit("sharp", sharp, WIDTH, HEIGHT, listener);
+        gate.submit("blurred", blur(sharp, 4), WIDTH, HEIGHT, listener);
+
+        assertEquals(Arrays.asList("sharp"), listener.passed);
+        assertEquals(Arrays.asList("blurred"), listener.rejected);
+        assertEquals(1, gate.getPassCount());
+        assertEquals(1, gate.getRejectCount());
+        assertTrue(gate.getAverageScoringNanos() > 0);
+    }
+
+    @Test
+    public void windowPassesOnlyTheSharpestFrame() {
+        ByteBuffer sharp = textLikeFrame();
+        FrameQualityGate<String> gate = FrameQualityGate.sharpestInWindow(3);
+        RecordingListener listener = new RecordingListener();
+
+        gate.submit("blurred", blur(sharp, 3), WIDTH, HEIGHT, listener);
+        gate.submit("sharp", sharp, WIDTH, HEIGHT, listener);
+        assertTrue(listener.passed.isEmpty());
+        gate.submit("very blurred", blur(sharp, 6), WIDTH, HEIGHT, listener);
+
+        assertEquals(Arrays.asList("sharp"), listener.passed);
+        assertEquals(Arrays.asList("blurred", "very blurred"), listener.rejected);
+
+        gate.submit("next", sharp, WIDTH, HEIGHT, listener);
+        gate.flush(listener);
+        assertEquals(Arrays.asList("blurred", "very blurred", "next"), listener.rejected);
+    }
+
+    // Dark strokes on a light background, roughly like printed text.
+    private static ByteBuffer textLikeFrame() {
+        byte[] frame = new byte[Nv21Converter.getFrameSize(WIDTH, HEIGHT)];
+        Arrays.fill(frame, (byte) 220);
+        Random random = new Random(42);
+        for (int i = 0; i < 400; i++) {
+            int x = random.nextInt(WIDTH - 10);
+            int y = random.nextInt(HEIGHT - 14);
+            for (int dy = 0; dy < 14; dy++) {
+                frame[(y + dy) * WIDTH + x + random.nextInt(3)] = 20;
+            }
+            for (int dx = 0; dx < 8; dx++) {
+                frame[(y + random.nextInt(14)) * WIDTH + x + dx] = 20;
+            }
+        }
+        return ByteBuffer.wrap(frame);
+    }
+
+    private static ByteBuffer flatFrame() {
+        byte[] frame = new byte[Nv21Converter.getFrameSize(WIDTH, HEIGHT)];
+        Arrays.fill(frame, (byte) 128);
+        return ByteBuffer.wrap(frame);
+    }
+
+    // Horizontal box blur of the luma plane, like motion blur from a sideways shake.
+    private static ByteBuffer blur(ByteBuffer source, int radius) {
+        byte[] in = source.array();
+        byte[] out = in.clone();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = radius; x < WIDTH - radius; x++) {
+                int sum = 0;
+                for (int dx = -radius; dx <= radius; dx++) {
+                    sum += in[y * WIDTH + x + dx] & 0xff;
+                }
+                out[y * WIDTH + x] = (byte) (sum / (2 * radius + 1));
+            }
+        }
+        return ByteBuffer.wrap(out);
+    }
+}
@@ -0,0 +1,120 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class FrameRateGovernorTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    // 30 fps camera, never below 2 fps.
+    private static final long CAMERA_INTERVAL = 33 * MS;
+
+    private final FrameRateGovernor governor = new FrameRateGovernor(30f, 2f);
+
+    @Test
+    public void acceptsEveryFrameWithoutLatencyHistory() {
+        assertEquals(30f, governor.getTargetFps(), 0.01f);
+        assertEquals(30, acceptedOverOneSecond());
+    }
+
+    @Test
+    public void slowsDownAsLatencyRises() {
+        feed(200 * MS, 20);
+
+        // 200 ms detections, frames accepted every 160 ms.
+        assertEquals(200 * MS, governor.getAverageLatencyNanos(), MS);
+        assertEquals(6.25f, governor.getTargetFps(), 0.1f);
+        int accepted = acceptedOverOneSecond();
+        assertTrue("accepted " + accepted, accepted >= 6 && accepted <= 8);
+    }
+
+    @Test
+    public void averageFollowsLatencyGradually() {
+        feed(100 * MS, 1);
+        governor.onDetectionLatency(200 * MS);
+
+        // One sample only moves the average by the smoothing factor.
+        assertEquals(120 * MS, governor.getAverageLatencyNanos(), MS);
+    }
+
+    @Test
+    public void speedsBackUpAsLatencyFalls() {
+        feed(200 * MS, 20);
+        float slow = governor.getTargetFps();
+        feed(20 * MS, 5);
+        float recovering = governor.getTargetFps();
+        feed(20 * MS, 30);
+
+        assertTrue(recovering > slow);
+        assertEquals(30f, governor.getTargetFps(), 0.01f);
+    }
+
+    @Test
+    public void clampsToRateRange() {
+        feed(5 * MS, 20);
+        assertEquals(30f, governor.getTargetFps(), 0.01f);
+
+        feed(5000 * MS, 50);
+        assertEquals(2f, governor.getTargetFps(), 0.01f);
+    }
+
+    @Test
+    public void acceptsMoreOftenWithFramesInParallel() {
+        feed(200 * MS, 20);
+        governor.setConcurrency(2);
+
+        assertEquals(12.5f, governor.getTargetFps(), 0.1f);
+        governor.setConcurrency(100);
+        assertEquals(30f, governor.getTargetFps(), 0.01f);
+    }
+
+    @Test
+    public void resetForgetsLatency() {
+        feed(200 * MS, 20);
+        assertTrue(governor.shouldAccept(0));
+        assertFalse(governor.shouldAccept(CAMERA_INTERVAL));
+
+        governor.reset();
+        assertEquals(0, governor.getAverageLatencyNanos());
+        assertTrue(governor.shouldAccept(CAMERA_INTERVAL));
+        assertTrue(governor.shouldAccept(2 * CAMERA_INTERVAL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRange() {
+        new FrameRateGovernor(2f, 30f);
+    }
+
+    private void feed(long latencyNanos, int samples) {
+        for (int i = 0; i < samples; i++) {
+            governor.onDetectionLatency(latencyNanos);
+        }
+    }
+
+    // Offers a second of frames at the camera rate and counts those accepted.
+    private int acceptedOverOneSecond() {
+        long before = governor.getAcceptedCount();
+        for (int frame = 0; frame < 30; frame++) {
+            governor.shouldAccept(1000 * MS + frame * CAMERA_INTERVAL);
+        }
+        return (int) (governor.getAcceptedCount() - before);
+    }
+}
@@ -0,0 +1,166 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FrameRecorderTest {
+
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+    private static final int FRAME_COUNT = 5;
+
+    /** Detector stand-in that keeps a copy of every frame. */
+    private static class CopyingDetector implements VisionImageProcessor {
+        final List<byte[]> frames = Collections.synchronizedList(new ArrayList<byte[]>());
+        final List<FrameMetadata> metadata =
+                Collections.synchronizedList(new ArrayList<FrameMetadata>());
+
+        @Override
+        public void process(ByteBuffer data, FrameMetadata frameMetadata,
+                            GraphicOverlay graphicOverlay) {
+            byte[] copy = new byte[data.remaining()];
+            data.get(copy);
+            frames.add(copy);
+            metadata.add(frameMetadata);
+        }
+
+        @Override
+        public void process(Bitmap bitmap, GraphicOverlay graphicOverlay) {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    @Test
+    public void recordedFramesReplayUnchanged() throws Exception {
+        File file = File.createTempFile("recording", ".nv21");
+        file.delete();
+        FrameRecorder recorder = new FrameRecorder(file, FRAME_COUNT);
+        recorder.start();
+
+        List<byte[]> recorded = new ArrayList<>();
+        int frameSize = Nv21Converter.getFrameSize(WIDTH, HEIGHT);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            byte[] frame = new byte[frameSize];
+            for (int j = 0; j < frameSize; j++) {
+                frame[j] = (byte) (i * 31 + j);
+            }
+            recorded.add(frame);
+            FrameMetadata metadata =
+                    new FrameMetadata.Builder()
+                            .setWidth(WIDTH)
+                            .setHeight(HEIGHT)
+                            .setRotation(1)
+                            .setCameraFacing(i % 2)
+                            .build();
+            // The recorder must not keep a reference to the caller's buffer.
+            ByteBuffer buffer = ByteBuffer.wrap(frame.clone());
+            assertTrue(recorder.record(buffer, metadata, i));
+            buffer.put(0, (byte) -1);
+        }
+        recorder.stop();
+
+        assertEquals(FRAME_COUNT, recorder.getFramesWritten());
+        assertEquals(0, recorder.getFramesSkipped());
+        assertEquals(file.length(), recorder.getBytesWritten());
+
+        CopyingDetector detector = new CopyingDetector();
+        ReplayFrameSource replay =
+                new ReplayFrameSource(file, null, ReplayFrameSource.AS_FAST_AS_POSSIBLE);
+        replay.setMachineLearningFrameProcessor(detector);
+        replay.start();
+        replay.awaitCompletion();
+
+        assertEquals(FRAME_COUNT, detector.frames.size());
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            assertArrayEquals(recorded.get(i), detector.frames.get(i));
+            assertEquals(i % 2, detector.metadata.get(i).getCameraFacing());
+            assertEquals(1, detector.metadata.get(i).getRotation());
+        }
+        file.delete();
+    }
+
+    @Test
+    public void skipsFramesWhenNotRecording() throws Exception {
+        File file = File.createTempFile("recording", ".nv21");
+        FrameRecorder recorder = new FrameRecorder(file);
+        FrameMetadata metadata = new FrameMetadata.Builder().setWidth(2).setHeight(2).build();
+
+        assertFalse(recorder.record(ByteBuffer.allocate(6), metadata, 0));
+        assertEquals(1, recorder.getFramesSkipped());
+        assertEquals(0, recorder.getBytesWritten());
+        file.delete();
+    }
+
+    /**
+     * Stops the recorder while another thread records frames, many times over: each frame is
+     * either written in its own recording or counted as skipped, and none is left behind for the
+     * next recording.
+     */
+    @Test
+    public void stopRacingRecordLosesNoFrame() throws Exception {
+        File file = File.createTempFile("recording", ".nv21");
+        file.delete();
+        final FrameRecorder recorder = new FrameRecorder(file, 2);
+        // A full size frame, so that stop() often comes while one is being copied.
+        final FrameMetadata metadata =
+                new FrameMetadata.Builder().setWidth(640).setHeight(480).build();
+        final ByteBuffer frame = ByteBuffer.allocate(Nv21Converter.getFrameSize(640, 480));
+        final AtomicLong recordCalls = new AtomicLong();
+        for (int session = 0; session < 100; session++) {
+            recorder.start();
+            final AtomicBoolean stopped = new AtomicBoolean();
+            Thread camera = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (!stopped.get()) {
+                        recorder.record(frame, metadata, recordCalls.incrementAndGet());
+                    }
+                }
+            });
+            camera.start();
+            Thread.sleep(1);
+            recorder.stop();
+            stopped.set(true);
+            camera.join();
+
+            assertEquals(recordCalls.get(),
+                    recorder.getFramesWritten() + recorder.getFramesSkipped());
+        }
+        // Every pooled buffer came back.
+        recorder.start();
+        assertTrue(recorder.record(frame, metadata, 0));
+        assertTrue(recorder.record(frame, metadata, 0));
+        recorder.stop();
+        file.delete();
+    }
+}
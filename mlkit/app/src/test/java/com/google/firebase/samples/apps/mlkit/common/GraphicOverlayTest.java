@@ -0,0 +1,114 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Canvas;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public class GraphicOverlayTest {
+
+    private final GraphicOverlay overlay = new GraphicOverlay(RuntimeEnvironment.application, null);
+
+    /** Graphic stand-in that remembers being removed from the overlay. */
+    private static class FakeGraphic extends GraphicOverlay.Graphic {
+        boolean released;
+
+        FakeGraphic(GraphicOverlay overlay) {
+            super(overlay);
+        }
+
+        @Override
+        public void draw(Canvas canvas) {}
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    @Test
+    public void updateRedrawsOnceWhenItEnds() {
+        long before = overlay.getInvalidationCount();
+
+        overlay.beginUpdate();
+        overlay.add(new FakeGraphic(overlay));
+        overlay.postInvalidate();
+        overlay.clear();
+        overlay.postInvalidate();
+        assertEquals(before, overlay.getInvalidationCount());
+        overlay.endUpdate();
+
+        assertEquals(before + 1, overlay.getInvalidationCount());
+    }
+
+    @Test
+    public void clearWithinUpdateKeepsGraphicsOfOthers() {
+        overlay.beginUpdate();
+        FakeGraphic first = new FakeGraphic(overlay);
+        overlay.add(first);
+        // The next contributor clears the overlay as if it drew alone.
+        overlay.clear();
+        FakeGraphic second = new FakeGraphic(overlay);
+        overlay.add(second);
+        overlay.endUpdate();
+        assertFalse(first.released);
+        assertFalse(second.released);
+
+        // The next update starts from an empty overlay.
+        overlay.beginUpdate();
+        assertTrue(first.released);
+        assertTrue(second.released);
+        overlay.endUpdate();
+    }
+
+    @Test
+    public void onlyOutermostUpdateRedraws() {
+        long before = overlay.getInvalidationCount();
+
+        overlay.beginUpdate();
+        overlay.beginUpdate();
+        overlay.postInvalidate();
+        overlay.endUpdate();
+        assertEquals(before, overlay.getInvalidationCount());
+        overlay.endUpdate();
+
+        assertEquals(before + 1, overlay.getInvalidationCount());
+    }
+
+    @Test
+    public void clearOutsideUpdateRemovesAndRedraws() {
+        FakeGraphic graphic = new FakeGraphic(overlay);
+        overlay.add(graphic);
+        long before = overlay.getInvalidationCount();
+
+        overlay.clear();
+
+        assertTrue(graphic.released);
+        assertEquals(before + 1, overlay.getInvalidationCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endWithoutBeginFails() {
+        overlay.endUpdate();
+    }
+}
@@ -0,0 +1,194 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class InFlightWindowTest {
+
+    @Test
+    public void capsFramesInFlight() {
+        InFlightWindow window = new InFlightWindow(2);
+
+        assertEquals(0, window.begin());
+        assertEquals(1, window.begin());
+        assertFalse(window.hasRoom());
+        assertEquals(InFlightWindow.NONE, window.begin());
+
+        window.cancel(0);
+        assertTrue(window.hasRoom());
+        assertEquals(2, window.begin());
+        assertEquals(2, window.getInFlightCount());
+    }
+
+    @Test
+    public void dropsResultsOlderThanDeliveredOnes() {
+        InFlightWindow window = new InFlightWindow(3);
+        long first = window.begin();
+        long second = window.begin();
+        long third = window.begin();
+
+        assertTrue(window.finish(second));
+        assertFalse(window.finish(first));
+        assertTrue(window.finish(third));
+        assertEquals(1, window.getStaleCount());
+        assertEquals(0, window.getInFlightCount());
+    }
+
+    @Test
+    public void failedFramesDoNotHoldBackLaterOnes() {
+        InFlightWindow window = new InFlightWindow(2);
+        long first = window.begin();
+        long second = window.begin();
+
+        window.cancel(second);
+        assertTrue(window.finish(first));
+        assertEquals(0, window.getStaleCount());
+    }
+
+    @Test
+    public void poolHandsOutEachDetectorOnce() {
+        DetectorPool<FakeDetector> pool = new DetectorPool<>(2, FACTORY);
+
+        FakeDetector a = pool.acquire();
+        FakeDetector b = pool.acquire();
+        assertTrue(a != null && b != null && a != b);
+        assertNull(pool.acquire());
+
+        pool.release(a);
+        assertTrue(pool.acquire() == a);
+    }
+
+    /**
+     * Runs a fake detector with a realistic, varying latency on a stream of camera frames, with
+     * one frame in flight and with several, and compares how many results reach the screen.
+     */
+    @Test
+    public void throughputComparedToSingleFlight() throws Exception {
+        Simulation single = simulate(1);
+        Simulation pooled = simulate(3);
+
+        System.out.println("Fake detector, 1 in flight: " + single.describe());
+        System.out.println("Fake detector, 3 in flight: " + pooled.describe());
+        assertTrue(single.inOrder && pooled.inOrder);
+        assertFalse(single.concurrentUse || pooled.concurrentUse);
+        assertEquals(0, single.stale);
+        assertTrue(pooled.deliveredFps() > 1.5 * single.deliveredFps());
+    }
+
+    private static final long RUN_MILLIS = 600;
+    private static final long FRAME_INTERVAL_MILLIS = 5;
+
+    private static Simulation simulate(int maxInFlight) throws InterruptedException {
+        final InFlightWindow window = new InFlightWindow(maxInFlight);
+        final DetectorPool<FakeDetector> pool = new DetectorPool<>(maxInFlight, FACTORY);
+        final Simulation simulation = new Simulation();
+        ExecutorService executor = Executors.newFixedThreadPool(maxInFlight);
+
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS)) {
+            final long sequence = window.begin();
+            if (sequence != InFlightWindow.NONE) {
+                final FakeDetector detector = pool.acquire();
+                executor.execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                boolean concurrent = !detector.detect(sequence);
+                                pool.release(detector);
+                                simulation.onDone(sequence, window.finish(sequence), concurrent);
+                            }
+                        });
+            }
+            Thread.sleep(FRAME_INTERVAL_MILLIS);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        simulation.elapsedNanos = System.nanoTime() - start;
+        simulation.stale = window.getStaleCount();
+        return simulation;
+    }
+
+    private static final class Simulation {
+        final List<Long> delivered = new ArrayList<>();
+        boolean inOrder = true;
+        boolean concurrentUse;
+        long stale;
+        long elapsedNanos;
+
+        synchronized void onDone(long sequence, boolean deliver, boolean concurrent) {
+            concurrentUse |= concurrent;
+            if (deliver) {
+                if (!delivered.isEmpty() && delivered.get(delivered.size() - 1) >= sequence) {
+                    inOrder = false;
+                }
+                delivered.add(sequence);
+            }
+        }
+
+        synchronized double deliveredFps() {
+            return delivered.size() * 1e9 / elapsedNanos;
+        }
+
+        synchronized String describe() {
+            return String.format("%.1f results/s, %d stale", deliveredFps(), stale);
+        }
+    }
+
+    private static final DetectorPool.Factory<FakeDetector> FACTORY =
+            new DetectorPool.Factory<FakeDetector>() {
+                @Override
+                public FakeDetector create() {
+                    return new FakeDetector();
+                }
+            };
+
+    // Takes 20 to 34 ms per frame, like a recognizer on a small frame, and can only do one at a
+    // time.
+    private static final class FakeDetector implements Closeable {
+        private final AtomicBoolean busy = new AtomicBoolean();
+
+        // Returns false if the detector was already in use.
+        boolean detect(long sequence) {
+            if (!busy.compareAndSet(false, true)) {
+                return false;
+            }
+            try {
+                Thread.sleep(20 + (sequence * 7) % 15);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                busy.set(false);
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
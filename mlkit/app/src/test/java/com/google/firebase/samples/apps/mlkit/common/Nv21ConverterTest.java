@@ -0,0 +1,247 @@
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import org.junit.Test;
+
+public class Nv21ConverterTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    @Test
+    public void matchesFloatingPointReference() {
+        byte[] nv21 = randomFrame(WIDTH, HEIGHT, 42);
+        int[] actual = new int[WIDTH * HEIGHT];
+        int[] expected = new int[WIDTH * HEIGHT];
+
+        Nv21Converter.convert(nv21, WIDTH, HEIGHT, actual);
+        referenceConvert(nv21, WIDTH, HEIGHT, expected);
+
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals(0xff, actual[i] >>> 24);
+            assertChannelClose(expected[i], actual[i], 16, i);
+            assertChannelClose(expected[i], actual[i], 8, i);
+            assertChannelClose(expected[i], actual[i], 0, i);
+        }
+    }
+
+    @Test
+    public void handlesOddDimensions() {
+        int width = 7;
+        int height = 5;
+        byte[] nv21 = randomFrame(width, height, 7);
+        int[] actual = new int[width * height];
+        int[] expected = new int[width * height];
+
+        Nv21Converter.convert(nv21, width, height, actual);
+        referenceConvert(nv21, width, height, expected);
+
+        for (int i = 0; i < actual.length; i++) {
+            assertChannelClose(expected[i], actual[i], 16, i);
+            assertChannelClose(expected[i], actual[i], 8, i);
+            assertChannelClose(expected[i], actual[i], 0, i);
+        }
+    }
+
+    @Test
+    public void videoRangeEndpoints() {
+        assertEquals(0xff000000, Nv21Converter.toArgb(16, 0, 0));
+        assertEquals(0xff000000, Nv21Converter.toArgb(0, 0, 0));
+        int white = Nv21Converter.toArgb(235, 0, 0);
+        assertTrue((white & 0xff) >= 254);
+        assertEquals(white & 0xff, (white >> 8) & 0xff);
+        assertEquals(white & 0xff, (white >> 16) & 0xff);
+    }
+
+    @Test
+    public void rotatesAndMirrorsWhileConverting() {
+        int width = 9;
+        int height = 6;
+        byte[] nv21 = randomFrame(width, height, 11);
+        int[] plain = new int[width * height];
+        Nv21Converter.convert(nv21, width, height, plain);
+
+        for (int rotation = 0; rotation < 4; rotation++) {
+            for (int mirror = 0; mirror < 2; mirror++) {
+                int[] actual = new int[width * height];
+                Nv21Converter.convert(nv21, width, height, rotation, mirror == 1, actual);
+
+                int outWidth = (rotation & 1) == 0 ? width : height;
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        // Turn (x, y) clockwise, then flip horizontally if mirrored.
+                        int outX;
+                        int outY;
+                        switch (rotation) {
+                            case 1:
+                                outX = height - 1 - y;
+                                outY = x;
+                                break;
+                            case 2:
+                                outX = width - 1 - x;
+                                outY = height - 1 - y;
+                                break;
+                            case 3:
+                                outX = y;
+                                outY = width - 1 - x;
+                                break;
+                            default:
+                                outX = x;
+                                outY = y;
+                                break;
+                        }
+                        if (mirror == 1) {
+                            outX = outWidth - 1 - outX;
+                        }
+                        assertEquals("rotation " + rotation + " mirror " + mirror,
+                                plain[y * width + x], actual[outY * outWidth + outX]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void convertsPaddedPlanarImageLikeNv21() {
+        int width = 9;
+        int height = 6;
+        int rowStride = 12;
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int chromaStride = 8;
+        byte[] nv21 = randomFrame(width, height, 13);
+        // I420 style planes, with a pixel stride of 1 and padded rows.
+        ByteBuffer yPlane = ByteBuffer.allocateDirect(rowStride * height);
+        ByteBuffer uPlane = ByteBuffer.allocateDirect(chromaStride * chromaHeight);
+        ByteBuffer vPlane = ByteBuffer.allocateDirect(chromaStride * chromaHeight);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                yPlane.put(y * rowStride + x, nv21[y * width + x]);
+            }
+        }
+        for (int y = 0; y < chromaHeight; y++) {
+            for (int x = 0; x < chromaWidth; x++) {
+                int index = width * height + y * 2 * chromaWidth + 2 * x;
+                vPlane.put(y * chromaStride + x, nv21[index]);
+                uPlane.put(y * chromaStride + x, nv21[index + 1]);
+            }
+        }
+
+        for (int rotation = 0; rotation < 4; rotation++) {
+            int[] expected = new int[width * height];
+            int[] actual = new int[width * height];
+            Nv21Converter.convert(nv21, width, height, rotation, true, expected);
+            Nv21Converter.convertYuv420(yPlane, uPlane, vPlane, rowStride, chromaStride, 1,
+                    width, height, rotation, true, actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortBuffer() {
+        Nv21Converter.convert(new byte[10], WIDTH, HEIGHT, new int[WIDTH * HEIGHT]);
+    }
+
+    /**
+     * Rough throughput comparison against the JPEG round trip the conversion replaced: compress
+     * the frame to JPEG at quality 80 as YuvImage did, then decode it to pixels as BitmapFactory
+     * did. Those classes need the Android framework, so the JVM's JPEG codec stands in for them.
+     * The round trip is given the frame as RGB already, which only flatters it.
+     */
+    @Test
+    public void fasterThanJpegRoundTrip() throws IOException {
+        byte[] nv21 = randomFrame(WIDTH, HEIGHT, 1);
+        int[] argb = new int[WIDTH * HEIGHT];
+        referenceConvert(nv21, WIDTH, HEIGHT, argb);
+        BufferedImage frame = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        frame.setRGB(0, 0, WIDTH, HEIGHT, argb, 0, WIDTH);
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        int iterations = 200;
+
+        // Warm up both paths so the JIT has compiled them before timing.
+        for (int i = 0; i < iterations; i++) {
+            Nv21Converter.convert(nv21, WIDTH, HEIGHT, argb);
+            jpegRoundTrip(frame, jpeg, argb);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Nv21Converter.convert(nv21, WIDTH, HEIGHT, argb);
+        }
+        long directNs = (System.nanoTime() - start) / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            jpegRoundTrip(frame, jpeg, argb);
+        }
+        long jpegNs = (System.nanoTime() - start) / iterations;
+
+        System.out.println(
+                "NV21->ARGB " + WIDTH + "x" + HEIGHT + ": direct " + directNs / 1000 + " us/frame, "
+                        + "JPEG round trip " + jpegNs / 1000 + " us/frame");
+        assertTrue(directNs < jpegNs);
+    }
+
+    private static void jpegRoundTrip(BufferedImage frame, ByteArrayOutputStream jpeg, int[] out)
+            throws IOException {
+        jpeg.reset();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.8f);
+        ImageOutputStream output = ImageIO.createImageOutputStream(jpeg);
+        writer.setOutput(output);
+        writer.write(null, new IIOImage(frame, null, null), param);
+        output.close();
+        writer.dispose();
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg.toByteArray()));
+        decoded.getRGB(0, 0, WIDTH, HEIGHT, out, 0, WIDTH);
+    }
+
+    private static void assertChannelClose(int expected, int actual, int shift, int index) {
+        int e = (expected >> shift) & 0xff;
+        int a = (actual >> shift) & 0xff;
+        assertTrue("pixel " + index + " channel " + shift + ": " + e + " vs " + a, Math.abs(e - a) <= 2);
+    }
+
+    private static byte[] randomFrame(int width, int height, long seed) {
+        byte[] nv21 = new byte[Nv21Converter.getFrameSize(width, height)];
+        new Random(seed).nextBytes(nv21);
+        return nv21;
+    }
+
+    private static void referenceConvert(byte[] nv21, int width, int height, int[] out) {
+        int chromaStride = 2 * ((width + 1) / 2);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int uvIndex = width * height + (row / 2) * chromaStride + (col / 2) * 2;
+                double y = 1.164 * Math.max(0, (nv21[row * width + col] & 0xff) - 16);
+                double v = (nv21[uvIndex] & 0xff) - 128;
+                double u = (nv21[uvIndex + 1] & 0xff) - 128;
+                int r = clamp(y + 1.596 * v);
+                int g = clamp(y - 0.813 * v - 0.391 * u);
+                int b = clamp(y + 2.018 * u);
+                out[row * width + col] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, value));
+    }
+}
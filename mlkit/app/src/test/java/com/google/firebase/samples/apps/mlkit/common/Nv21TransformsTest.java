@@ -0,0 +1,264 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class Nv21TransformsTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void cropMatchesPerPixelReference() {
+        byte[] nv21 = randomFrame(WIDTH, HEIGHT, 3);
+        int[][] crops = {{0, 0, WIDTH, HEIGHT}, {10, 6, 20, 30}, {40, 2, 24, 46}, {2, 4, 7, 5}};
+        for (int[] crop : crops) {
+            byte[] expected = referenceCrop(nv21, WIDTH, crop[0], crop[1], crop[2], crop[3]);
+
+            ByteBuffer heap = ByteBuffer.allocate(expected.length + 16);
+            Nv21Transforms.crop(ByteBuffer.wrap(nv21), WIDTH, HEIGHT,
+                    crop[0], crop[1], crop[2], crop[3], heap);
+            assertContent(expected, heap);
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(expected.length);
+            ByteBuffer directSource = ByteBuffer.allocateDirect(nv21.length);
+            directSource.put(nv21).flip();
+            Nv21Transforms.crop(directSource, WIDTH, HEIGHT,
+                    crop[0], crop[1], crop[2], crop[3], direct);
+            assertContent(expected, direct);
+        }
+    }
+
+    @Test
+    public void packsPaddedSemiPlanarImage() {
+        int width = 10;
+        int height = 6;
+        int rowStride = 16;
+        byte[] nv21 = randomFrame(width, height, 7);
+        // The usual camera layout: padded rows, and U and V planes that are views of one
+        // interleaved V/U plane with a pixel stride of 2.
+        byte[] luma = new byte[rowStride * height];
+        byte[] chroma = new byte[rowStride * height / 2];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(nv21, y * width, luma, y * rowStride, width);
+        }
+        for (int y = 0; y < height / 2; y++) {
+            System.arraycopy(nv21, width * height + y * width, chroma, y * rowStride, width);
+        }
+        ByteBuffer vPlane = ByteBuffer.wrap(chroma);
+        ByteBuffer uPlane = ByteBuffer.wrap(chroma, 1, chroma.length - 1).slice();
+        ByteBuffer dst = ByteBuffer.allocateDirect(nv21.length + 8);
+
+        Nv21Transforms.fromYuv420(ByteBuffer.wrap(luma), uPlane, vPlane, rowStride, rowStride, 2,
+                width, height, dst);
+
+        assertContent(nv21, dst);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddOrigin() {
+        Nv21Transforms.crop(ByteBuffer.wrap(randomFrame(WIDTH, HEIGHT, 1)), WIDTH, HEIGHT,
+                1, 0, 10, 10, ByteBuffer.allocate(1000));
+    }
+
+    @Test
+    public void halvingAveragesEachTwoByTwoBlock() {
+        byte[] nv21 = randomFrame(WIDTH, HEIGHT, 5);
+        ByteBuffer scaled = ByteBuffer.allocate(Nv21Converter.getFrameSize(WIDTH / 2, HEIGHT / 2));
+
+        Nv21Transforms.downscale(ByteBuffer.wrap(nv21), WIDTH, HEIGHT, scaled, WIDTH / 2, HEIGHT / 2);
+
+        for (int y = 0; y < HEIGHT / 2; y++) {
+            for (int x = 0; x < WIDTH / 2; x++) {
+                int sum = (nv21[2 * y * WIDTH + 2 * x] & 0xff)
+                        + (nv21[2 * y * WIDTH + 2 * x + 1] & 0xff)
+                        + (nv21[(2 * y + 1) * WIDTH + 2 * x] & 0xff)
+                        + (nv21[(2 * y + 1) * WIDTH + 2 * x + 1] & 0xff);
+                assertEquals((sum + 2) / 4, scaled.get(y * WIDTH / 2 + x) & 0xff);
+            }
+        }
+        // Chroma pairs are averaged the same way, V with V and U with U.
+        int srcChroma = WIDTH * HEIGHT;
+        int dstChroma = WIDTH * HEIGHT / 4;
+        for (int y = 0; y < HEIGHT / 4; y++) {
+            for (int x = 0; x < WIDTH / 4; x++) {
+                for (int channel = 0; channel < 2; channel++) {
+                    int sum = 0;
+                    for (int dy = 0; dy < 2; dy++) {
+                        for (int dx = 0; dx < 2; dx++) {
+                            sum += nv21[srcChroma + (2 * y + dy) * WIDTH + 2 * (2 * x + dx)
+                                    + channel] & 0xff;
+                        }
+                    }
+                    assertEquals((sum + 2) / 4,
+                            scaled.get(dstChroma + y * WIDTH / 2 + 2 * x + channel) & 0xff);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void anyRatioKeepsFlatFramesFlat() {
+        byte[] nv21 = new byte[Nv21Converter.getFrameSize(WIDTH, HEIGHT)];
+        Arrays.fill(nv21, 0, WIDTH * HEIGHT, (byte) 200);
+        Arrays.fill(nv21, WIDTH * HEIGHT, nv21.length, (byte) 90);
+        int width = 26;
+        int height = 20;
+        ByteBuffer scaled = ByteBuffer.allocateDirect(Nv21Converter.getFrameSize(width, height));
+
+        Nv21Transforms.downscale(ByteBuffer.wrap(nv21), WIDTH, HEIGHT, scaled, width, height);
+
+        assertEquals(Nv21Converter.getFrameSize(width, height), scaled.limit());
+        for (int i = 0; i < width * height; i++) {
+            assertEquals(200, scaled.get(i) & 0xff);
+        }
+        for (int i = width * height; i < scaled.limit(); i++) {
+            assertEquals(90, scaled.get(i) & 0xff);
+        }
+    }
+
+    /** Rough cost of downscaling typical preview sizes to a typical detection size. */
+    @Test
+    public void downscaleThroughput() {
+        int[][] sizes = {{640, 480, 320, 240}, {1280, 720, 320, 180}, {1920, 1080, 480, 270}};
+        for (int[] size : sizes) {
+            ByteBuffer heap = ByteBuffer.wrap(randomFrame(size[0], size[1], 1));
+            ByteBuffer direct = ByteBuffer.allocateDirect(heap.capacity());
+            direct.put(heap.duplicate()).flip();
+            ByteBuffer out = ByteBuffer.allocate(Nv21Converter.getFrameSize(size[2], size[3]));
+            int iterations = 50;
+
+            // Warm up so the JIT has compiled the scaler before timing.
+            for (int i = 0; i < iterations; i++) {
+                Nv21Transforms.downscale(heap, size[0], size[1], out, size[2], size[3]);
+                Nv21Transforms.downscale(direct, size[0], size[1], out, size[2], size[3]);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Nv21Transforms.downscale(heap, size[0], size[1], out, size[2], size[3]);
+            }
+            long heapNs = (System.nanoTime() - start) / iterations;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Nv21Transforms.downscale(direct, size[0], size[1], out, size[2], size[3]);
+            }
+            long directNs = (System.nanoTime() - start) / iterations;
+
+            System.out.println("NV21 box downscale " + size[0] + "x" + size[1] + " -> " + size[2]
+                    + "x" + size[3] + ": heap " + heapNs / 1000 + " us/frame, direct "
+                    + directNs / 1000 + " us/frame");
+            assertTrue(heapNs > 0 && directNs > 0);
+        }
+    }
+
+    @Test
+    public void sensorCropCoversTheUprightRegion() {
+        RegionOfInterest region = RegionOfInterest.of(0.2f, 0.3f, 0.7f, 0.9f);
+        int[] crop = new int[4];
+        for (int rotation = 0; rotation < 4; rotation++) {
+            region.toSensorCrop(WIDTH, HEIGHT, rotation, crop);
+            assertEquals(0, crop[RegionOfInterest.CROP_LEFT] & 1);
+            assertEquals(0, crop[RegionOfInterest.CROP_TOP] & 1);
+
+            boolean sideways = (rotation & 1) != 0;
+            int uprightWidth = sideways ? HEIGHT : WIDTH;
+            int uprightHeight = sideways ? WIDTH : HEIGHT;
+            int offsetX = RegionOfInterest.getUprightOffsetX(WIDTH, HEIGHT, rotation, crop);
+            int offsetY = RegionOfInterest.getUprightOffsetY(WIDTH, HEIGHT, rotation, crop);
+            int cropUprightWidth =
+                    sideways ? crop[RegionOfInterest.CROP_HEIGHT] : crop[RegionOfInterest.CROP_WIDTH];
+            int cropUprightHeight =
+                    sideways ? crop[RegionOfInterest.CROP_WIDTH] : crop[RegionOfInterest.CROP_HEIGHT];
+
+            // The crop, once upright, starts at the offset and contains the requested region.
+            int[] corner = toUpright(crop[RegionOfInterest.CROP_LEFT],
+                    crop[RegionOfInterest.CROP_TOP], rotation);
+            int[] opposite = toUpright(
+                    crop[RegionOfInterest.CROP_LEFT] + crop[RegionOfInterest.CROP_WIDTH] - 1,
+                    crop[RegionOfInterest.CROP_TOP] + crop[RegionOfInterest.CROP_HEIGHT] - 1,
+                    rotation);
+            assertEquals(offsetX, Math.min(corner[0], opposite[0]));
+            assertEquals(offsetY, Math.min(corner[1], opposite[1]));
+            assertEquals(offsetX + cropUprightWidth - 1, Math.max(corner[0], opposite[0]));
+            assertEquals(offsetY + cropUprightHeight - 1, Math.max(corner[1], opposite[1]));
+
+            assertTrue(offsetX <= 0.2f * uprightWidth);
+            assertTrue(offsetY <= 0.3f * uprightHeight);
+            assertTrue(offsetX + cropUprightWidth >= 0.7f * uprightWidth);
+            assertTrue(offsetY + cropUprightHeight >= 0.9f * uprightHeight);
+        }
+    }
+
+    // Where sensor pixel (x, y) ends up once the frame is turned clockwise by rotation quarters.
+    private static int[] toUpright(int x, int y, int rotation) {
+        switch (rotation) {
+            case 1:
+                return new int[] {HEIGHT - 1 - y, x};
+            case 2:
+                return new int[] {WIDTH - 1 - x, HEIGHT - 1 - y};
+            case 3:
+                return new int[] {y, WIDTH - 1 - x};
+            default:
+                return new int[] {x, y};
+        }
+    }
+
+    private static void assertContent(byte[] expected, ByteBuffer actual) {
+        assertEquals(0, actual.position());
+        assertEquals(expected.length, actual.limit());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("byte " + i, expected[i], actual.get(i));
+        }
+    }
+
+    private static byte[] referenceCrop(
+            byte[] nv21, int srcWidth, int left, int top, int width, int height) {
+        int srcHeight = HEIGHT;
+        byte[] out = new byte[Nv21Converter.getFrameSize(width, height)];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                out[y * width + x] = nv21[(top + y) * srcWidth + left + x];
+            }
+        }
+        int srcChroma = srcWidth * srcHeight;
+        int dstChroma = width * height;
+        int srcStride = 2 * ((srcWidth + 1) / 2);
+        int dstStride = 2 * ((width + 1) / 2);
+        for (int y = 0; y < (height + 1) / 2; y++) {
+            for (int x = 0; x < (width + 1) / 2; x++) {
+                int src = srcChroma + (top / 2 + y) * srcStride + 2 * (left / 2 + x);
+                int dst = dstChroma + y * dstStride + 2 * x;
+                out[dst] = nv21[src];
+                out[dst + 1] = nv21[src + 1];
+            }
+        }
+        return out;
+    }
+
+    private static byte[] randomFrame(int width, int height, long seed) {
+        byte[] frame = new byte[Nv21Converter.getFrameSize(width, height)];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+}
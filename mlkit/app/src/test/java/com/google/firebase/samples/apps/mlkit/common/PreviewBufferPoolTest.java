@@ -0,0 +1,99 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreviewBufferPoolTest {
+
+    private static final int FRAME_SIZE = 64;
+
+    @Test
+    public void deliveredBufferMapsBackToItsSlot() {
+        PreviewBufferPool pool = new PreviewBufferPool(4, FRAME_SIZE);
+
+        // Deliver the buffers out of order, as the camera may.
+        for (int i = pool.getDepth() - 1; i >= 0; i--) {
+            PreviewBufferPool.Slot slot = pool.onFrameDelivered(bufferOf(pool, i));
+            assertEquals(i, slot.getIndex());
+            assertSame(slot, pool.onFrameDelivered(bufferOf(pool, i)));
+        }
+        assertEquals(8, pool.getDeliveredCount());
+        assertEquals(0, pool.getDroppedCount());
+    }
+
+    @Test
+    public void slotBufferHoldsOnlyTheFrame() {
+        PreviewBufferPool pool = new PreviewBufferPool(2, FRAME_SIZE);
+
+        PreviewBufferPool.Slot slot = pool.onFrameDelivered(bufferOf(pool, 1));
+
+        assertEquals(FRAME_SIZE, slot.getBuffer().capacity());
+        assertEquals(FRAME_SIZE, slot.getBuffer().remaining());
+        // The trailing tag byte stays out of reach of the processors.
+        assertEquals(FRAME_SIZE + 1, slot.getBuffer().array().length);
+    }
+
+    @Test
+    public void foreignBuffersAreDropped() {
+        PreviewBufferPool pool = new PreviewBufferPool(2, FRAME_SIZE);
+        PreviewBufferPool other = new PreviewBufferPool(2, FRAME_SIZE);
+
+        // Same size and tag byte as a buffer of the pool, but another array.
+        assertNull(pool.onFrameDelivered(bufferOf(other, 0)));
+        // A buffer of the wrong size, e.g. one left over from a previous preview size.
+        assertNull(pool.onFrameDelivered(new byte[FRAME_SIZE / 2]));
+        assertNull(pool.onFrameDelivered(new byte[0]));
+
+        assertEquals(3, pool.getDeliveredCount());
+        assertEquals(3, pool.getDroppedCount());
+    }
+
+    @Test
+    public void releasedFramesAreCounted() {
+        PreviewBufferPool pool = new PreviewBufferPool(3, FRAME_SIZE);
+        PreviewBufferPool.Slot processed = pool.onFrameDelivered(bufferOf(pool, 0));
+        PreviewBufferPool.Slot skipped = pool.onFrameDelivered(bufferOf(pool, 1));
+
+        // Without a camera attached the buffers have nowhere to go, which must not fail.
+        pool.recycle(processed);
+        pool.drop(skipped);
+
+        assertEquals(2, pool.getDeliveredCount());
+        assertEquals(1, pool.getRecycledCount());
+        assertEquals(1, pool.getDroppedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSingleBuffer() {
+        new PreviewBufferPool(1, FRAME_SIZE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDepthBeyondTagRange() {
+        new PreviewBufferPool(128, FRAME_SIZE);
+    }
+
+    // The array the camera hands back for the buffer of the slot with index.
+    private static byte[] bufferOf(PreviewBufferPool pool, int index) {
+        return pool.getSlot(index).getBuffer().array();
+    }
+}
@@ -0,0 +1,156 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ReplayFrameSourceTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int FRAME_COUNT = 20;
+
+    /** Detector stand-in that records the first byte and metadata of every frame. */
+    private static class FakeDetector implements VisionImageProcessor {
+        final List<Integer> firstBytes = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<FrameMetadata> metadata =
+                Collections.synchronizedList(new ArrayList<FrameMetadata>());
+        volatile boolean stopped;
+
+        @Override
+        public void process(ByteBuffer data, FrameMetadata frameMetadata,
+                            GraphicOverlay graphicOverlay) {
+            assertEquals(Nv21Converter.getFrameSize(WIDTH, HEIGHT), data.remaining());
+            firstBytes.add((int) data.get(0));
+            metadata.add(frameMetadata);
+        }
+
+        @Override
+        public void process(Bitmap bitmap, GraphicOverlay graphicOverlay) {
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+
+    @Test
+    public void deliversEveryFrameInOrder() throws Exception {
+        File file = writeRecording(FRAME_COUNT);
+        FakeDetector detector = new FakeDetector();
+        ReplayFrameSource source =
+                new ReplayFrameSource(file, null, ReplayFrameSource.AS_FAST_AS_POSSIBLE);
+        source.setMachineLearningFrameProcessor(detector);
+        source.start();
+        source.awaitCompletion();
+
+        assertEquals(FRAME_COUNT, source.getFrameCount());
+        assertEquals(FRAME_COUNT, source.getDeliveredCount());
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            assertEquals(i, (int) detector.firstBytes.get(i));
+            FrameMetadata metadata = detector.metadata.get(i);
+            assertEquals(WIDTH, metadata.getWidth());
+            assertEquals(HEIGHT, metadata.getHeight());
+            assertEquals(i % 4, metadata.getRotation());
+            // Numbered and timed on delivery, like camera frames.
+            assertEquals(i, metadata.getSequenceNumber());
+            assertTrue(metadata.getCaptureTimeNanos() != 0);
+            if (i > 0) {
+                assertTrue(metadata.getCaptureTimeNanos()
+                        >= detector.metadata.get(i - 1).getCaptureTimeNanos());
+            }
+        }
+
+        source.release();
+        assertTrue(detector.stopped);
+        file.delete();
+    }
+
+    @Test
+    public void pacesFramesAtTheRequestedRate() throws Exception {
+        File file = writeRecording(FRAME_COUNT);
+        FakeDetector detector = new FakeDetector();
+        ReplayFrameSource source = new ReplayFrameSource(file, null, 200);
+        source.setMachineLearningFrameProcessor(detector);
+
+        long start = System.nanoTime();
+        source.start();
+        source.awaitCompletion();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 20 frames at 200 fps are 19 intervals of 5 ms.
+        assertTrue("Replay took " + elapsedMillis + " ms", elapsedMillis >= 90);
+        assertEquals(FRAME_COUNT, detector.firstBytes.size());
+        file.delete();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedRecording() throws Exception {
+        File file = writeRecording(2);
+        try {
+            FileOutputStream truncate = new FileOutputStream(file, true);
+            truncate.getChannel().truncate(file.length() - 10);
+            truncate.close();
+            new ReplayFrameSource(file, null, ReplayFrameSource.AS_FAST_AS_POSSIBLE).start();
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static File writeRecording(int frameCount) throws IOException {
+        int frameSize = Nv21Converter.getFrameSize(WIDTH, HEIGHT);
+        ByteBuffer buffer =
+                ByteBuffer.allocate(
+                        FrameFileFormat.FILE_HEADER_SIZE
+                                + frameCount * (FrameFileFormat.RECORD_HEADER_SIZE + frameSize));
+        FrameFileFormat.writeFileHeader(buffer);
+        for (int i = 0; i < frameCount; i++) {
+            FrameMetadata metadata =
+                    new FrameMetadata.Builder()
+                            .setWidth(WIDTH)
+                            .setHeight(HEIGHT)
+                            .setRotation(i % 4)
+                            .build();
+            FrameFileFormat.writeRecordHeader(buffer, frameSize, metadata, i * 33_000_000L);
+            byte[] frame = new byte[frameSize];
+            frame[0] = (byte) i;
+            buffer.put(frame);
+        }
+        buffer.flip();
+
+        File file = File.createTempFile("frames", ".nv21");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.getChannel().write(buffer);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
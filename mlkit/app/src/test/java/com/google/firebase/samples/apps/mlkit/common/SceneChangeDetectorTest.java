@@ -0,0 +1,92 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class SceneChangeDetectorTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final long REFRESH_NANOS = 1_000_000_000L;
+
+    @Test
+    public void sensorNoiseDoesNotCountAsChange() {
+        SceneChangeDetector detector = new SceneChangeDetector(4f, REFRESH_NANOS);
+        byte[] scene = scene(1);
+
+        assertTrue(detector.hasChanged(ByteBuffer.wrap(scene), WIDTH, HEIGHT, 0));
+        assertFalse(detector.hasChanged(noisy(scene, 2), WIDTH, HEIGHT, 1000));
+        assertFalse(detector.hasChanged(noisy(scene, 3), WIDTH, HEIGHT, 2000));
+        assertEquals(1, detector.getChangedCount());
+        assertEquals(2, detector.getUnchangedCount());
+    }
+
+    @Test
+    public void newSceneCountsAsChange() {
+        SceneChangeDetector detector = new SceneChangeDetector(4f, REFRESH_NANOS);
+
+        assertTrue(detector.hasChanged(ByteBuffer.wrap(scene(1)), WIDTH, HEIGHT, 0));
+        assertTrue(detector.hasChanged(ByteBuffer.wrap(scene(2)), WIDTH, HEIGHT, 1000));
+        // The new scene is now the reference.
+        assertFalse(detector.hasChanged(ByteBuffer.wrap(scene(2)), WIDTH, HEIGHT, 2000));
+    }
+
+    @Test
+    public void refreshIntervalForcesChange() {
+        SceneChangeDetector detector = new SceneChangeDetector(4f, REFRESH_NANOS);
+        ByteBuffer scene = ByteBuffer.wrap(scene(1));
+
+        assertTrue(detector.hasChanged(scene, WIDTH, HEIGHT, 0));
+        assertFalse(detector.hasChanged(scene, WIDTH, HEIGHT, REFRESH_NANOS - 1));
+        assertTrue(detector.hasChanged(scene, WIDTH, HEIGHT, REFRESH_NANOS));
+
+        detector.reset();
+        assertTrue(detector.hasChanged(scene, WIDTH, HEIGHT, REFRESH_NANOS + 1));
+    }
+
+    // Random blocks of grey, so that different seeds give clearly different signatures.
+    private static byte[] scene(long seed) {
+        byte[] frame = new byte[Nv21Converter.getFrameSize(WIDTH, HEIGHT)];
+        Arrays.fill(frame, (byte) 128);
+        Random random = new Random(seed);
+        for (int block = 0; block < 40; block++) {
+            int left = random.nextInt(WIDTH - 40);
+            int top = random.nextInt(HEIGHT - 40);
+            byte luma = (byte) random.nextInt(256);
+            for (int y = top; y < top + 40; y++) {
+                Arrays.fill(frame, y * WIDTH + left, y * WIDTH + left + 40, luma);
+            }
+        }
+        return frame;
+    }
+
+    private static ByteBuffer noisy(byte[] frame, long seed) {
+        byte[] copy = frame.clone();
+        Random random = new Random(seed);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            int value = (copy[i] & 0xff) + random.nextInt(7) - 3;
+            copy[i] = (byte) Math.max(0, Math.min(255, value));
+        }
+        return ByteBuffer.wrap(copy);
+    }
+}
@@ -0,0 +1,201 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FramePipelineTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final RecordingListener listener = new RecordingListener();
+
+    /** Three sleeping stages, the slowest 30 ms: frames overlap, so about 33 fps come out. */
+    @Test
+    public void overlappingStagesRunAtSlowestStageRate() throws Exception {
+        FramePipeline<Integer> pipeline = new FramePipeline<>(
+                Arrays.asList(sleeping("convert", 10), sleeping("detect", 30),
+                        sleeping("render", 10)),
+                1,
+                listener);
+        pipeline.start();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500);
+        int frame = 0;
+        while (System.nanoTime() < deadline) {
+            // A 100 fps camera; refused frames are simply dropped.
+            pipeline.submit(frame++);
+            Thread.sleep(10);
+        }
+        pipeline.stop();
+
+        double fps = pipeline.getThroughputFps();
+        System.out.println(String.format(
+                "Sleeping stages 10/30/10 ms: %.1f fps, %d of %d frames refused",
+                fps, pipeline.getRefusedCount(), frame));
+        // One stage at a time would only reach 1000 / 50 = 20 fps.
+        assertTrue("fps " + fps, fps > 27 && fps < 34);
+        assertTrue(pipeline.getRefusedCount() > 0);
+        assertEquals(pipeline.getSubmittedCount(), listener.done.size());
+        assertEquals(0, listener.failures.get());
+    }
+
+    @Test
+    public void submitRefusesWithoutBlockingWhenFull() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        FramePipeline<Integer> pipeline = new FramePipeline<>(
+                Arrays.<FramePipeline.Stage<Integer>>asList(new NamedStage("blocked") {
+                    @Override
+                    public boolean process(Integer frame) throws InterruptedException {
+                        entered.countDown();
+                        release.await();
+                        return true;
+                    }
+                }),
+                1,
+                listener);
+        pipeline.start();
+
+        assertTrue(pipeline.submit(1));
+        assertTrue(entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // The stage holds frame 1, the queue frame 2.
+        assertTrue(pipeline.submit(2));
+        long start = System.nanoTime();
+        assertFalse(pipeline.submit(3));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, pipeline.getRefusedCount());
+
+        release.countDown();
+        pipeline.stop();
+        assertEquals(2, listener.done.size());
+    }
+
+    /** Stopping interrupts stages mid-wait; their frames are handed back, not reported failed. */
+    @Test
+    public void stopHandsBackEveryFrameWithoutFailures() throws Exception {
+        FramePipeline<Integer> pipeline = new FramePipeline<>(
+                Arrays.asList(sleeping("first", 5), sleeping("stuck", 60000)),
+                2,
+                listener);
+        pipeline.start();
+        // Room for all four: one stuck, two queued in front of it, one in the first stage.
+        for (int frame = 0; frame < 4; frame++) {
+            while (!pipeline.submit(frame)) {
+                Thread.sleep(1);
+            }
+        }
+        Thread.sleep(100);
+
+        long start = System.nanoTime();
+        pipeline.stop();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS));
+
+        assertEquals(4, listener.done.size());
+        assertEquals(4, listener.distinctDone());
+        assertEquals(0, listener.failures.get());
+        assertEquals(0, pipeline.getCompletedCount());
+        assertFalse(pipeline.submit(5));
+    }
+
+    @Test
+    public void failedStageReportsAndSkipsRest() throws Exception {
+        final AtomicInteger reachedSecond = new AtomicInteger();
+        FramePipeline<Integer> pipeline = new FramePipeline<>(
+                Arrays.<FramePipeline.Stage<Integer>>asList(
+                        new NamedStage("throws") {
+                            @Override
+                            public boolean process(Integer frame) throws Exception {
+                                throw new IllegalStateException("detector failed");
+                            }
+                        },
+                        new NamedStage("second") {
+                            @Override
+                            public boolean process(Integer frame) {
+                                reachedSecond.incrementAndGet();
+                                return true;
+                            }
+                        }),
+                1,
+                listener);
+        pipeline.start();
+        assertTrue(pipeline.submit(1));
+        listener.awaitDone(1);
+        pipeline.stop();
+
+        assertEquals(1, listener.failures.get());
+        assertEquals(0, reachedSecond.get());
+    }
+
+    private static FramePipeline.Stage<Integer> sleeping(String name, final long millis) {
+        return new NamedStage(name) {
+            @Override
+            public boolean process(Integer frame) throws InterruptedException {
+                Thread.sleep(millis);
+                return true;
+            }
+        };
+    }
+
+    private abstract static class NamedStage implements FramePipeline.Stage<Integer> {
+        private final String name;
+
+        NamedStage(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static class RecordingListener implements FramePipeline.Listener<Integer> {
+        final List<Integer> done = new ArrayList<>();
+        final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public synchronized void onFrameDone(Integer frame) {
+            done.add(frame);
+            notifyAll();
+        }
+
+        @Override
+        public void onStageFailed(Integer frame, Exception e) {
+            failures.incrementAndGet();
+        }
+
+        synchronized int distinctDone() {
+            return new java.util.HashSet<>(done).size();
+        }
+
+        synchronized void awaitDone(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (done.size() < count && System.nanoTime() < deadline) {
+                wait(100);
+            }
+        }
+    }
+}
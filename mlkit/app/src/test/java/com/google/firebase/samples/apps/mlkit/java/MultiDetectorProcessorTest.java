@@ -0,0 +1,196 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.RegionOfInterest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class MultiDetectorProcessorTest {
+
+    /** Detector stand-in that logs its callbacks and draws like a processor showing alone. */
+    private static class FakeDetector extends VisionProcessorBase<String> {
+        final List<String> calls = new ArrayList<>();
+        final Task<String> result;
+        FakeGraphic graphic;
+
+        FakeDetector(Task<String> result) {
+            this.result = result;
+        }
+
+        @Override
+        protected Task<String> detectInImage(FirebaseVisionImage image) {
+            calls.add("detect");
+            return result;
+        }
+
+        @Override
+        protected void onPostProcess(@NonNull String results, @NonNull FrameMetadata metadata) {
+            calls.add("post " + results);
+        }
+
+        @Override
+        protected void onSuccess(
+                @Nullable Bitmap originalCameraImage,
+                @NonNull String results,
+                @NonNull FrameMetadata frameMetadata,
+                @NonNull GraphicOverlay graphicOverlay) {
+            calls.add("success " + results);
+            graphicOverlay.clear();
+            graphic = new FakeGraphic(graphicOverlay);
+            graphicOverlay.add(graphic);
+            graphicOverlay.postInvalidate();
+        }
+
+        @Override
+        protected void onResultsReused(
+                @Nullable Bitmap originalCameraImage,
+                @NonNull String results,
+                @NonNull FrameMetadata frameMetadata,
+                @NonNull GraphicOverlay graphicOverlay) {
+            calls.add("reused " + results);
+        }
+
+        @Override
+        protected void onFailure(@NonNull Exception e) {
+            calls.add("failure " + e.getMessage());
+        }
+    }
+
+    private static class FakeGraphic extends GraphicOverlay.Graphic {
+        boolean released;
+
+        FakeGraphic(GraphicOverlay overlay) {
+            super(overlay);
+        }
+
+        @Override
+        public void draw(Canvas canvas) {}
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    private final FakeDetector text = new FakeDetector(Tasks.forResult("text"));
+    private final FakeDetector barcode = new FakeDetector(Tasks.forResult("barcode"));
+    private final MultiDetectorProcessor processor = new MultiDetectorProcessor(text, barcode);
+    private final GraphicOverlay overlay =
+            new GraphicOverlay(RuntimeEnvironment.application, null);
+    private final FrameMetadata metadata =
+            new FrameMetadata.Builder().setWidth(640).setHeight(480).build();
+
+    @Test
+    public void startsEveryDetectorOnTheFrame() {
+        processor.detectInImage(null);
+
+        assertEquals(Arrays.asList("detect"), text.calls);
+        assertEquals(Arrays.asList("detect"), barcode.calls);
+    }
+
+    @Test
+    public void handsEachDetectorItsOwnResults() {
+        List<Task<?>> results = results(text.result, barcode.result);
+
+        processor.onPostProcess(results, metadata);
+        processor.onSuccess(null, results, metadata, overlay);
+
+        assertEquals(Arrays.asList("post text", "success text"), text.calls);
+        assertEquals(Arrays.asList("post barcode", "success barcode"), barcode.calls);
+    }
+
+    @Test
+    public void failureOfOneDetectorLeavesOthersAlone() {
+        List<Task<?>> results =
+                results(Tasks.<String>forException(new Exception("no text")), barcode.result);
+
+        processor.onPostProcess(results, metadata);
+        processor.onSuccess(null, results, metadata, overlay);
+
+        assertEquals(Arrays.asList("failure no text"), text.calls);
+        assertEquals(Arrays.asList("post barcode", "success barcode"), barcode.calls);
+    }
+
+    @Test
+    public void drawsEveryDetectorInOneRedraw() {
+        long before = overlay.getInvalidationCount();
+
+        processor.onSuccess(null, results(text.result, barcode.result), metadata, overlay);
+
+        assertEquals(before + 1, overlay.getInvalidationCount());
+        // The barcode detector clearing the overlay kept what the text detector drew.
+        assertFalse(text.graphic.released);
+        assertFalse(barcode.graphic.released);
+    }
+
+    @Test
+    public void reusedResultsAreNotDeliveredAsNew() {
+        processor.onResultsReused(null, results(text.result, barcode.result), metadata, overlay);
+
+        assertEquals(Arrays.asList("reused text"), text.calls);
+        assertEquals(Arrays.asList("reused barcode"), barcode.calls);
+    }
+
+    @Test
+    public void detectsOnTheRegionsOfTheDetectors() {
+        assertNull(processor.getRegionOfInterest());
+
+        text.setRegionOfInterest(RegionOfInterest.of(0.1f, 0.2f, 0.5f, 0.6f));
+        assertEquals(RegionOfInterest.of(0.1f, 0.2f, 0.5f, 0.6f), processor.getRegionOfInterest());
+
+        barcode.setRegionOfInterest(RegionOfInterest.of(0.4f, 0.1f, 0.7f, 0.3f));
+        assertEquals(RegionOfInterest.of(0.1f, 0.1f, 0.7f, 0.6f), processor.getRegionOfInterest());
+    }
+
+    @Test
+    public void ownRegionTakesPrecedence() {
+        text.setRegionOfInterest(RegionOfInterest.of(0.1f, 0.2f, 0.5f, 0.6f));
+        processor.setRegionOfInterest(RegionOfInterest.FULL_FRAME);
+
+        assertEquals(RegionOfInterest.FULL_FRAME, processor.getRegionOfInterest());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsADetector() {
+        new MultiDetectorProcessor();
+    }
+
+    private static List<Task<?>> results(Task<?>... tasks) {
+        return new ArrayList<>(Arrays.asList(tasks));
+    }
+}
@@ -0,0 +1,110 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Bitmap;
+import android.hardware.Camera.CameraInfo;
+
+import com.google.firebase.samples.apps.mlkit.common.BitmapPool;
+import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.Nv21Converter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.ByteBuffer;
+
+@RunWith(RobolectricTestRunner.class)
+public class RetainedFrameTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static FrameMetadata metadata(int width, int height, int rotation) {
+        return new FrameMetadata.Builder()
+                .setWidth(width)
+                .setHeight(height)
+                .setRotation(rotation)
+                .setCameraFacing(CameraInfo.CAMERA_FACING_BACK)
+                .build();
+    }
+
+    private static ByteBuffer frame(int width, int height) {
+        return ByteBuffer.wrap(new byte[Nv21Converter.getFrameSize(width, height)]);
+    }
+
+    @Test
+    public void noBitmapWithoutRetainedFrame() {
+        RetainedFrame frame = new RetainedFrame();
+        assertNull(frame.toBitmap());
+
+        frame.retain(frame(WIDTH, HEIGHT), metadata(WIDTH, HEIGHT, 0));
+        frame.clear();
+
+        assertNull(frame.toBitmap());
+    }
+
+    @Test
+    public void retainCopiesTheFrame() {
+        RetainedFrame frame = new RetainedFrame();
+        ByteBuffer source = frame(WIDTH, HEIGHT);
+        source.position(10);
+
+        frame.retain(source, metadata(WIDTH, HEIGHT, 1));
+        assertEquals(10, source.position());
+        // The camera may reuse the buffer as soon as retain returns.
+        source.limit(0);
+
+        Bitmap bitmap = frame.toBitmap();
+        assertNotNull(bitmap);
+        assertEquals(HEIGHT, bitmap.getWidth());
+        assertEquals(WIDTH, bitmap.getHeight());
+        BitmapPool.getInstance().release(bitmap);
+    }
+
+    @Test
+    public void everyBitmapBelongsToItsCaller() {
+        RetainedFrame frame = new RetainedFrame();
+        frame.retain(frame(WIDTH, HEIGHT), metadata(WIDTH, HEIGHT, 0));
+
+        Bitmap first = frame.toBitmap();
+        Bitmap second = frame.toBitmap();
+        // The retained frame keeps no bitmap; each call takes one from the pool for the caller.
+        assertNotSame(first, second);
+
+        BitmapPool.getInstance().release(first);
+        assertSame(first, frame.toBitmap());
+        BitmapPool.getInstance().release(second);
+    }
+
+    @Test
+    public void laterFrameReplacesRetainedOne() {
+        RetainedFrame frame = new RetainedFrame();
+        frame.retain(frame(WIDTH / 2, HEIGHT / 2), metadata(WIDTH / 2, HEIGHT / 2, 0));
+        frame.retain(frame(WIDTH, HEIGHT), metadata(WIDTH, HEIGHT, 0));
+
+        Bitmap bitmap = frame.toBitmap();
+
+        assertEquals(WIDTH, bitmap.getWidth());
+        assertEquals(HEIGHT, bitmap.getHeight());
+        BitmapPool.getInstance().release(bitmap);
+    }
+}
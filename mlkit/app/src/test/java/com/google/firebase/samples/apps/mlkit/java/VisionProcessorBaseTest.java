@@ -0,0 +1,150 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.samples.apps.mlkit.common.FrameMetadata;
+import com.google.firebase.samples.apps.mlkit.common.GraphicOverlay;
+import com.google.firebase.samples.apps.mlkit.common.LatencyHistogram;
+import com.google.firebase.samples.apps.mlkit.common.StageLatencies.Stage;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class VisionProcessorBaseTest {
+
+    private static final long CAPTURE_AGE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /** Processor that only records the results delivered to it. */
+    private static class RecordingProcessor extends VisionProcessorBase<String> {
+        final List<String> shown = new ArrayList<>();
+
+        @Override
+        protected Task<String> detectInImage(FirebaseVisionImage image) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void onSuccess(
+                @Nullable Bitmap originalCameraImage,
+                @NonNull String results,
+                @NonNull FrameMetadata frameMetadata,
+                @NonNull GraphicOverlay graphicOverlay) {
+            shown.add(results);
+            graphicOverlay.postInvalidate();
+        }
+
+        @Override
+        protected void onFailure(@NonNull Exception e) {}
+    }
+
+    /** Overlay that draws when told to, as the UI thread would after an invalidation. */
+    private static class DrawingOverlay extends GraphicOverlay {
+        DrawingOverlay() {
+            super(RuntimeEnvironment.application, null);
+        }
+
+        void drawNow() {
+            onDraw(new Canvas());
+        }
+    }
+
+    private final RecordingProcessor processor = new RecordingProcessor();
+    private final DrawingOverlay overlay = new DrawingOverlay();
+
+    @Test
+    public void dropsResultsOlderThanThoseShown() {
+        processor.getStageLatencies().reset();
+
+        for (long sequence : new long[] {1, 3, 2, 4, 0, 5}) {
+            deliver(sequence);
+        }
+
+        assertEquals(Arrays.asList("1", "3", "4", "5"), processor.shown);
+        assertEquals(2, processor.getStaleResultCount());
+    }
+
+    @Test
+    public void recordsEndToEndLatencyOfShownResultsOnly() {
+        processor.getStageLatencies().reset();
+        LatencyHistogram endToEnd = processor.getStageLatencies().get(Stage.END_TO_END);
+
+        deliver(2);
+        overlay.drawNow();
+        assertEquals(1, endToEnd.getCount());
+        assertTrue(endToEnd.getMaxMicros() >= TimeUnit.NANOSECONDS.toMicros(CAPTURE_AGE_NANOS));
+
+        // Dropped results leave the overlay, and so the latency, alone.
+        deliver(1);
+        overlay.drawNow();
+        assertEquals(1, endToEnd.getCount());
+
+        deliver(3);
+        overlay.drawNow();
+        // A redraw without new results is not a new sample.
+        overlay.drawNow();
+        assertEquals(2, endToEnd.getCount());
+        assertEquals(3, overlay.getFrameSequenceNumber());
+    }
+
+    @Test
+    public void deliversResultsWithoutSequenceNumbers() {
+        deliver(7);
+        deliver(FrameMetadata.NO_SEQUENCE_NUMBER);
+        deliver(FrameMetadata.NO_SEQUENCE_NUMBER);
+
+        assertEquals(Arrays.asList("7", "-1", "-1"), processor.shown);
+        assertEquals(0, processor.getStaleResultCount());
+    }
+
+    @Test
+    public void stopLetsTheNextSourceStartOver() {
+        deliver(7);
+        processor.stop();
+        deliver(0);
+
+        assertEquals(Arrays.asList("7", "0"), processor.shown);
+        assertEquals(0, processor.getStaleResultCount());
+    }
+
+    // Delivers the results of the frame numbered sequence, captured a little while ago.
+    private void deliver(long sequence) {
+        FrameMetadata metadata = new FrameMetadata.Builder()
+                .setWidth(640)
+                .setHeight(480)
+                .setSequenceNumber(sequence)
+                .setCaptureTimeNanos(System.nanoTime() - CAPTURE_AGE_NANOS)
+                .build();
+        processor.deliverResults(null /* bitmap */, String.valueOf(sequence), false /* reused */,
+                metadata, overlay, 0);
+    }
+}
@@ -0,0 +1,127 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AmountParserTest {
+
+    private static final long NONE = AmountParser.NOT_AN_AMOUNT;
+
+    @Test
+    public void readsPlainAndSymbolAmounts() {
+        assertEquals(1250, AmountParser.parse("12.50"));
+        assertEquals(1250, AmountParser.parse("$12.50"));
+        assertEquals(1250, AmountParser.parse("  $ 12.5 "));
+        assertEquals(399, AmountParser.parse("\u20AC3,99"));
+        assertEquals(1200, AmountParser.parse("12"));
+        assertEquals(105, AmountParser.parse("1. 05"));
+    }
+
+    @Test
+    public void readsThousandsSeparators() {
+        assertEquals(123456, AmountParser.parse("1,234.56"));
+        assertEquals(123456, AmountParser.parse("1.234,56"));
+        assertEquals(123456789, AmountParser.parse("1,234,567.89"));
+        assertEquals(123400, AmountParser.parse("1,234"));
+    }
+
+    @Test
+    public void readsCredits() {
+        assertEquals(-499, AmountParser.parse("4.99-"));
+        assertEquals(-499, AmountParser.parse("4.99 CR"));
+        assertEquals(-499, AmountParser.parse("4.99cr"));
+        assertEquals(-500, AmountParser.parse("-$5.00"));
+        assertEquals(-500, AmountParser.parse("$-5.00"));
+    }
+
+    @Test
+    public void readsLettersMistakenForDigits() {
+        assertEquals(1000, AmountParser.parse("1O.OO"));
+        assertEquals(1250, AmountParser.parse("l2.S0"));
+        assertEquals(1105, AmountParser.parse("$I1.o5"));
+    }
+
+    @Test
+    public void rejectsWhatIsNotAnAmount() {
+        assertEquals(NONE, AmountParser.parse(""));
+        assertEquals(NONE, AmountParser.parse("$"));
+        assertEquals(NONE, AmountParser.parse("TOTAL"));
+        // Only letters, even if each could be a digit.
+        assertEquals(NONE, AmountParser.parse("SOS"));
+        assertEquals(NONE, AmountParser.parse("12.50 EA"));
+        assertEquals(NONE, AmountParser.parse("12..50"));
+        assertEquals(NONE, AmountParser.parse("12.50."));
+        assertEquals(NONE, AmountParser.parse("1,23,456"));
+        assertEquals(NONE, AmountParser.parse("1234,567"));
+        assertEquals(NONE, AmountParser.parse("1,234.567"));
+        assertEquals(NONE, AmountParser.parse("--5.00"));
+        assertEquals(NONE, AmountParser.parse("12345678901234567"));
+    }
+
+    @Test
+    public void parsesRangeOfLine() {
+        String line = "TOTAL 1,234.56 CAD";
+        assertEquals(123456, AmountParser.parse(line, 6, 14));
+        assertEquals(NONE, AmountParser.parse("12", 0, 2, true /* requireDecimals */));
+        assertEquals(1200, AmountParser.parse("12.00", 0, 5, true /* requireDecimals */));
+    }
+
+    /** Reads a mix of receipt text the way processText used to, then with the parser. */
+    @Test
+    public void parsesFasterThanReplaceAndParseFloat() {
+        String[] texts = {"$12.50", "3,99", "TOTAL", "1. 05", "QTY", "0.65", "THANK YOU", "$7.25"};
+        int rounds = 200000;
+
+        long replaceNanos = 0;
+        long parserNanos = 0;
+        long replaceSum = 0;
+        long parserSum = 0;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            replaceSum = 0;
+            parserSum = 0;
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (String text : texts) {
+                    String raw = text.replace("$", "").replace(" ", "").replace(",", ".");
+                    try {
+                        replaceSum += Math.round(Float.parseFloat(raw) * 100);
+                    } catch (NumberFormatException e) {
+                        // Not an amount.
+                    }
+                }
+            }
+            replaceNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (String text : texts) {
+                    long cents = AmountParser.parse(text);
+                    if (cents != NONE) {
+                        parserSum += cents;
+                    }
+                }
+            }
+            parserNanos = System.nanoTime() - start;
+        }
+        System.out.println(String.format("Per text: replace and parseFloat %.0f ns, parser %.0f ns",
+                (double) replaceNanos / rounds / texts.length,
+                (double) parserNanos / rounds / texts.length));
+        assertEquals(replaceSum, parserSum);
+        assertTrue(parserNanos < replaceNanos);
+    }
+}
@@ -0,0 +1,126 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class CentsHistogramTest {
+
+    private final CentsHistogram histogram = new CentsHistogram();
+
+    @Test
+    public void addsWeightsPerAmount() {
+        histogram.add(1230, 1f);
+        histogram.add(1230, 1f);
+        histogram.add(-45, 0.5f);
+
+        assertEquals(2, histogram.size());
+        assertEquals(2f, histogram.get(1230), 0f);
+        assertEquals(0.5f, histogram.get(-45), 0f);
+        assertEquals(0f, histogram.get(1231), 0f);
+        assertEquals(1230, histogram.argmax());
+        assertEquals(0.5f, histogram.maxWeightExcept(1230), 0f);
+        assertEquals(2.5f, histogram.totalWeight(), 1e-6f);
+    }
+
+    @Test
+    public void decayDropsLightEntries() {
+        histogram.add(100, 1f);
+        histogram.add(200, 0.1f);
+        histogram.decay(0.5f, 0.1f);
+
+        assertEquals(1, histogram.size());
+        assertEquals(0.5f, histogram.get(100), 1e-6f);
+        assertEquals(0f, histogram.get(200), 0f);
+    }
+
+    @Test
+    public void emptyHistogramHasNoArgmax() {
+        assertEquals(CentsHistogram.EMPTY, histogram.argmax());
+        histogram.add(5, 1f);
+        histogram.clear();
+        assertEquals(CentsHistogram.EMPTY, histogram.argmax());
+        assertEquals(0, histogram.size());
+    }
+
+    @Test
+    public void matchesMapThroughGrowthAndRemovals() {
+        Random random = new Random(7);
+        Map<Long, Float> expected = new HashMap<>();
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 50; i++) {
+                // Few distinct amounts, many of them sharing probe runs.
+                long cents = random.nextInt(300) * 64L;
+                float weight = random.nextFloat();
+                histogram.add(cents, weight);
+                Float old = expected.get(cents);
+                expected.put(cents, old == null ? weight : old + weight);
+            }
+            histogram.decay(0.5f, 0.3f);
+            for (Long key : expected.keySet().toArray(new Long[0])) {
+                float decayed = expected.get(key) * 0.5f;
+                if (decayed < 0.3f) {
+                    expected.remove(key);
+                } else {
+                    expected.put(key, decayed);
+                }
+            }
+
+            assertEquals(expected.size(), histogram.size());
+            for (Map.Entry<Long, Float> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), histogram.get(entry.getKey()), 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void votingAllocatesNothingOnceWarm() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long thread = Thread.currentThread().getId();
+        FieldConsensus field = new FieldConsensus(1000, 0.3f, 5);
+        runVotes(field, 1000);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        runVotes(field, 10000);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        System.out.println("Allocated " + allocated + " bytes over 10000 voted frames");
+        // Leaves room for the allocation counter itself.
+        assertTrue(allocated < 1024);
+    }
+
+    private static void runVotes(FieldConsensus field, int frames) {
+        long timeNanos = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            timeNanos += 100000000L;
+            field.beginFrame(timeNanos);
+            field.vote(1456, 1f);
+            field.vote(frame % 3 == 0 ? 1458 : 1456, 1f);
+            field.endFrame();
+        }
+    }
+}
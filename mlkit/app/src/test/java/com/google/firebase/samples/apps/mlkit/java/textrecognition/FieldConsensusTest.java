@@ -0,0 +1,150 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class FieldConsensusTest {
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final FieldConsensus field = new FieldConsensus(1000, 0.3f, 5);
+    private long timeNanos;
+
+    @Test
+    public void becomesStableOnceAfterEnoughFrames() {
+        for (int frame = 1; frame < 5; frame++) {
+            assertFalse(readFrame(1456));
+            assertFalse(field.isStable());
+        }
+        assertTrue(readFrame(1456));
+        assertTrue(field.isStable());
+        assertFalse(readFrame(1456));
+        assertEquals(1456, field.getLeader());
+        assertEquals(1f, field.getConfidence(), 1e-6f);
+    }
+
+    @Test
+    public void misreadingsLowerConfidenceWithoutTakingOver() {
+        for (int frame = 0; frame < 10; frame++) {
+            readFrame(frame % 4 == 3 ? 1458 : 1456);
+        }
+        assertEquals(1456, field.getLeader());
+        assertTrue(field.isStable());
+        assertTrue(field.getConfidence() < 1f);
+        assertTrue(field.getConfidence() > 0.6f);
+    }
+
+    @Test
+    public void newReadingTakesOverOnceOldOnesDecay() {
+        for (int frame = 0; frame < 30; frame++) {
+            readFrame(1456);
+        }
+        assertTrue(field.isStable());
+
+        // Thirty frames of the old value are outweighed after a few of the new one.
+        int frames = 0;
+        while (field.getLeader() != 2210) {
+            readFrame(2210);
+            frames++;
+        }
+        assertFalse(field.isStable());
+        assertTrue(frames < 15);
+    }
+
+    @Test
+    public void framesWithoutReadingsKeepLeader() {
+        for (int frame = 0; frame < 5; frame++) {
+            readFrame(1456);
+        }
+        missFrame();
+
+        assertTrue(field.isStable());
+        assertEquals(1456, field.getLeader());
+    }
+
+    @Test
+    public void framesWithoutReadingsBreakTheRun() {
+        for (int frame = 0; frame < 4; frame++) {
+            assertFalse(readFrame(1456));
+        }
+        missFrame();
+
+        for (int frame = 1; frame < 5; frame++) {
+            assertFalse(readFrame(1456));
+            assertFalse(field.isStable());
+        }
+        assertTrue(readFrame(1456));
+        assertEquals(1456, field.getLeader());
+    }
+
+    @Test
+    public void fieldNeverSettlesWhenEveryOtherFrameMissesIt() {
+        for (int frame = 0; frame < 50; frame++) {
+            assertFalse(readFrame(1456));
+            missFrame();
+        }
+        assertFalse(field.isStable());
+        assertEquals(1456, field.getLeader());
+    }
+
+    @Test
+    public void resetForgetsVotes() {
+        for (int frame = 0; frame < 5; frame++) {
+            readFrame(1456);
+        }
+        field.reset();
+
+        assertEquals(FieldConsensus.NO_VALUE, field.getLeader());
+        assertFalse(field.isStable());
+        readFrame(99);
+        assertEquals(99, field.getLeader());
+    }
+
+    /** With a third of the frames misread at 10 results per second, the field settles in 1 s. */
+    @Test
+    public void settlesWithinASecondDespiteMisreadings() {
+        Random random = new Random(42);
+        long start = timeNanos;
+        boolean settled = false;
+        while (!settled) {
+            long value = random.nextInt(3) == 0 ? 1000 + random.nextInt(1000) : 1456;
+            settled = readFrame(value);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(timeNanos - start);
+        System.out.println("Settled on " + field.getLeader() + " after " + millis + " ms");
+        assertEquals(1456, field.getLeader());
+        assertTrue(millis <= 1000);
+    }
+
+    private boolean readFrame(long value) {
+        timeNanos += FRAME_NANOS;
+        field.beginFrame(timeNanos);
+        field.vote(value, 1f);
+        return field.endFrame();
+    }
+
+    private void missFrame() {
+        timeNanos += FRAME_NANOS;
+        field.beginFrame(timeNanos);
+        assertFalse(field.endFrame());
+    }
+}
@@ -0,0 +1,115 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ReceiptLineIndexTest {
+
+    private static final float TOLERANCE = 8;
+
+    private final ReceiptLineIndex index = new ReceiptLineIndex();
+
+    @Test
+    public void pairsLabelWithAmountOnItsRow() {
+        index.add(300, 95, 360, 115, 65);
+        int total = index.add(20, 200, 120, 220, ReceiptLineIndex.NO_AMOUNT);
+        int amount = index.add(300, 202, 370, 222, 1456);
+        index.add(300, 300, 360, 320, 91);
+        index.build();
+
+        assertEquals(amount, index.findAmountOnRow(total, TOLERANCE));
+    }
+
+    @Test
+    public void pairingDoesNotDependOnLineOrder() {
+        // The amount block comes before its label, as OCR often returns the right column first.
+        int amount = index.add(300, 202, 370, 222, 1456);
+        int total = index.add(20, 200, 120, 220, ReceiptLineIndex.NO_AMOUNT);
+        index.build();
+
+        assertEquals(amount, index.findAmountOnRow(total, TOLERANCE));
+    }
+
+    @Test
+    public void prefersClosestRowThenRightmostAmount() {
+        int label = index.add(20, 100, 120, 120, ReceiptLineIndex.NO_AMOUNT);
+        index.add(440, 106, 500, 126, 1200);
+        index.add(180, 101, 240, 121, 1300);
+        int rightmost = index.add(320, 101, 380, 121, 1400);
+        index.build();
+
+        assertEquals(rightmost, index.findAmountOnRow(label, TOLERANCE));
+        assertEquals(1400, index.getAmount(rightmost));
+    }
+
+    @Test
+    public void ignoresAmountsLeftOfLabelOrOffTheRow() {
+        int label = index.add(200, 100, 260, 120, ReceiptLineIndex.NO_AMOUNT);
+        index.add(20, 100, 80, 120, 500);
+        index.add(300, 130, 360, 150, 600);
+        index.add(300, 101, 360, 121, ReceiptLineIndex.NO_AMOUNT);
+        index.build();
+
+        assertEquals(ReceiptLineIndex.NONE, index.findAmountOnRow(label, TOLERANCE));
+    }
+
+    @Test
+    public void handlesLinesAboveTheFrame() {
+        int label = index.add(20, -30, 120, -10, ReceiptLineIndex.NO_AMOUNT);
+        index.add(300, 5, 360, 25, 100);
+        int amount = index.add(300, -28, 360, -8, 200);
+        index.build();
+
+        assertEquals(amount, index.findAmountOnRow(label, TOLERANCE));
+    }
+
+    @Test
+    public void pairsEveryRowOfLargeShuffledReceipt() {
+        int rows = 5000;
+        int[] labels = new int[rows];
+        int[] amounts = new int[rows];
+        // Add rows in a scrambled order, labels and amounts separately.
+        for (int i = 0; i < rows; i++) {
+            int row = (int) ((i * 7919L) % rows);
+            amounts[row] = index.add(300, row * 30, 360, row * 30 + 20, row);
+        }
+        for (int i = 0; i < rows; i++) {
+            int row = (int) ((i * 104729L) % rows);
+            labels[row] = index.add(20, row * 30 + 1, 120, row * 30 + 21,
+                    ReceiptLineIndex.NO_AMOUNT);
+        }
+        index.build();
+
+        for (int row = 0; row < rows; row++) {
+            int found = index.findAmountOnRow(labels[row], TOLERANCE);
+            assertEquals(amounts[row], found);
+            assertEquals(row, index.getAmount(found));
+        }
+    }
+
+    @Test
+    public void clearStartsNextFrame() {
+        index.add(300, 0, 360, 20, 100);
+        index.build();
+        index.clear();
+
+        int label = index.add(20, 0, 120, 20, ReceiptLineIndex.NO_AMOUNT);
+        index.build();
+        assertEquals(1, index.size());
+        assertEquals(ReceiptLineIndex.NONE, index.findAmountOnRow(label, TOLERANCE));
+    }
+}
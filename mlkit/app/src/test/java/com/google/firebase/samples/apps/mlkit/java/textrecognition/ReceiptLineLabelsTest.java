@@ -0,0 +1,65 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ReceiptLineLabelsTest {
+
+    private final ReceiptLineLexer.Tokens tokens = new ReceiptLineLexer.Tokens();
+
+    private int label(String line) {
+        ReceiptLineLexer.lex(line, tokens);
+        return ReceiptLineLabels.labelOf(line, tokens);
+    }
+
+    @Test
+    public void totalLabelsLineItStarts() {
+        assertEquals(ReceiptLineLabels.TOTAL, label("TOTAL $14.56"));
+        assertEquals(ReceiptLineLabels.TOTAL, label("Total"));
+        assertEquals(ReceiptLineLabels.TOTAL, label("  TOTAL 14.56"));
+    }
+
+    @Test
+    public void subtotalIsNotTheTotal() {
+        assertEquals(ReceiptLineLabels.NONE, label("SUB TOTAL 12.00"));
+        assertEquals(ReceiptLineLabels.NONE, label("SUBTOTAL 12.00"));
+        assertEquals(ReceiptLineLabels.NONE, label("Sub-Total 12.00"));
+        assertEquals(ReceiptLineLabels.NONE, label("GRAND TOTAL 14.56"));
+    }
+
+    @Test
+    public void taxRateLabelsTaxLine() {
+        assertEquals(ReceiptLineLabels.GST_RATE, label("GST 5% 0.60"));
+        assertEquals(ReceiptLineLabels.GST_RATE, label("5 % TAX 0.60"));
+        assertEquals(ReceiptLineLabels.PST_RATE, label("PST 7% 0.84"));
+        // The rate wins over the word.
+        assertEquals(ReceiptLineLabels.PST_RATE, label("GST/PST 7% 0.84"));
+    }
+
+    @Test
+    public void taxWordWithoutRate() {
+        assertEquals(ReceiptLineLabels.GST_WORD, label("GST 0.60"));
+        assertEquals(ReceiptLineLabels.GST_WORD, label("GST Reg # 123456789"));
+        assertEquals(ReceiptLineLabels.PST_WORD, label("PST"));
+    }
+
+    @Test
+    public void otherLinesLabelNothing() {
+        assertEquals(ReceiptLineLabels.NONE, label("BANANAS 1.29"));
+        assertEquals(ReceiptLineLabels.NONE, label(""));
+    }
+}
@@ -0,0 +1,240 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.firebase.samples.apps.mlkit.java.textrecognition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ReceiptLineLexerTest {
+
+    private final ReceiptLineLexer.Tokens tokens = new ReceiptLineLexer.Tokens();
+
+    @Test
+    public void findsTotalKeywordAndAmount() {
+        assertEquals(2, ReceiptLineLexer.lex("Total  $12.50", tokens));
+        assertToken(0, ReceiptLineLexer.KEYWORD, ReceiptLineLexer.KEYWORD_TOTAL);
+        assertToken(1, ReceiptLineLexer.AMOUNT, 1250);
+        assertEquals(7, tokens.getStart(1));
+        assertEquals(13, tokens.getEnd(1));
+    }
+
+    @Test
+    public void readsAmountsWithCommaOrSpacedDecimals() {
+        ReceiptLineLexer.lex("3,99", tokens);
+        assertToken(0, ReceiptLineLexer.AMOUNT, 399);
+        ReceiptLineLexer.lex("1. 05", tokens);
+        assertToken(0, ReceiptLineLexer.AMOUNT, 105);
+    }
+
+    @Test
+    public void readsThousandsCreditsAndMisreadDigits() {
+        ReceiptLineLexer.lex("SUBTOTAL 1,234.56", tokens);
+        assertToken(0, ReceiptLineLexer.AMOUNT, 123456);
+        ReceiptLineLexer.lex("COUPON 2.00- ", tokens);
+        assertToken(0, ReceiptLineLexer.AMOUNT, -200);
+        ReceiptLineLexer.lex("REFUND 4.99 CR", tokens);
+        assertToken(0, ReceiptLineLexer.AMOUNT, -499);
+        ReceiptLineLexer.lex("TOTAL 1O.OO", tokens);
+        assertToken(1, ReceiptLineLexer.AMOUNT, 1000);
+        assertEquals(0, ReceiptLineLexer.lex("3OZ BAG 12 EA", tokens));
+    }
+
+    @Test
+    public void readsAmountsStartingWithMisreadDigits() {
+        assertEquals(2, ReceiptLineLexer.lex("TOTAL l2.50", tokens));
+        assertToken(1, ReceiptLineLexer.AMOUNT, 1250);
+        assertEquals(6, tokens.getStart(1));
+        ReceiptLineLexer.lex("O.99", tokens);
+        assertToken(0, ReceiptLineLexer.AMOUNT, 99);
+        ReceiptLineLexer.lex("GST S.00", tokens);
+        assertToken(1, ReceiptLineLexer.AMOUNT, 500);
+        ReceiptLineLexer.lex("$l2.50", tokens);
+        assertToken(0, ReceiptLineLexer.AMOUNT, 1250);
+        ReceiptLineLexer.lex("Il.05 CR", tokens);
+        assertToken(0, ReceiptLineLexer.AMOUNT, -1105);
+    }
+
+    @Test
+    public void wordsOfMisreadableLettersStayWords() {
+        assertEquals(0, ReceiptLineLexer.lex("SOS Sold Oil Is. Soo", tokens));
+        assertEquals(1, ReceiptLineLexer.lex("Sept 5, 2019", tokens));
+        assertToken(0, ReceiptLineLexer.DATE, 20190905);
+        assertEquals(2, ReceiptLineLexer.lex("PST 7%", tokens));
+        assertToken(0, ReceiptLineLexer.KEYWORD, ReceiptLineLexer.KEYWORD_PST);
+    }
+
+    @Test
+    public void readsTaxRates() {
+        ReceiptLineLexer.lex("GST 5%", tokens);
+        assertToken(0, ReceiptLineLexer.KEYWORD, ReceiptLineLexer.KEYWORD_GST);
+        assertToken(1, ReceiptLineLexer.PERCENT, 500);
+        ReceiptLineLexer.lex("PST @ 7.00%", tokens);
+        assertToken(1, ReceiptLineLexer.PERCENT, 700);
+        ReceiptLineLexer.lex("5. 0 %", tokens);
+        assertToken(0, ReceiptLineLexer.PERCENT, 500);
+    }
+
+    @Test
+    public void readsDates() {
+        ReceiptLineLexer.lex("Jan 5, 2019 10:42", tokens);
+        assertToken(0, ReceiptLineLexer.DATE, 20190105);
+        ReceiptLineLexer.lex("September 30 2018", tokens);
+        assertToken(0, ReceiptLineLexer.DATE, 20180930);
+        ReceiptLineLexer.lex("Date: 12/31/2018", tokens);
+        assertToken(0, ReceiptLineLexer.DATE, 20181231);
+    }
+
+    @Test
+    public void skipsWordsThatOnlyStartLikeMonths() {
+        assertEquals(0, ReceiptLineLexer.lex("Market 12 Main St", tokens));
+        assertEquals(0, ReceiptLineLexer.lex("Subtotals", tokens));
+    }
+
+    @Test
+    public void reusesTokensFromLineToLine() {
+        ReceiptLineLexer.lex("TOTAL 1.00 GST 2.00 PST 3.00 4.00 5.00 6.00 7.00 8.00 9.00", tokens);
+        assertEquals(12, tokens.size());
+        assertEquals(11, tokens.lastIndexOf(ReceiptLineLexer.AMOUNT));
+        assertEquals(1, ReceiptLineLexer.lex("TOTAL", tokens));
+        assertEquals(-1, tokens.indexOf(ReceiptLineLexer.AMOUNT));
+    }
+
+    /**
+     * Classifies the lines of a dense receipt with the regular expressions the processor used
+     * before, then with the lexer, and prints the time per frame of each.
+     */
+    @Test
+    public void lexesDenseReceiptFasterThanRegexCascade() {
+        String[] receipt = denseReceipt(200);
+        RegexCascade cascade = new RegexCascade();
+        int frames = 300;
+
+        long regexChecksum = 0;
+        long lexerChecksum = 0;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            regexChecksum = 0;
+            lexerChecksum = 0;
+            long start = System.nanoTime();
+            for (int frame = 0; frame < frames; frame++) {
+                for (String line : receipt) {
+                    regexChecksum += cascade.classify(line);
+                }
+            }
+            long regexNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int frame = 0; frame < frames; frame++) {
+                for (String line : receipt) {
+                    lexerChecksum += classify(line);
+                }
+            }
+            long lexerNanos = System.nanoTime() - start;
+
+            if (warmup == 1) {
+                System.out.println(String.format(
+                        "%d-line receipt: regex %.1f us/frame, lexer %.1f us/frame",
+                        receipt.length, regexNanos / 1000.0 / frames,
+                        lexerNanos / 1000.0 / frames));
+                assertTrue(lexerNanos < regexNanos);
+            }
+        }
+        // Both classify the same lines the same way.
+        assertEquals(regexChecksum, lexerChecksum);
+    }
+
+    private void assertToken(int index, int type, long value) {
+        assertTrue(index < tokens.size());
+        assertEquals(type, tokens.getType(index));
+        assertEquals(value, tokens.getValue(index));
+    }
+
+    private static final int TOTAL = 1;
+    private static final int DATE = 2;
+    private static final int TAX = 3;
+    private static final int AMOUNT = 4;
+
+    private int classify(String line) {
+        if (ReceiptLineLexer.lex(line, tokens) == 0) {
+            return 0;
+        }
+        if (tokens.getType(0) == ReceiptLineLexer.KEYWORD
+                && tokens.getValue(0) == ReceiptLineLexer.KEYWORD_TOTAL) {
+            return TOTAL;
+        }
+        if (tokens.indexOf(ReceiptLineLexer.DATE) >= 0) {
+            return DATE;
+        }
+        if (tokens.contains(ReceiptLineLexer.PERCENT, 500)
+                || tokens.contains(ReceiptLineLexer.PERCENT, 700)) {
+            return TAX;
+        }
+        int amount = tokens.lastIndexOf(ReceiptLineLexer.AMOUNT);
+        return amount < 0 ? 0 : AMOUNT + (int) tokens.getValue(amount);
+    }
+
+    /** The per-line checks of the regex based processor. */
+    private static class RegexCascade {
+        private final Pattern total =
+                Pattern.compile("^TOTAL", Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
+        private final Pattern abbrevMonth = Pattern.compile(
+                "((?:Jan)|(?:Feb)|(?:Mar)|(?:Apr)|(?:May)|(?:Jun)|(?:Jul)|(?:Aug)|(?:Sep)|(?:Oct)"
+                        + "|(?:Nov)|(?:Dec))(.*?)(\\d{1,2})(.*)(\\d{4})", Pattern.DOTALL);
+        private final Pattern mmddyyyy =
+                Pattern.compile("(.*?)(\\d{1,2}/\\d{1,2}/\\d{4})(.*)", Pattern.DOTALL);
+        private final Pattern gst = Pattern.compile("(.*)5(\\.\\s?(0*))?%");
+        private final Pattern pst = Pattern.compile("(.*)7(\\.\\s?(0*))?%");
+
+        int classify(String line) {
+            if (total.matcher(line).lookingAt()) {
+                return TOTAL;
+            }
+            if (abbrevMonth.matcher(line).lookingAt()) {
+                return DATE;
+            }
+            if (line.contains("/") && mmddyyyy.matcher(line).matches()) {
+                return DATE;
+            }
+            if (line.contains("%")) {
+                return pst.matcher(line).lookingAt() || gst.matcher(line).lookingAt() ? TAX : 0;
+            }
+            // The amount pattern was compiled for every line.
+            Matcher amount =
+                    Pattern.compile("\\$?(\\d+[.,]\\s?\\d{2})$", Pattern.MULTILINE).matcher(line);
+            if (!amount.find()) {
+                return 0;
+            }
+            String raw = amount.group(1).replace(" ", "").replace(",", ".");
+            return AMOUNT + Math.round(Float.parseFloat(raw) * 100);
+        }
+    }
+
+    private static String[] denseReceipt(int lineCount) {
+        String[] lines = new String[lineCount];
+        lines[0] = "Jan 5, 2019 10:42";
+        lines[1] = "01/05/2019";
+        for (int i = 2; i < lineCount - 4; i++) {
+            lines[i] = "ITEM " + i + " PRODUCE BAG  $" + (i % 40) + "." + (10 + i % 90);
+        }
+        lines[lineCount - 4] = "GST @ 5%  0.65";
+        lines[lineCount - 3] = "PST 7.00%  0.91";
+        lines[lineCount - 2] = "TOTAL  $14.56";
+        lines[lineCount - 1] = "THANK YOU";
+        return lines;
+    }
+}